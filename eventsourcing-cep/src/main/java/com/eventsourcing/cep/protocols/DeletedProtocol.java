@@ -9,6 +9,7 @@ package com.eventsourcing.cep.protocols;
 
 import com.eventsourcing.Entity;
 import com.eventsourcing.EntityHandle;
+import com.eventsourcing.PrefetchingEntityHandleIterator;
 import com.eventsourcing.Protocol;
 import com.eventsourcing.Repository;
 import com.eventsourcing.cep.events.Deleted;
@@ -29,9 +30,9 @@ import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import static com.eventsourcing.queries.ModelCollectionQuery.loadedStreamOf;
 import static com.eventsourcing.queries.QueryFactory.*;
 import static com.eventsourcing.queries.QueryFactory.isLatestEntity;
-import static com.googlecode.cqengine.stream.StreamFactory.streamOf;
 
 @Draft @RFC(url = "http://rfc.eventsourcing.com/spec:3/CEP")
 public interface DeletedProtocol extends Protocol, ModelQueries {
@@ -62,8 +63,9 @@ public interface DeletedProtocol extends Protocol, ModelQueries {
                                                                     new DeletedQueryFunction(), Deleted.TIMESTAMP));
 
             ResultSet<EntityHandle<Deleted>> resultSet = repository.query(Deleted.class, query);
-            return streamOf(resultSet)
-                    .map(h -> loader.load(repository, h.get().reference()).get())
+            return loadedStreamOf(repository,
+                                  new PrefetchingEntityHandleIterator<>(repository.getJournal(), resultSet.iterator()),
+                                  h -> h.get().reference(), loader)
                     .onClose(resultSet::close);
         }
 
@@ -99,8 +101,8 @@ public interface DeletedProtocol extends Protocol, ModelQueries {
                     .query(klass, not(existsIn(deletedCollection, idAttribute, Deleted.REFERENCE_ID,
                                                not(existsIn(undeletedCollection, Deleted.ID, Undeleted.DELETED_ID)))));
 
-            return streamOf(resultSet)
-                    .map(h -> loader.load(repository, h.get().uuid()).get())
+            // only UUIDs of the handles are needed, there's nothing to prefetch
+            return loadedStreamOf(repository, resultSet.iterator(), EntityHandle::uuid, loader)
                     .onClose(resultSet::close);
         }
 
@@ -8,6 +8,7 @@
 package com.eventsourcing.cep.protocols;
 
 import com.eventsourcing.EntityHandle;
+import com.eventsourcing.PrefetchingEntityHandleIterator;
 import com.eventsourcing.Protocol;
 import com.eventsourcing.Repository;
 import com.eventsourcing.cep.events.DescriptionChanged;
@@ -21,8 +22,8 @@ import org.unprotocols.coss.RFC;
 import java.util.Optional;
 import java.util.stream.Stream;
 
+import static com.eventsourcing.queries.ModelCollectionQuery.loadedStreamOf;
 import static com.eventsourcing.queries.QueryFactory.equal;
-import static com.googlecode.cqengine.stream.StreamFactory.streamOf;
 
 @Draft @RFC(url = "http://rfc.eventsourcing.com/spec:3/CEP")
 public interface DescriptionProtocol extends Protocol, ModelQueries {
@@ -48,8 +49,9 @@ public interface DescriptionProtocol extends Protocol, ModelQueries {
         @Override public Stream<T> getCollectionStream(Repository repository) {
             ResultSet<EntityHandle<DescriptionChanged>> resultSet = repository
                     .query(DescriptionChanged.class, equal(DescriptionChanged.DESCRIPTION, description));
-            return streamOf(resultSet)
-                    .map(h -> loader.load(repository, h.get().reference()).get())
+            return loadedStreamOf(repository,
+                                  new PrefetchingEntityHandleIterator<>(repository.getJournal(), resultSet.iterator()),
+                                  h -> h.get().reference(), loader)
                     .onClose(resultSet::close);
         }
     }
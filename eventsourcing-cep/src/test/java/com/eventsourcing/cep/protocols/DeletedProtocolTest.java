@@ -13,6 +13,7 @@ import com.eventsourcing.cep.events.Undeleted;
 import com.eventsourcing.hlc.HybridTimestamp;
 import com.eventsourcing.index.SimpleIndex;
 import com.eventsourcing.queries.ModelCollectionQuery;
+import com.eventsourcing.queries.ModelLoader;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.SneakyThrows;
@@ -196,6 +197,23 @@ public class DeletedProtocolTest extends RepositoryUsingTest {
 
     }
 
+    @Test @SneakyThrows
+    public void queryNonDeletedInBulk() {
+        for (int i = 0; i < 50; i++) {
+            repository.publish(new Create()).get();
+        }
+        Created deleted = repository.publish(new Create()).get();
+        repository.publish(new Delete(deleted.uuid())).get();
+
+        Collection<TestModel> models = ModelCollectionQuery
+                .query(repository, DeletedProtocol.notDeleted(Created.class, Created.ID,
+                                                              ModelLoader.lookup(Created.class, Created.ID,
+                                                                                 TestModel::new)));
+
+        assertEquals(models.size(), 50);
+        assertTrue(models.stream().noneMatch(model -> model.getId().equals(deleted.uuid())));
+    }
+
     @Test @SneakyThrows
     public void queryNonDeletedForUndeleted() {
         Created created = repository.publish(new Create()).get();
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing;
+
+import com.eventsourcing.layout.Serialization;
+import com.eventsourcing.layout.binary.BinarySerialization;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.AbstractService;
+import com.googlecode.cqengine.index.support.CloseableIterator;
+import com.googlecode.cqengine.query.option.QueryOptions;
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * {@link Journal} decorator that keeps recently retrieved entities in a size-bounded cache.
+ * <p>
+ * Since journalled entities are immutable, cached entries never need to be invalidated
+ * (with the exception of {@link #clear()}). Entries are weighted by their serialized size
+ * and evicted in approximately least-recently-used order once {@link #getMaximumWeight()}
+ * is exceeded.
+ * <p>
+ * Entity handles produced by the iterators of this journal are resolved through the cache as well.
+ */
+public class CachingJournal extends AbstractService implements Journal, CachingJournalMBean {
+
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 64 * 1024 * 1024;
+
+    private static final Serialization serialization = BinarySerialization.getInstance();
+
+    private final Journal journal;
+    @Getter
+    private final long maximumWeight;
+    private final Cache<UUID, Entity> cache;
+
+    public CachingJournal(Journal journal) {
+        this(journal, DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    /**
+     * @param journal journal to cache entities of
+     * @param maximumWeight maximum total serialized size of cached entities (in bytes)
+     */
+    public CachingJournal(Journal journal, long maximumWeight) {
+        this.journal = journal;
+        this.maximumWeight = maximumWeight;
+        cache = CacheBuilder.newBuilder()
+                            .maximumWeight(maximumWeight)
+                            .weigher(CachingJournal::weigh)
+                            .recordStats()
+                            .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int weigh(UUID uuid, Entity entity) {
+        return serialization.getSerializer(entity.getClass()).size(entity);
+    }
+
+    @Override protected void doStart() {
+        journal.startAsync().awaitRunning();
+        notifyStarted();
+    }
+
+    @Override protected void doStop() {
+        journal.stopAsync().awaitTerminated();
+        notifyStopped();
+    }
+
+    @Override public void onCommandsAdded(Set<Class<? extends Command>> commands) {
+        journal.onCommandsAdded(commands);
+    }
+
+    @Override public void onEventsAdded(Set<Class<? extends Event>> events) {
+        journal.onEventsAdded(events);
+    }
+
+    @Override public void setRepository(Repository repository) {
+        journal.setRepository(repository);
+    }
+
+    @Override public Repository getRepository() {
+        return journal.getRepository();
+    }
+
+    @Override @SuppressWarnings("unchecked")
+    public <T extends Entity> Optional<T> get(UUID uuid) {
+        T entity = (T) cache.getIfPresent(uuid);
+        if (entity == null) {
+            Optional<T> result = journal.get(uuid);
+            result.ifPresent(e -> cache.put(uuid, e));
+            return result;
+        }
+        return Optional.of(entity);
+    }
+
+    @Override @SuppressWarnings("unchecked")
+    public <T extends Entity> Map<UUID, T> getAll(Collection<UUID> uuids) {
+        Map<UUID, T> result = new HashMap<>((Map<UUID, T>) cache.getAllPresent(uuids));
+        if (result.size() < uuids.size()) {
+            List<UUID> missing = new ArrayList<>();
+            for (UUID uuid : uuids) {
+                if (!result.containsKey(uuid)) {
+                    missing.add(uuid);
+                }
+            }
+            Map<UUID, T> entities = journal.getAll(missing);
+            cache.putAll(entities);
+            result.putAll(entities);
+        }
+        return result;
+    }
+
+    @Override
+    public <T extends Command<?, ?>> CloseableIterator<EntityHandle<T>> commandIterator(Class<T> klass,
+                                                                                        QueryOptions queryOptions) {
+        return new HandleIterator<>(this, journal.commandIterator(klass, queryOptions));
+    }
+
+    @Override
+    public <T extends Event> CloseableIterator<EntityHandle<T>> eventIterator(Class<T> klass,
+                                                                              QueryOptions queryOptions) {
+        return new HandleIterator<>(this, journal.eventIterator(klass, queryOptions));
+    }
+
+    @Override public void clear() {
+        journal.clear();
+        cache.invalidateAll();
+    }
+
+    @Override public <T extends Entity> long size(Class<T> klass) {
+        return journal.size(klass);
+    }
+
+    @Override public <T extends Entity> boolean isEmpty(Class<T> klass) {
+        return journal.isEmpty(klass);
+    }
+
+    @Override public <S, T> Command<S, T> journal(Transaction tx, Command<S, T> command) {
+        return journal.journal(tx, command);
+    }
+
+    @Override public Event journal(Transaction tx, Event event) {
+        return journal.journal(tx, event);
+    }
+
+    @Override public Transaction beginTransaction() {
+        return journal.beginTransaction();
+    }
+
+    @Override public Properties getProperties() {
+        return journal.getProperties();
+    }
+
+    private static class HandleIterator<T extends Entity> implements CloseableIterator<EntityHandle<T>> {
+
+        private final Journal journal;
+        private final CloseableIterator<EntityHandle<T>> iterator;
+
+        HandleIterator(Journal journal, CloseableIterator<EntityHandle<T>> iterator) {
+            this.journal = journal;
+            this.iterator = iterator;
+        }
+
+        @Override public void close() {
+            iterator.close();
+        }
+
+        @Override public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override public EntityHandle<T> next() {
+            EntityHandle<T> handle = iterator.next();
+            if (handle instanceof JournalEntityHandle) {
+                return new JournalEntityHandle<>(journal, handle.uuid());
+            }
+            return handle;
+        }
+    }
+
+    @Override public String toString() {
+        return "CachingJournal[" + journal + "]";
+    }
+
+    // MBean
+
+    @Override public long getSize() {
+        return cache.size();
+    }
+
+    @Override public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    @Override public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @Override public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    @Override public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing;
+
+public interface CachingJournalMBean {
+    long getMaximumWeight();
+    long getSize();
+    long getHitCount();
+    long getMissCount();
+    double getHitRate();
+    long getEvictionCount();
+}
@@ -7,6 +7,8 @@
  */
 package com.eventsourcing;
 
+import java.util.Collections;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
@@ -30,6 +32,17 @@ import java.util.stream.Stream;
  * @param <T>
  */
 public interface EntitySubscriber<T extends Entity> {
+    /**
+     * Declares entity classes (including their subclasses) this subscriber is interested in.
+     * If any are declared, {@link #matches(Repository, Entity)} will only be invoked for
+     * entities of these classes.
+     *
+     * @return entity classes (empty by default, meaning all entities)
+     */
+    default Set<Class<? extends Entity>> getEntityClasses() {
+        return Collections.emptySet();
+    }
+
     /**
      * Defines a predicate for matching entities
      * @param entity
@@ -56,6 +56,24 @@ public interface Journal extends Service {
      */
     <T extends Entity> Optional<T> get(UUID uuid);
 
+    /**
+     * Retrieves commands and/or events by their UUIDs. Implementations are expected
+     * to retrieve them in as few round trips as possible, the default implementation
+     * simply invokes {@link #get(UUID)} for every UUID.
+     *
+     * @param uuids
+     * @param <T>
+     * @return a map of found entities by UUID (entities that weren't found are not included)
+     */
+    default <T extends Entity> Map<UUID, T> getAll(Collection<UUID> uuids) {
+        Map<UUID, T> entities = new HashMap<>();
+        for (UUID uuid : uuids) {
+            Optional<T> entity = get(uuid);
+            entity.ifPresent(e -> entities.put(uuid, e));
+        }
+        return entities;
+    }
+
     /**
      * Iterate over commands of a specific type (through {@code EntityHandler<T>})
      *
@@ -152,6 +170,18 @@ public interface Journal extends Service {
     interface Transaction {
         void commit();
         void rollback();
+
+        /**
+         * Starts a nested transaction (savepoint) within this transaction. Committing a nested
+         * transaction makes its changes a part of the enclosing transaction, rolling it back
+         * discards its changes only.
+         *
+         * @return nested transaction
+         * @throws UnsupportedOperationException if the journal doesn't support nested transactions
+         */
+        default Transaction beginNested() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /**
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing;
+
+import com.googlecode.cqengine.index.support.CloseableIterator;
+import lombok.SneakyThrows;
+
+import java.util.*;
+
+/**
+ * Iterator wrapper that resolves {@link EntityHandle}s in chunks using {@link Journal#getAll(Collection)},
+ * instead of resolving every handle individually as the caller walks through them.
+ * <p>
+ * Handles that were resolved are replaced with {@link ResolvedEntityHandle}s, handles that weren't
+ * found in the journal are passed through unchanged.
+ * <p>
+ * The first chunk is small, so that callers consuming only a few handles don't pay for
+ * resolving a thousand of them; every subsequent chunk doubles in size, up to the maximum
+ * chunk size.
+ *
+ * @param <T>
+ */
+public class PrefetchingEntityHandleIterator<T extends Entity> implements CloseableIterator<EntityHandle<T>> {
+
+    public static final int DEFAULT_INITIAL_CHUNK_SIZE = 16;
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final Journal journal;
+    private final Iterator<EntityHandle<T>> iterator;
+    private final int maxChunkSize;
+    private int chunkSize;
+    private final Deque<EntityHandle<T>> buffer = new ArrayDeque<>();
+    // CQEngine's filtering iterators (such as the one of a negated query) may yield a rejected
+    // object if asked again after reporting the end, so the wrapped iterator is never asked again
+    private boolean exhausted;
+
+    public PrefetchingEntityHandleIterator(Journal journal, Iterator<EntityHandle<T>> iterator,
+                                           int initialChunkSize, int maxChunkSize) {
+        if (initialChunkSize < 1) {
+            throw new IllegalArgumentException("initialChunkSize should be positive");
+        }
+        if (maxChunkSize < initialChunkSize) {
+            throw new IllegalArgumentException("maxChunkSize should not be less than initialChunkSize");
+        }
+        this.journal = journal;
+        this.iterator = iterator;
+        this.chunkSize = initialChunkSize;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public PrefetchingEntityHandleIterator(Journal journal, Iterator<EntityHandle<T>> iterator, int maxChunkSize) {
+        this(journal, iterator, Math.min(DEFAULT_INITIAL_CHUNK_SIZE, maxChunkSize), maxChunkSize);
+    }
+
+    public PrefetchingEntityHandleIterator(Journal journal, Iterator<EntityHandle<T>> iterator) {
+        this(journal, iterator, DEFAULT_CHUNK_SIZE);
+    }
+
+    @Override public boolean hasNext() {
+        if (buffer.isEmpty() && !exhausted) {
+            prefetch();
+        }
+        return !buffer.isEmpty();
+    }
+
+    @Override public EntityHandle<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return buffer.removeFirst();
+    }
+
+    private void prefetch() {
+        List<EntityHandle<T>> chunk = new ArrayList<>(chunkSize);
+        Set<UUID> uuids = new HashSet<>();
+        while (chunk.size() < chunkSize) {
+            if (!iterator.hasNext()) {
+                exhausted = true;
+                break;
+            }
+            EntityHandle<T> handle = iterator.next();
+            chunk.add(handle);
+            if (!(handle instanceof ResolvedEntityHandle)) {
+                uuids.add(handle.uuid());
+            }
+        }
+        chunkSize = (int) Math.min((long) chunkSize * 2, maxChunkSize);
+        Map<UUID, T> entities = uuids.isEmpty() ? Collections.emptyMap() : journal.getAll(uuids);
+        for (EntityHandle<T> handle : chunk) {
+            T entity = entities.get(handle.uuid());
+            buffer.addLast(entity == null ? handle : new ResolvedEntityHandle<>(entity));
+        }
+    }
+
+    @SneakyThrows
+    @Override public void close() {
+        if (iterator instanceof AutoCloseable) {
+            ((AutoCloseable) iterator).close();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing;
+
+/**
+ * Command that declares a routing key, typically an identifier of the aggregate
+ * it operates on.
+ * <p>
+ * When the repository is configured with a sharded command executor, commands with equal
+ * routing keys are executed one at a time in the order they were published, so they don't
+ * need to take a lock through {@link LockProvider} to exclude each other.
+ */
+public interface RoutedCommand {
+    /**
+     * @return routing key (has to implement {@link Object#hashCode()} and {@link Object#equals(Object)})
+     */
+    Object routingKey();
+}
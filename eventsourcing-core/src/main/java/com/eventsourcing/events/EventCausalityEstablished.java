@@ -35,6 +35,34 @@ public class EventCausalityEstablished extends StandardEvent {
         this.command = command;
     }
 
+    /**
+     * Journals may store causality alongside events instead of journalling these entities. They
+     * present it as "virtual" entities, identified by {@link #virtualUuid(UUID)} of the event's UUID
+     * and timestamped with the event's timestamp.
+     *
+     * @param event event's UUID
+     * @param command UUID of the command that produced the event
+     * @param timestamp event's timestamp
+     * @return virtual causality entity
+     */
+    public static EventCausalityEstablished virtual(UUID event, UUID command, HybridTimestamp timestamp) {
+        EventCausalityEstablished causality = new EventCausalityEstablished(timestamp, event, command);
+        causality.uuid(virtualUuid(event));
+        return causality;
+    }
+
+    /**
+     * Maps an event's UUID to the UUID of its virtual causality entity and vice versa.
+     * The version of the UUID is flipped, so for random (version 4) event UUIDs
+     * the result can't collide with random UUIDs.
+     *
+     * @param uuid event or virtual causality entity UUID
+     * @return virtual causality entity or event UUID
+     */
+    public static UUID virtualUuid(UUID uuid) {
+        return new UUID(uuid.getMostSignificantBits() ^ 0xC000L, uuid.getLeastSignificantBits());
+    }
+
     public final static SimpleIndex<EventCausalityEstablished, UUID> EVENT = SimpleIndex.as(EventCausalityEstablished::event);
 
     public final static SimpleIndex<EventCausalityEstablished, UUID> COMMAND = SimpleIndex.as(EventCausalityEstablished::command);
@@ -11,15 +11,18 @@ import com.eventsourcing.Entity;
 import com.eventsourcing.Journal;
 import com.eventsourcing.Repository;
 import com.google.common.base.Joiner;
+import com.googlecode.cqengine.index.AttributeIndex;
 import com.googlecode.cqengine.index.Index;
 import lombok.Getter;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.*;
 
 import javax.management.openmbean.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -32,9 +35,13 @@ import java.util.stream.Collectors;
  * In an OSGi environment, <code>indexEngine</code> property must be configured to ensure intended ordering. This property
  * should have a comma-delimited list of fully qualified class names for index engines to be used. It can list index engines
  * that are not available through references. They will be ignored.
+ * <p>
+ * When cost-based (<code>costBased</code> property, disabled by default), an attribute index is placed in every
+ * engine that supports it and every query is routed to the engine with the lowest estimated cost
+ * (see {@link RetrievalCost}). Otherwise, the first engine that supports the index is used.
  */
 @Slf4j
-@Component(property = {"indexEngines=", "type=CascadingIndexEngine",
+@Component(property = {"indexEngines=", "costBased=false", "type=CascadingIndexEngine",
                       "jmx.objectname=com.eventsourcing.index.IndexEngine:type=CascadingIndexEngine"
                       }, configurationPolicy = ConfigurationPolicy.REQUIRE)
 public class CascadingIndexEngine extends CQIndexEngine implements IndexEngine, CascadingIndexEngineMBean {
@@ -46,6 +53,43 @@ public class CascadingIndexEngine extends CQIndexEngine implements IndexEngine,
     private List<IndexEngine> indexEngines = new ArrayList<>();
     @Getter
     private String[] configuredIndexEngines;
+    @Getter
+    private boolean costBased = false;
+    private final Map<String, RetrievalCost> retrievalCosts = new ConcurrentHashMap<>();
+
+    /**
+     * Estimated cost of retrieving entities from an index engine's index, compared between engines
+     * an index is placed in. It is added to the retrieval cost reported by the index itself
+     * (see {@link com.googlecode.cqengine.resultset.ResultSet#getRetrievalCost()}), which is measured
+     * in the same units (25 for unique, 30 for hash and 40 for navigable indices).
+     */
+    @Value
+    public static class RetrievalCost {
+        /**
+         * Cost of every retrieval, such as a database roundtrip
+         */
+        private int fixed;
+        /**
+         * Cost of every retrieved entity
+         */
+        private int perEntity;
+
+        long cost(long entities) {
+            return fixed + perEntity * entities;
+        }
+    }
+
+    /**
+     * Default cost of local (in-process) engines
+     */
+    public static final RetrievalCost LOCAL_RETRIEVAL_COST = new RetrievalCost(0, 1);
+    /**
+     * Default cost of remote engines (see {@link IndexEngine#isRemote()}). These pay for a roundtrip and,
+     * since every retrieved entity is still transferred and materialized in this process, no less than
+     * local engines per entity. Therefore, by default, a query is only routed to a remote engine if no local
+     * engine supports it or a local index reports a retrieval cost above the roundtrip.
+     */
+    public static final RetrievalCost REMOTE_RETRIEVAL_COST = new RetrievalCost(100, 1);
 
     public CascadingIndexEngine() {
     }
@@ -84,9 +128,45 @@ public class CascadingIndexEngine extends CQIndexEngine implements IndexEngine,
     @Activate
     protected void activate(ComponentContext ctx) {
         configuredIndexEngines = ((String) ctx.getProperties().get("indexEngines")).split(",");
+        Object costBased = ctx.getProperties().get("costBased");
+        if (costBased != null) {
+            this.costBased = Boolean.parseBoolean(costBased.toString());
+        }
         sortIndexEngines();
     }
 
+    /**
+     * Enables or disables placing attribute indices in all engines that support them
+     *
+     * @param costBased
+     * @throws IllegalStateException if called after the service is started
+     */
+    public void setCostBased(boolean costBased) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.costBased = costBased;
+    }
+
+    /**
+     * Overrides the default retrieval cost of an index engine
+     *
+     * @param indexEngineType index engine type (see {@link IndexEngine#getType()})
+     * @param retrievalCost
+     * @throws IllegalStateException if called after the service is started
+     */
+    public void setRetrievalCost(String indexEngineType, RetrievalCost retrievalCost) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        retrievalCosts.put(indexEngineType, retrievalCost);
+    }
+
+    public RetrievalCost getRetrievalCost(IndexEngine indexEngine) {
+        return retrievalCosts.getOrDefault(indexEngine.getType(),
+                                           indexEngine.isRemote() ? REMOTE_RETRIEVAL_COST : LOCAL_RETRIEVAL_COST);
+    }
+
     public String[] getIndexEngines() {
         return indexEngines.stream().map(IndexEngine::getType).toArray(String[]::new);
     }
@@ -103,20 +183,36 @@ public class CascadingIndexEngine extends CQIndexEngine implements IndexEngine,
         indexEngines.forEach(indexEngine -> indexEngine.setRepository(repository));
     }
 
-    private Map<String, IndexEngine> decisions = new HashMap<>();
+    private final Map<String, List<IndexEngine>> decisions = new ConcurrentHashMap<>();
 
-    @Override
+    @Override @SuppressWarnings("unchecked")
     public <O extends Entity, A> Index<O> getIndexOnAttribute(Attribute<O, A> attribute, IndexFeature... features)
             throws IndexNotSupported {
+        List<CostBasedIndex.Placement> placements = new ArrayList<>();
         for (IndexEngine engine : indexEngines) {
             try {
-                Index<O> index = engine.getIndexOnAttribute(attribute, features);
-                decisions.put(Joiner.on(", ").join(features) + " on " + attribute.toString(), engine);
-                return index;
+                Index index = engine.getIndexOnAttribute(attribute, features);
+                // only attribute indices can be routed to
+                if (placements.isEmpty() || index instanceof AttributeIndex) {
+                    placements.add(new CostBasedIndex.Placement(engine, getRetrievalCost(engine), index));
+                }
+                if (!costBased || !(placements.get(0).getIndex() instanceof AttributeIndex)) {
+                    break;
+                }
             } catch (IndexNotSupported e) {
             }
         }
-        throw new IndexNotSupported(new Attribute[]{attribute}, features, this);
+        if (placements.isEmpty()) {
+            throw new IndexNotSupported(new Attribute[]{attribute}, features, this);
+        }
+        decisions.put(Joiner.on(", ").join(features) + " on " + attribute.toString(),
+                      placements.stream().map(CostBasedIndex.Placement::getIndexEngine)
+                                .collect(Collectors.toList()));
+        if (placements.size() == 1) {
+            return placements.get(0).getIndex();
+        }
+        boolean unique = Arrays.asList(features).contains(IndexFeature.UNIQUE);
+        return new CostBasedIndex(attribute, unique, placements);
     }
 
     @Override
@@ -126,7 +222,8 @@ public class CascadingIndexEngine extends CQIndexEngine implements IndexEngine,
             try {
                 Index<O> index = engine.getIndexOnAttributes(attributes, features);
                 for (Attribute attribute : attributes) {
-                    decisions.put(Joiner.on(", ").join(features) + " on " + attribute.toString(), engine);
+                    decisions.put(Joiner.on(", ").join(features) + " on " + attribute.toString(),
+                                  Collections.singletonList(engine));
                 }
                 return index;
             } catch (IndexNotSupported e) {
@@ -159,10 +256,11 @@ public class CascadingIndexEngine extends CQIndexEngine implements IndexEngine,
                                                new OpenType[]{SimpleType.STRING, SimpleType.STRING});
         TabularDataSupport tab = new TabularDataSupport(
                 new TabularType("Decisions", "Cascading decisions", type, new String[]{"Index"}));
-        for (Map.Entry<String, IndexEngine> entry : decisions.entrySet()) {
+        for (Map.Entry<String, List<IndexEngine>> entry : decisions.entrySet()) {
+            String engines = entry.getValue().stream().map(IndexEngine::getType).collect(Collectors.joining(", "));
             tab.put(new CompositeDataSupport(type,
                                              new String[]{"Index", "Engine"},
-                                             new Object[]{entry.getKey(), entry.getValue().getType()}));
+                                             new Object[]{entry.getKey(), engines}));
         }
 
         return tab;
@@ -13,5 +13,6 @@ public interface CascadingIndexEngineMBean {
 
     String[] getIndexEngines();
     String[] getConfiguredIndexEngines();
+    boolean isCostBased();
     TabularData getCascadingDecisions();
 }
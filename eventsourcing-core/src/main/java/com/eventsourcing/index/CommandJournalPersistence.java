@@ -11,6 +11,7 @@ import com.eventsourcing.Command;
 import com.eventsourcing.EntityHandle;
 import com.eventsourcing.Journal;
 import com.eventsourcing.queries.options.EagerFetching;
+import com.eventsourcing.queries.options.SkipJournalScan;
 import com.googlecode.cqengine.index.Index;
 import com.googlecode.cqengine.index.support.CloseableIterator;
 import com.googlecode.cqengine.persistence.support.ObjectStore;
@@ -49,6 +50,9 @@ public class CommandJournalPersistence<T extends Command<?, ?>> extends JournalP
 
         @Override
         public CloseableIterator<EntityHandle<T>> iterator(QueryOptions queryOptions) {
+            if (queryOptions.get(SkipJournalScan.class) != null) {
+                return emptyIterator();
+            }
             return journal.commandIterator(klass, queryOptions);
         }
     }
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.index;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.EntityHandle;
+import com.googlecode.cqengine.index.AttributeIndex;
+import com.googlecode.cqengine.index.Index;
+import com.googlecode.cqengine.index.support.CloseableIterator;
+import com.googlecode.cqengine.index.support.KeyStatistics;
+import com.googlecode.cqengine.index.support.KeyStatisticsIndex;
+import com.googlecode.cqengine.index.support.SortedKeyStatisticsIndex;
+import com.googlecode.cqengine.persistence.support.ObjectSet;
+import com.googlecode.cqengine.persistence.support.ObjectStore;
+import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.query.option.QueryOptions;
+import com.googlecode.cqengine.query.simple.*;
+import com.googlecode.cqengine.resultset.ResultSet;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Attribute index placed in several index engines by {@link CascadingIndexEngine}. Modifications are
+ * applied to every placement, queries are routed to the placement with the lowest estimated cost
+ * (see {@link CascadingIndexEngine.RetrievalCost}) plus the retrieval cost reported by the index.
+ * Only local placements report their retrieval cost, as retrieving from a remote one would
+ * query it.
+ * <p>
+ * The number of matching entities is estimated from key statistics of local (non-remote) placements,
+ * counting no more than {@value #ESTIMATION_LIMIT} entities. Queries that can't be estimated are
+ * assumed to match that many.
+ */
+class CostBasedIndex<A, O extends Entity> implements AttributeIndex<A, EntityHandle<O>> {
+
+    static final int ESTIMATION_LIMIT = 10000;
+
+    @Value
+    static class Placement<O extends Entity> {
+        private IndexEngine indexEngine;
+        private CascadingIndexEngine.RetrievalCost retrievalCost;
+        private Index<EntityHandle<O>> index;
+    }
+
+    @Getter
+    private final com.googlecode.cqengine.attribute.Attribute<EntityHandle<O>, A> attribute;
+    private final boolean unique;
+    @Getter
+    private final List<Placement<O>> placements;
+
+    CostBasedIndex(Attribute<O, A> attribute, boolean unique, List<Placement<O>> placements) {
+        this.attribute = attribute;
+        this.unique = unique;
+        this.placements = placements;
+    }
+
+    /**
+     * Returns the cheapest placement supporting the query or <code>null</code> if there's none
+     */
+    Placement<O> placement(Query<EntityHandle<O>> query, QueryOptions queryOptions) {
+        long entities = estimate(query, queryOptions);
+        Placement<O> cheapest = null;
+        long lowestCost = Long.MAX_VALUE;
+        for (Placement<O> placement : placements) {
+            if (placement.getIndex().supportsQuery(query, queryOptions)) {
+                long cost = placement.getRetrievalCost().cost(entities) +
+                            reportedCost(placement, query, queryOptions);
+                if (cost < lowestCost) {
+                    cheapest = placement;
+                    lowestCost = cost;
+                }
+            }
+        }
+        return cheapest;
+    }
+
+    private static <O extends Entity> int reportedCost(Placement<O> placement, Query<EntityHandle<O>> query,
+                                                       QueryOptions queryOptions) {
+        if (placement.getIndexEngine().isRemote()) {
+            return 0;
+        }
+        // local result sets are evaluated lazily
+        try (ResultSet<EntityHandle<O>> resultSet = placement.getIndex().retrieve(query, queryOptions)) {
+            return resultSet.getRetrievalCost();
+        }
+    }
+
+    long estimate(Query<EntityHandle<O>> query, QueryOptions queryOptions) {
+        if (unique && query instanceof Equal) {
+            return 1;
+        }
+        for (Placement<O> placement : placements) {
+            if (!placement.getIndexEngine().isRemote() && placement.getIndex() instanceof KeyStatisticsIndex) {
+                long estimate = estimate((KeyStatisticsIndex<A, EntityHandle<O>>) placement.getIndex(),
+                                         query, queryOptions);
+                if (estimate >= 0) {
+                    return estimate;
+                }
+            }
+        }
+        return ESTIMATION_LIMIT;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long estimate(KeyStatisticsIndex<A, EntityHandle<O>> index, Query<EntityHandle<O>> query,
+                          QueryOptions queryOptions) {
+        if (query instanceof Equal) {
+            return index.getCountForKey(((Equal<EntityHandle<O>, A>) query).getValue(), queryOptions);
+        }
+        if (query instanceof In) {
+            long count = 0;
+            for (A value : ((In<EntityHandle<O>, A>) query).getValues()) {
+                count += index.getCountForKey(value, queryOptions);
+                if (count >= ESTIMATION_LIMIT) {
+                    break;
+                }
+            }
+            return Math.min(count, ESTIMATION_LIMIT);
+        }
+        if (query instanceof Has) {
+            return count(index.getStatisticsForDistinctKeys(queryOptions).iterator());
+        }
+        if (index instanceof SortedKeyStatisticsIndex) {
+            SortedKeyStatisticsIndex sortedIndex = (SortedKeyStatisticsIndex) index;
+            if (query instanceof LessThan) {
+                LessThan lessThan = (LessThan) query;
+                return count(sortedIndex, null, true, lessThan.getValue(), lessThan.isValueInclusive(), queryOptions);
+            }
+            if (query instanceof GreaterThan) {
+                GreaterThan greaterThan = (GreaterThan) query;
+                return count(sortedIndex, greaterThan.getValue(), greaterThan.isValueInclusive(), null, true,
+                             queryOptions);
+            }
+            if (query instanceof Between) {
+                Between between = (Between) query;
+                return count(sortedIndex, between.getLowerValue(), between.isLowerInclusive(),
+                             between.getUpperValue(), between.isUpperInclusive(), queryOptions);
+            }
+        }
+        return -1;
+    }
+
+    private static long count(CloseableIterator<? extends KeyStatistics<?>> iterator) {
+        long count = 0;
+        try {
+            while (count < ESTIMATION_LIMIT && iterator.hasNext()) {
+                count += iterator.next().getCount();
+            }
+        } finally {
+            iterator.close();
+        }
+        return Math.min(count, ESTIMATION_LIMIT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long count(SortedKeyStatisticsIndex index, Comparable lower, boolean lowerInclusive,
+                              Comparable upper, boolean upperInclusive, QueryOptions queryOptions) {
+        long count = 0;
+        try (CloseableIterator<Comparable> iterator = index.getDistinctKeys(lower, lowerInclusive, upper,
+                                                                            upperInclusive, queryOptions)
+                                                           .iterator()) {
+            while (count < ESTIMATION_LIMIT && iterator.hasNext()) {
+                count += index.getCountForKey(iterator.next(), queryOptions);
+            }
+        }
+        return Math.min(count, ESTIMATION_LIMIT);
+    }
+
+    @Override public ResultSet<EntityHandle<O>> retrieve(Query<EntityHandle<O>> query, QueryOptions queryOptions) {
+        Placement<O> placement = placement(query, queryOptions);
+        if (placement == null) {
+            throw new IllegalArgumentException("Unsupported query: " + query);
+        }
+        return placement.getIndex().retrieve(query, queryOptions);
+    }
+
+    @Override public boolean supportsQuery(Query<EntityHandle<O>> query, QueryOptions queryOptions) {
+        return placements.stream().anyMatch(placement -> placement.getIndex().supportsQuery(query, queryOptions));
+    }
+
+    @Override public boolean isMutable() {
+        return placements.stream().allMatch(placement -> placement.getIndex().isMutable());
+    }
+
+    @Override public boolean isQuantized() {
+        return placements.stream().anyMatch(placement -> placement.getIndex().isQuantized());
+    }
+
+    @Override public Index<EntityHandle<O>> getEffectiveIndex() {
+        return this;
+    }
+
+    @Override public boolean addAll(ObjectSet<EntityHandle<O>> objectSet, QueryOptions queryOptions) {
+        boolean modified = false;
+        for (Placement<O> placement : placements) {
+            modified |= placement.getIndex().addAll(objectSet, queryOptions);
+        }
+        return modified;
+    }
+
+    @Override public boolean removeAll(ObjectSet<EntityHandle<O>> objectSet, QueryOptions queryOptions) {
+        boolean modified = false;
+        for (Placement<O> placement : placements) {
+            modified |= placement.getIndex().removeAll(objectSet, queryOptions);
+        }
+        return modified;
+    }
+
+    @Override public void clear(QueryOptions queryOptions) {
+        placements.forEach(placement -> placement.getIndex().clear(queryOptions));
+    }
+
+    @Override public void init(ObjectStore<EntityHandle<O>> objectStore, QueryOptions queryOptions) {
+        placements.forEach(placement -> placement.getIndex().init(objectStore, queryOptions));
+    }
+
+    @Override public String toString() {
+        return "CostBasedIndex[" + attribute.getAttributeName() + "]";
+    }
+}
@@ -11,6 +11,7 @@ import com.eventsourcing.EntityHandle;
 import com.eventsourcing.Event;
 import com.eventsourcing.Journal;
 import com.eventsourcing.queries.options.EagerFetching;
+import com.eventsourcing.queries.options.SkipJournalScan;
 import com.googlecode.cqengine.index.Index;
 import com.googlecode.cqengine.index.support.CloseableIterator;
 import com.googlecode.cqengine.persistence.support.ObjectStore;
@@ -50,6 +51,9 @@ public class EventJournalPersistence<T extends Event> extends JournalPersistence
 
         @Override
         public CloseableIterator<EntityHandle<T>> iterator(QueryOptions queryOptions) {
+            if (queryOptions.get(SkipJournalScan.class) != null) {
+                return emptyIterator();
+            }
             return journal.eventIterator(klass, queryOptions);
         }
     }
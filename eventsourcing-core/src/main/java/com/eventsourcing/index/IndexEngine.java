@@ -19,12 +19,20 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Value;
 
+import java.util.Collection;
 import java.util.function.Function;
 
 public interface IndexEngine extends Service {
 
     String getType();
 
+    /**
+     * @return <code>true</code> if indices are kept outside of this process (for example, in a database)
+     */
+    default boolean isRemote() {
+        return false;
+    }
+
     /**
      * Sets journal to be used in this repository
      * <p>
@@ -90,4 +98,16 @@ public interface IndexEngine extends Service {
     }
 
     <T extends Entity> IndexedCollection<EntityHandle<T>> getIndexedCollection(Class<T> klass);
+
+    /**
+     * Adds indices to the collection of entities of the given class (see {@link #getIndexedCollection(Class)}).
+     * Implementations may build all of them from a single pass over the journal.
+     *
+     * @param klass   entity class
+     * @param indices indices to add
+     */
+    default <T extends Entity> void addIndices(Class<T> klass, Collection<Index<EntityHandle<T>>> indices) {
+        IndexedCollection<EntityHandle<T>> collection = getIndexedCollection(klass);
+        indices.forEach(collection::addIndex);
+    }
 }
@@ -18,6 +18,7 @@ import com.googlecode.cqengine.persistence.support.ObjectStore;
 import com.googlecode.cqengine.query.option.QueryOptions;
 
 import java.util.Collection;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
 public abstract class JournalPersistence<T extends Entity> implements Persistence<EntityHandle<T>, UUID> {
@@ -53,6 +54,20 @@ public abstract class JournalPersistence<T extends Entity> implements Persistenc
             this.klass = klass;
         }
 
+        static <T> CloseableIterator<T> emptyIterator() {
+            return new CloseableIterator<T>() {
+                @Override public void close() {}
+
+                @Override public boolean hasNext() {
+                    return false;
+                }
+
+                @Override public T next() {
+                    throw new NoSuchElementException();
+                }
+            };
+        }
+
         @Override public EntityHandle<T> get(UUID key) {
             return new JournalEntityHandle<>(journal, key);
         }
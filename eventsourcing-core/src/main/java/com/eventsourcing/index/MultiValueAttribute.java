@@ -9,9 +9,12 @@ package com.eventsourcing.index;
 
 import com.eventsourcing.Entity;
 import com.eventsourcing.EntityHandle;
+import com.eventsourcing.queries.options.AttributeValueCache;
+import com.google.common.collect.Lists;
 import com.googlecode.cqengine.query.option.QueryOptions;
 
 import java.lang.reflect.Type;
+import java.util.List;
 
 public abstract class MultiValueAttribute<O extends Entity, A>
         extends com.googlecode.cqengine.attribute.MultiValueAttribute<EntityHandle<O>, A>
@@ -58,7 +61,17 @@ public abstract class MultiValueAttribute<O extends Entity, A>
 
     @Override
     public Iterable<A> getValues(EntityHandle<O> object, QueryOptions queryOptions) {
-        return getValues(object.get(), queryOptions);
+        AttributeValueCache cache = queryOptions == null ? null : queryOptions.get(AttributeValueCache.class);
+        if (cache == null) {
+            return getValues(object.get(), queryOptions);
+        }
+        Iterable<A> cached = cache.get(this, object.uuid());
+        if (cached != null) {
+            return cached;
+        }
+        List<A> values = Lists.newArrayList(getValues(object.get(), queryOptions));
+        cache.put(this, object.uuid(), values);
+        return values;
     }
 
     public abstract Iterable<A> getValues(O object, QueryOptions queryOptions);
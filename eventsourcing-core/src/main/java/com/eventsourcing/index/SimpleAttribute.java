@@ -9,6 +9,7 @@ package com.eventsourcing.index;
 
 import com.eventsourcing.Entity;
 import com.eventsourcing.EntityHandle;
+import com.eventsourcing.queries.options.AttributeValueCache;
 import com.googlecode.cqengine.query.option.QueryOptions;
 import lombok.Getter;
 
@@ -74,7 +75,17 @@ public abstract class SimpleAttribute<O extends Entity, A>
     }
 
     public A getValue(EntityHandle<O> object, QueryOptions queryOptions) {
-        return getValue(object.get(), queryOptions);
+        AttributeValueCache cache = queryOptions == null ? null : queryOptions.get(AttributeValueCache.class);
+        if (cache == null) {
+            return getValue(object.get(), queryOptions);
+        }
+        Iterable<A> cached = cache.get(this, object.uuid());
+        if (cached != null) {
+            return cached.iterator().next();
+        }
+        A value = getValue(object.get(), queryOptions);
+        cache.put(this, object.uuid(), Collections.singletonList(value));
+        return value;
     }
 
     public abstract A getValue(O object, QueryOptions queryOptions);
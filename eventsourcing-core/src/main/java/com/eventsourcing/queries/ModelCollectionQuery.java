@@ -7,13 +7,15 @@
  */
 package com.eventsourcing.queries;
 
-import com.eventsourcing.Model;
-import com.eventsourcing.Repository;
+import com.eventsourcing.*;
+import com.googlecode.cqengine.resultset.ResultSet;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.BaseStream;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A toolkit for composing model collections queries. An implementation of this interface
@@ -39,6 +41,82 @@ public interface ModelCollectionQuery<T extends Model> {
         }
     }
 
+    /**
+     * Streams entity handles of a result set, resolving them in chunks through
+     * {@link Journal#getAll(java.util.Collection)} (see {@link PrefetchingEntityHandleIterator}),
+     * which avoids a journal lookup per handle when the stream is mapped to entities.
+     * <p>
+     * Closing the returned stream does not close <code>resultSet</code>.
+     *
+     * @param repository
+     * @param resultSet
+     * @param <E>
+     * @return stream of (mostly) resolved entity handles
+     */
+    static <E extends Entity> Stream<EntityHandle<E>> prefetchedStreamOf(Repository repository,
+                                                                       ResultSet<EntityHandle<E>> resultSet) {
+        Iterator<EntityHandle<E>> iterator = new PrefetchingEntityHandleIterator<>(repository.getJournal(),
+                                                                                  resultSet.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    /**
+     * Streams models for entity handles, loading them in chunks through
+     * {@link ModelLoader#loadAll(Repository, Collection)}. Chunks start small and grow geometrically,
+     * same as in {@link PrefetchingEntityHandleIterator}. Handles the loader found no model for are skipped.
+     * <p>
+     * Handles are pulled straight from the iterator (such as {@link ResultSet#iterator()}) as
+     * chunks are loaded, and the iterator is not asked for more once it reported its end
+     * (see {@link PrefetchingEntityHandleIterator}).
+     *
+     * @param repository
+     * @param handles entity handles
+     * @param uuid model UUID of a handle
+     * @param loader
+     * @param <E>
+     * @param <T>
+     * @return stream of models
+     */
+    static <E extends Entity, T> Stream<T> loadedStreamOf(Repository repository, Iterator<EntityHandle<E>> handles,
+                                                         Function<EntityHandle<E>, UUID> uuid,
+                                                         ModelLoader<T> loader) {
+        Iterator<T> iterator = new Iterator<T>() {
+            private int chunkSize = PrefetchingEntityHandleIterator.DEFAULT_INITIAL_CHUNK_SIZE;
+            private final Deque<T> buffer = new ArrayDeque<>();
+            private boolean exhausted;
+
+            @Override public boolean hasNext() {
+                while (buffer.isEmpty() && !exhausted) {
+                    List<UUID> chunk = new ArrayList<>(chunkSize);
+                    while (chunk.size() < chunkSize) {
+                        if (!handles.hasNext()) {
+                            exhausted = true;
+                            break;
+                        }
+                        chunk.add(uuid.apply(handles.next()));
+                    }
+                    chunkSize = Math.min(chunkSize * 2, PrefetchingEntityHandleIterator.DEFAULT_CHUNK_SIZE);
+                    Map<UUID, T> models = loader.loadAll(repository, chunk);
+                    for (UUID id : chunk) {
+                        T model = models.get(id);
+                        if (model != null) {
+                            buffer.addLast(model);
+                        }
+                    }
+                }
+                return !buffer.isEmpty();
+            }
+
+            @Override public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return buffer.removeFirst();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
 
     final class LogicalOperators {
 
@@ -7,12 +7,61 @@
  */
 package com.eventsourcing.queries;
 
+import com.eventsourcing.Entity;
 import com.eventsourcing.Repository;
+import com.eventsourcing.index.EntityIndex;
 
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.BiFunction;
 
 @FunctionalInterface
 public interface ModelLoader<T>  {
     Optional<T> load(Repository repository, UUID uuid);
+
+    /**
+     * Loads models for a number of UUIDs at once. The default implementation calls
+     * {@link #load(Repository, UUID)} for every UUID, loaders backed by an entity lookup
+     * (see {@link #lookup(Class, EntityIndex, BiFunction)}) resolve entities in bulk instead.
+     *
+     * @param repository repository
+     * @param uuids model UUIDs
+     * @return models found, by UUID
+     */
+    default Map<UUID, T> loadAll(Repository repository, Collection<UUID> uuids) {
+        Map<UUID, T> result = new HashMap<>();
+        for (UUID uuid : uuids) {
+            load(repository, uuid).ifPresent(model -> result.put(uuid, model));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a loader that instantiates a model if an entity with a matching ID exists,
+     * using {@link ModelQueries#lookupAll(Repository, Class, EntityIndex, Collection)}
+     * to load models in bulk.
+     *
+     * @param klass entity klass
+     * @param keyAttribute entity ID attribute
+     * @param constructor model constructor
+     * @param <E> entity type
+     * @param <T> model type
+     * @return model loader
+     */
+    static <E extends Entity, T> ModelLoader<T> lookup(Class<E> klass, EntityIndex<E, UUID> keyAttribute,
+                                                       BiFunction<Repository, UUID, T> constructor) {
+        return new ModelLoader<T>() {
+            @Override public Optional<T> load(Repository repository, UUID uuid) {
+                return ModelQueries.lookup(repository, klass, keyAttribute, uuid)
+                                   .map(e -> constructor.apply(repository, uuid));
+            }
+
+            @Override public Map<UUID, T> loadAll(Repository repository, Collection<UUID> uuids) {
+                Map<UUID, T> result = new HashMap<>();
+                for (UUID uuid : ModelQueries.lookupAll(repository, klass, keyAttribute, uuids).keySet()) {
+                    result.put(uuid, constructor.apply(repository, uuid));
+                }
+                return result;
+            }
+        };
+    }
 }
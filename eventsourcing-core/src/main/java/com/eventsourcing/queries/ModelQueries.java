@@ -14,10 +14,11 @@ import com.eventsourcing.Repository;
 import com.eventsourcing.index.EntityIndex;
 import com.googlecode.cqengine.resultset.ResultSet;
 
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 import static com.eventsourcing.queries.QueryFactory.equal;
+import static com.eventsourcing.queries.QueryFactory.in;
+import static com.eventsourcing.queries.QueryFactory.noQueryOptions;
 
 /**
  * Combines all standard queries into one:
@@ -48,4 +49,41 @@ public interface ModelQueries extends Model, LatestAssociatedEntryQuery {
         }
     }
 
+    /**
+     * Lookup entities by unique IDs with a single <code>in</code> query, resolving all found
+     * entities with one {@link com.eventsourcing.Journal#getAll(Collection)} call.
+     *
+     * @param repository repository
+     * @param klass entity klass
+     * @param keyAttribute entity ID attribute
+     * @param ids IDs
+     * @param <T> entity type
+     * @return entities found, by ID
+     */
+    static <T extends Entity> Map<UUID, T>
+            lookupAll(Repository repository, Class<T> klass, EntityIndex<T, UUID> keyAttribute, Collection<UUID> ids) {
+        Map<UUID, T> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        Set<UUID> wanted = new HashSet<>(ids);
+        Set<UUID> uuids = new HashSet<>();
+        try (ResultSet<EntityHandle<T>> resultSet = repository.query(klass, in(keyAttribute, wanted))) {
+            for (EntityHandle<T> handle : resultSet) {
+                uuids.add(handle.uuid());
+            }
+        }
+        if (!uuids.isEmpty()) {
+            Collection<T> entities = repository.getJournal().<T>getAll(uuids).values();
+            for (T entity : entities) {
+                for (UUID id : keyAttribute.getValues(entity, noQueryOptions())) {
+                    if (wanted.contains(id)) {
+                        result.put(id, entity);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.queries.options;
+
+import com.eventsourcing.index.Attribute;
+import com.googlecode.cqengine.query.option.QueryOptions;
+
+import java.util.UUID;
+
+/**
+ * AttributeValueCache is a {@link QueryOptions} query option that lets attributes reuse values computed
+ * earlier (for example, restored from an index snapshot) instead of fetching the entity to compute them,
+ * and reports values that had to be computed.
+ */
+public interface AttributeValueCache {
+    /**
+     * @param attribute attribute
+     * @param uuid      entity UUID
+     * @return previously computed values or <code>null</code> if there are none
+     */
+    <A> Iterable<A> get(Attribute<?, A> attribute, UUID uuid);
+
+    /**
+     * Called when attribute values had to be computed
+     *
+     * @param attribute attribute
+     * @param uuid      entity UUID
+     * @param values    computed values
+     */
+    <A> void put(Attribute<?, A> attribute, UUID uuid, Iterable<A> values);
+}
@@ -0,0 +1,19 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.queries.options;
+
+import com.eventsourcing.index.IndexEngine;
+import com.googlecode.cqengine.query.option.QueryOptions;
+
+/**
+ * SkipJournalScan is a {@link QueryOptions} query option that signals to journal persistence not to iterate
+ * the journal. Used when an index is added to a collection and populated separately, for example, when
+ * several indices are built from a single scan (see {@link IndexEngine#addIndices(Class, java.util.Collection)}).
+ */
+public final class SkipJournalScan {
+}
@@ -7,13 +7,19 @@
  */
 package com.eventsourcing.index;
 
+import com.eventsourcing.EntityHandle;
 import com.eventsourcing.Journal;
 import com.eventsourcing.Repository;
 import com.eventsourcing.StandardEntity;
 import com.eventsourcing.hlc.HybridTimestamp;
 import com.eventsourcing.inmem.MemoryIndexEngine;
 import com.eventsourcing.inmem.MemoryJournal;
+import com.eventsourcing.models.Car;
+import com.eventsourcing.models.CarFactory;
+import com.googlecode.cqengine.ConcurrentIndexedCollection;
+import com.googlecode.cqengine.IndexedCollection;
 import com.googlecode.cqengine.query.option.QueryOptions;
+import com.googlecode.cqengine.resultset.ResultSet;
 import lombok.SneakyThrows;
 import org.testng.annotations.Test;
 
@@ -21,6 +27,9 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
+import static com.googlecode.cqengine.query.QueryFactory.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 
 public class CascadingIndexEngineTest {
@@ -69,6 +78,74 @@ public class CascadingIndexEngineTest {
         assertNotNull(indexEngine.getIndexOnAttribute(INDEX, IndexEngine.IndexFeature.LT));
     }
 
+    private static class RemoteIndexEngine extends MemoryIndexEngine {
+        @Override public String getType() {
+            return "RemoteIndexEngine";
+        }
+
+        @Override public boolean isRemote() {
+            return true;
+        }
+    }
+
+    @Test @SneakyThrows
+    public void costBased() {
+        MemoryIndexEngine local = new MemoryIndexEngine();
+        RemoteIndexEngine remote = new RemoteIndexEngine();
+        CascadingIndexEngine indexEngine = new CascadingIndexEngine(remote, local);
+        indexEngine.setJournal(new MemoryJournal());
+        indexEngine.setCostBased(true);
+
+        CostBasedIndex carId = (CostBasedIndex)
+                indexEngine.getIndexOnAttribute(Car.CAR_ID, IndexEngine.IndexFeature.EQ, IndexEngine.IndexFeature.LT,
+                                                IndexEngine.IndexFeature.GT);
+        CostBasedIndex manufacturer = (CostBasedIndex)
+                indexEngine.getIndexOnAttribute(Car.MANUFACTURER, IndexEngine.IndexFeature.EQ);
+        assertEquals(carId.getPlacements().size(), 2);
+
+        IndexedCollection<EntityHandle<Car>> collection = new ConcurrentIndexedCollection<>();
+        collection.addIndex(carId);
+        collection.addIndex(manufacturer);
+        collection.addAll(CarFactory.createCollectionOfCars(1000));
+
+        // by default, queries supported locally stay local regardless of their size
+        assertEquals(carId.placement(equal(Car.CAR_ID, 500), noQueryOptions()).getIndexEngine(), local);
+        assertEquals(carId.placement(lessThan(Car.CAR_ID, 10), noQueryOptions()).getIndexEngine(), local);
+        assertEquals(carId.placement(greaterThan(Car.CAR_ID, 100), noQueryOptions()).getIndexEngine(), local);
+        assertEquals(manufacturer.placement(equal(Car.MANUFACTURER, "Honda"), noQueryOptions()).getIndexEngine(),
+                     local);
+
+        try (ResultSet<EntityHandle<Car>> resultSet = collection.retrieve(greaterThan(Car.CAR_ID, 100))) {
+            assertEquals(resultSet.size(), 899);
+        }
+        try (ResultSet<EntityHandle<Car>> resultSet = collection.retrieve(equal(Car.MANUFACTURER, "Honda"))) {
+            assertEquals(resultSet.size(), 300);
+        }
+
+        // a remote engine that streams entities for free only gets large results
+        indexEngine.setRetrievalCost("RemoteIndexEngine", new CascadingIndexEngine.RetrievalCost(100, 0));
+        CostBasedIndex streaming = (CostBasedIndex)
+                indexEngine.getIndexOnAttribute(Car.MANUFACTURER, IndexEngine.IndexFeature.EQ);
+        collection.addIndex(streaming);
+        assertEquals(streaming.placement(equal(Car.MANUFACTURER, "Honda"), noQueryOptions()).getIndexEngine(),
+                     remote);
+        assertEquals(streaming.placement(equal(Car.MANUFACTURER, "Tesla"), noQueryOptions()).getIndexEngine(),
+                     local);
+        try (ResultSet<EntityHandle<Car>> resultSet = collection.retrieve(equal(Car.MANUFACTURER, "Honda"))) {
+            assertEquals(resultSet.size(), 300);
+        }
+    }
+
+    @Test @SneakyThrows
+    public void firstSupported() {
+        MemoryIndexEngine first = new MemoryIndexEngine();
+        CascadingIndexEngine indexEngine = new CascadingIndexEngine(first, new MemoryIndexEngine());
+        indexEngine.setJournal(new MemoryJournal());
+
+        assertFalse(indexEngine.getIndexOnAttribute(Car.MANUFACTURER, IndexEngine.IndexFeature.EQ)
+                    instanceof CostBasedIndex);
+    }
+
     @Test(expectedExceptions = IndexEngine.IndexNotSupported.class) @SneakyThrows
     public void exhaustingOptions() {
         MemoryJournal journal = new MemoryJournal();
@@ -0,0 +1,590 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.file;
+
+import com.eventsourcing.*;
+import com.eventsourcing.hlc.HybridTimestamp;
+import com.eventsourcing.layout.Layout;
+import com.eventsourcing.layout.ObjectDeserializer;
+import com.eventsourcing.layout.ObjectSerializer;
+import com.eventsourcing.layout.Serialization;
+import com.eventsourcing.layout.binary.BinarySerialization;
+import com.eventsourcing.queries.options.EagerFetching;
+import com.eventsourcing.utils.CloseableWrappingIterator;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.AbstractService;
+import com.googlecode.cqengine.index.support.CloseableIterator;
+import com.googlecode.cqengine.query.option.QueryOptions;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Durable single-node {@link Journal} implementation that appends entities to segment files
+ * in a directory.
+ * <p>
+ * Every committed transaction is written as a single CRC-protected frame, so transactions are
+ * either recovered fully or not at all:
+ *
+ * <pre>
+ * int length (of payload)
+ * int crc32 (of payload)
+ * payload:
+ *   int count
+ *   count * (short hashLength, byte[hashLength] layoutHash, long uuidMsb, long uuidLsb, int size, byte[size] entity)
+ * </pre>
+ *
+ * Entities are serialized with {@link BinarySerialization} and read back directly from memory-mapped segments.
+ * Once a segment reaches {@link #getSegmentSize()}, a new one is started. Upon start, all segments are scanned
+ * to rebuild in-memory UUID and layout indices; a torn or corrupted frame at the end of the last segment
+ * (for example, after a crash) is discarded.
+ * <p>
+ * When {@link #isDurable()} is enabled (default), commits return only after their frame has been flushed
+ * to the storage device. Concurrent commits share flushes (group commit).
+ * <p>
+ * Like <code>MemoryJournal</code>, this journal ignores the
+ * {@link com.eventsourcing.queries.options.NotSeenBy} query option.
+ */
+@Slf4j
+@Component(property = {"type=FileJournal", "path="}, service = Journal.class,
+           configurationPolicy = ConfigurationPolicy.REQUIRE)
+public class FileJournal extends AbstractService implements Journal {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String TIMESTAMP_FILE = "repository.timestamp";
+
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    private static final Serialization serialization = BinarySerialization.getInstance();
+
+    @Getter @Setter
+    private Repository repository;
+
+    @Getter
+    private File directory;
+
+    /**
+     * Size (in bytes) at which segments are rolled over. A transaction larger than this
+     * will still be written, into a segment of its own.
+     */
+    @Getter @Setter
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    @Getter @Setter
+    private boolean durable = true;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Map<UUID, Location> locations = new ConcurrentHashMap<>();
+    private final Map<String, LocationList> layoutLocations = new ConcurrentHashMap<>();
+
+    private final Map<String, Layout> layoutsByClass = new ConcurrentHashMap<>();
+    private final Map<String, Layout> layoutsByHash = new ConcurrentHashMap<>();
+
+    private final Object writeLock = new Object();
+    // guarded by writeLock
+    private Segment activeSegment;
+    // guarded by writeLock
+    private long written;
+
+    private final Object syncLock = new Object();
+    // guarded by syncLock
+    private long synced;
+    // guarded by syncLock
+    private boolean syncing;
+
+    public FileJournal() {}
+
+    public FileJournal(File directory) {
+        this.directory = directory;
+    }
+
+    @Activate
+    protected void activate(ComponentContext ctx) {
+        directory = new File((String) ctx.getProperties().get("path"));
+    }
+
+    @Override public void onCommandsAdded(Set<Class<? extends Command>> commands) {
+        commands.forEach(this::getLayout);
+    }
+
+    @Override public void onEventsAdded(Set<Class<? extends Event>> events) {
+        events.forEach(this::getLayout);
+    }
+
+    @SneakyThrows
+    private Layout getLayout(Class<? extends Entity> klass) {
+        Layout layout = layoutsByClass.get(klass.getName());
+        if (layout == null) {
+            layout = Layout.forClass(klass);
+            layoutsByClass.put(klass.getName(), layout);
+            layoutsByHash.put(BaseEncoding.base16().encode(layout.getHash()), layout);
+        }
+        return layout;
+    }
+
+    @Override protected void doStart() {
+        if (directory == null) {
+            notifyFailed(new IllegalStateException("directory == null"));
+            return;
+        }
+        try {
+            recover();
+        } catch (Exception e) {
+            notifyFailed(e);
+            return;
+        }
+        notifyStarted();
+    }
+
+    @Override protected void doStop() {
+        try {
+            synchronized (writeLock) {
+                if (activeSegment != null) {
+                    activeSegment.force();
+                }
+                for (Segment segment : segments) {
+                    segment.close();
+                }
+            }
+        } catch (IOException e) {
+            notifyFailed(e);
+            return;
+        }
+        notifyStopped();
+    }
+
+    private void recover() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) &&
+                                                           name.endsWith(SEGMENT_SUFFIX));
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = Segment.open(files[i], id, i == files.length - 1);
+            segments.add(segment);
+            int end = scan(segment);
+            if (end < segment.getSize()) {
+                if (i < files.length - 1) {
+                    throw new IOException(segment.getFile() + " is corrupted at position " + end);
+                }
+                log.warn("Discarding {} bytes of incomplete or corrupted data at the end of {}",
+                         segment.getSize() - end, segment.getFile());
+                segment.truncate(end);
+            }
+        }
+        synchronized (writeLock) {
+            if (segments.isEmpty()) {
+                segments.add(Segment.create(segmentFile(0), 0));
+            }
+            activeSegment = segments.get(segments.size() - 1);
+        }
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Indexes all valid frames in the segment
+     *
+     * @param segment
+     * @return position past the last valid frame
+     */
+    private int scan(Segment segment) throws IOException {
+        int size = segment.getSize();
+        ByteBuffer buffer = segment.read(0, size);
+        int position = Segment.HEADER_SIZE;
+        while (position + FRAME_HEADER_SIZE <= size) {
+            int length = buffer.getInt(position);
+            if (length < 4 || length > size - position - FRAME_HEADER_SIZE) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + FRAME_HEADER_SIZE);
+            view.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            index(segment, position + FRAME_HEADER_SIZE, ByteBuffer.wrap(payload));
+            position += FRAME_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private void index(Segment segment, int offset, ByteBuffer payload) {
+        int count = payload.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] hash = new byte[payload.getShort()];
+            payload.get(hash);
+            UUID uuid = new UUID(payload.getLong(), payload.getLong());
+            int length = payload.getInt();
+            int position = offset + payload.position();
+            payload.position(payload.position() + length);
+            LocationList list = layoutLocations
+                    .computeIfAbsent(BaseEncoding.base16().encode(hash), LocationList::new);
+            Location location = new Location(uuid, segment, position, length, list.getHash());
+            locations.put(uuid, location);
+            list.add(location);
+        }
+    }
+
+    private static class Record {
+        private final UUID uuid;
+        private final byte[] hash;
+        private final ByteBuffer entity;
+
+        Record(UUID uuid, byte[] hash, ByteBuffer entity) {
+            this.uuid = uuid;
+            this.hash = hash;
+            this.entity = entity;
+        }
+
+        int size() {
+            return 2 + hash.length + 16 + 4 + entity.remaining();
+        }
+    }
+
+    static class Transaction implements Journal.Transaction {
+        private final FileJournal journal;
+        private final Transaction parent;
+        private final List<Record> records = new ArrayList<>();
+
+        Transaction(FileJournal journal) {this(journal, null);}
+
+        private Transaction(FileJournal journal, Transaction parent) {
+            this.journal = journal;
+            this.parent = parent;
+        }
+
+        @SneakyThrows
+        @Override public void commit() {
+            if (parent != null) {
+                parent.records.addAll(records);
+            } else {
+                journal.write(records);
+            }
+            records.clear();
+        }
+
+        @Override public Journal.Transaction beginNested() {
+            return new Transaction(journal, this);
+        }
+
+        @Override public void rollback() {
+            records.clear();
+        }
+    }
+
+    private void write(List<Record> records) throws IOException, InterruptedException {
+        if (records.isEmpty()) {
+            return;
+        }
+        int length = 4;
+        for (Record record : records) {
+            length += record.size();
+        }
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + length);
+        frame.position(FRAME_HEADER_SIZE);
+        frame.putInt(records.size());
+        int[] offsets = new int[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            Record record = records.get(i);
+            frame.putShort((short) record.hash.length);
+            frame.put(record.hash);
+            frame.putLong(record.uuid.getMostSignificantBits());
+            frame.putLong(record.uuid.getLeastSignificantBits());
+            frame.putInt(record.entity.remaining());
+            offsets[i] = frame.position();
+            frame.put(record.entity.duplicate());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), FRAME_HEADER_SIZE, length);
+        frame.putInt(0, length);
+        frame.putInt(4, (int) crc.getValue());
+        frame.rewind();
+
+        Segment segment;
+        int position;
+        long target;
+        synchronized (writeLock) {
+            if (activeSegment.getSize() > Segment.HEADER_SIZE &&
+                    (long) activeSegment.getSize() + frame.remaining() > segmentSize) {
+                roll();
+            }
+            segment = activeSegment;
+            position = segment.append(frame);
+            written += frame.capacity();
+            target = written;
+        }
+
+        if (durable) {
+            sync(target);
+        }
+
+        for (int i = 0; i < records.size(); i++) {
+            Record record = records.get(i);
+            LocationList list = layoutLocations
+                    .computeIfAbsent(BaseEncoding.base16().encode(record.hash), LocationList::new);
+            Location location = new Location(record.uuid, segment, position + offsets[i],
+                                             record.entity.remaining(), list.getHash());
+            locations.put(record.uuid, location);
+            list.add(location);
+        }
+    }
+
+    // guarded by writeLock
+    private void roll() throws IOException {
+        activeSegment.force();
+        Segment segment = Segment.create(segmentFile(activeSegment.getId() + 1), activeSegment.getId() + 1);
+        segments.add(segment);
+        activeSegment = segment;
+    }
+
+    /**
+     * Waits until everything up to <code>target</code> is flushed, flushing it if no other thread
+     * is doing that already. One flush covers all frames written before it started.
+     */
+    private void sync(long target) throws IOException, InterruptedException {
+        while (true) {
+            synchronized (syncLock) {
+                while (syncing && synced < target) {
+                    syncLock.wait();
+                }
+                if (synced >= target) {
+                    return;
+                }
+                syncing = true;
+            }
+            long upTo = 0;
+            try {
+                Segment segment;
+                synchronized (writeLock) {
+                    upTo = written;
+                    segment = activeSegment;
+                }
+                segment.force();
+            } finally {
+                synchronized (syncLock) {
+                    synced = Math.max(synced, upTo);
+                    syncing = false;
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    @Override public <S, T> Command<S, T> journal(Journal.Transaction tx, Command<S, T> command) {
+        return (Command<S, T>) record((Transaction) tx, command);
+    }
+
+    @Override public Event journal(Journal.Transaction tx, Event event) {
+        return (Event) record((Transaction) tx, event);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entity record(Transaction tx, Entity entity) {
+        Layout layout = getLayout(entity.getClass());
+        ObjectSerializer<Entity> serializer = serialization.getSerializer(entity.getClass());
+
+        ByteBuffer buffer = serializer.serialize(entity);
+        buffer.rewind();
+        tx.records.add(new Record(entity.uuid(), layout.getHash(), buffer.asReadOnlyBuffer()));
+
+        // the journal keeps the serialized entity, so it is not affected
+        // by any later changes to the instance and there's no need to copy it
+        return entity;
+    }
+
+    @Override public Journal.Transaction beginTransaction() {
+        return new Transaction(this);
+    }
+
+    @Override public <T extends Entity> Optional<T> get(UUID uuid) {
+        Location location = locations.get(uuid);
+        if (location == null) {
+            return Optional.empty();
+        }
+        return Optional.of(read(location));
+    }
+
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    private <T extends Entity> T read(Location location) {
+        Layout<?> layout = layoutsByHash.get(location.hash);
+        if (layout == null) {
+            throw new IllegalStateException("Layout " + location.hash + " of " + location.uuid + " is not known");
+        }
+        ObjectDeserializer<Entity> deserializer = serialization.getDeserializer(layout.getLayoutClass());
+        Entity entity = deserializer.deserialize(location.segment.read(location.position, location.length));
+        entity.uuid(location.uuid);
+        return (T) entity;
+    }
+
+    @Override
+    public <T extends Command<?, ?>> CloseableIterator<EntityHandle<T>> commandIterator(Class<T> klass,
+                                                                                        QueryOptions queryOptions) {
+        return entityIterator(klass, queryOptions);
+    }
+
+    @Override
+    public <T extends Event> CloseableIterator<EntityHandle<T>> eventIterator(Class<T> klass,
+                                                                              QueryOptions queryOptions) {
+        return entityIterator(klass, queryOptions);
+    }
+
+    private <T extends Entity> CloseableIterator<EntityHandle<T>> entityIterator(Class<T> klass,
+                                                                                 QueryOptions queryOptions) {
+        Layout layout = getLayout(klass);
+        LocationList list = layoutLocations.get(BaseEncoding.base16().encode(layout.getHash()));
+        if (list == null) {
+            return new CloseableWrappingIterator<>(Collections.emptyIterator());
+        }
+        boolean eagerFetching = queryOptions.get(EagerFetching.class) != null;
+        return new CloseableWrappingIterator<>(list.snapshot().stream()
+                                                   .map(location -> eagerFetching ?
+                                                           (EntityHandle<T>) new ResolvedEntityHandle<T>(read(location)) :
+                                                           (EntityHandle<T>) new JournalEntityHandle<T>(this, location.uuid))
+                                                   .iterator());
+    }
+
+    @SneakyThrows
+    @Override public void clear() {
+        synchronized (writeLock) {
+            long id = activeSegment.getId() + 1;
+            for (Segment segment : segments) {
+                segment.close();
+                Files.delete(segment.getFile().toPath());
+            }
+            segments.clear();
+            locations.clear();
+            layoutLocations.clear();
+            activeSegment = Segment.create(segmentFile(id), id);
+            segments.add(activeSegment);
+        }
+    }
+
+    @Override public <T extends Entity> long size(Class<T> klass) {
+        LocationList list = layoutLocations.get(BaseEncoding.base16().encode(getLayout(klass).getHash()));
+        return list == null ? 0 : list.size();
+    }
+
+    @Override public <T extends Entity> boolean isEmpty(Class<T> klass) {
+        return size(klass) == 0;
+    }
+
+    private class FileJournalProperties implements Properties {
+
+        private final ObjectSerializer<HybridTimestamp> timestampSerializer =
+                serialization.getSerializer(HybridTimestamp.class);
+        private final ObjectDeserializer<HybridTimestamp> timestampDeserializer =
+                serialization.getDeserializer(HybridTimestamp.class);
+
+        @SneakyThrows
+        @Override public Optional<HybridTimestamp> getRepositoryTimestamp() {
+            File file = new File(directory, TIMESTAMP_FILE);
+            if (!file.exists()) {
+                return Optional.empty();
+            }
+            return Optional.of(timestampDeserializer.deserialize(ByteBuffer.wrap(Files.readAllBytes(file.toPath()))));
+        }
+
+        @SneakyThrows
+        @Override public synchronized void setRepositoryTimestamp(HybridTimestamp timestamp) {
+            ByteBuffer buffer = ByteBuffer.wrap(timestampSerializer.serialize(timestamp).array());
+            File file = new File(directory, TIMESTAMP_FILE);
+            File temporary = new File(directory, TIMESTAMP_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                // the contents must be durable before the rename is, otherwise a crash
+                // can leave an empty or partial timestamp file in place of the old one
+                channel.force(true);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            Segment.syncDirectory(directory.getAbsoluteFile());
+        }
+    }
+
+    @Getter
+    private final Properties properties = new FileJournalProperties();
+
+    private static class Location {
+        private final UUID uuid;
+        private final Segment segment;
+        private final int position;
+        private final int length;
+        private final String hash;
+
+        Location(UUID uuid, Segment segment, int position, int length, String hash) {
+            this.uuid = uuid;
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Append-only list of locations of a single layout
+     */
+    private static class LocationList {
+        @Getter
+        private final String hash;
+        private final List<Location> locations = new ArrayList<>();
+
+        LocationList(String hash) {
+            this.hash = hash;
+        }
+
+        synchronized void add(Location location) {
+            locations.add(location);
+        }
+
+        synchronized int size() {
+            return locations.size();
+        }
+
+        synchronized List<Location> snapshot() {
+            return new ArrayList<>(locations);
+        }
+    }
+
+    @Override public String toString() {
+        return "FileJournal[" + directory + "]";
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.file;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Journal segment file. Segments are only appended to (through {@link FileChannel}) and
+ * read through read-only memory mappings of fixed-size regions ({@value #REGION_SIZE} bytes), so
+ * that only the last region is remapped as the segment grows. Reads spanning regions get
+ * a mapping of their own.
+ * <p>
+ * Segment layout:
+ * <pre>
+ * int magic
+ * int version
+ * frame*
+ * </pre>
+ */
+@Slf4j
+class Segment implements Closeable {
+
+    static final int MAGIC = 0x45534a46;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int REGION_SIZE = 8 * 1024 * 1024;
+
+    @Getter
+    private final long id;
+    @Getter
+    private final File file;
+    private final FileChannel channel;
+
+    @Getter
+    private volatile int size;
+    // the last mapped region may be partial
+    private final AtomicReferenceArray<MappedByteBuffer> regions =
+            new AtomicReferenceArray<>(Integer.MAX_VALUE / REGION_SIZE + 1);
+
+    private Segment(long id, File file, FileChannel channel, int size) {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * Creates a segment, making sure both its header and its directory entry are on the storage device
+     */
+    static Segment create(File file, long id) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            writeHeader(channel);
+            syncDirectory(file.getAbsoluteFile().getParentFile());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Segment(id, file, channel, HEADER_SIZE);
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).rewind();
+        write(channel, header, 0);
+        channel.force(true);
+    }
+
+    static void syncDirectory(File directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // some platforms (such as Windows) don't allow to open or sync directories
+            log.debug("Can't sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Opens an existing segment
+     *
+     * @param file
+     * @param id
+     * @param last <code>true</code> if this is the last segment, in which case a missing or incomplete
+     *             header (left by a crash during {@link #create(File, long)}) is rewritten and the segment
+     *             is treated as empty
+     */
+    static Segment open(File file, long id, boolean last) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException(file + " is too large to be a journal segment");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        int read = size < HEADER_SIZE ? 0 : channel.read(header, 0);
+        if (read < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            if (last && (read < HEADER_SIZE || isZero(header))) {
+                log.warn("{} has no header, discarding its {} bytes", file, size);
+                channel.truncate(0);
+                writeHeader(channel);
+                return new Segment(id, file, channel, HEADER_SIZE);
+            }
+            channel.close();
+            throw new IOException(file + " is not a journal segment");
+        }
+        return new Segment(id, file, channel, (int) size);
+    }
+
+    private static boolean isZero(ByteBuffer header) {
+        return header.getLong(0) == 0;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Appends a frame. Must not be called concurrently.
+     *
+     * @param frame
+     * @return position of the frame within the segment
+     */
+    int append(ByteBuffer frame) throws IOException {
+        int position = size;
+        int length = frame.remaining();
+        write(channel, frame, position);
+        size = position + length;
+        return position;
+    }
+
+    /**
+     * Returns a read-only view of the segment's contents. No copying is involved.
+     *
+     * @param position
+     * @param length
+     * @return byte buffer with position set to zero and limit set to <code>length</code>
+     */
+    ByteBuffer read(int position, int length) throws IOException {
+        int region = position / REGION_SIZE;
+        int offset = position - region * REGION_SIZE;
+        if (offset + length > REGION_SIZE) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+        MappedByteBuffer buffer = regions.get(region);
+        if (buffer == null || buffer.capacity() < offset + length) {
+            buffer = map(region);
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+    private synchronized MappedByteBuffer map(int region) throws IOException {
+        MappedByteBuffer buffer = regions.get(region);
+        int start = region * REGION_SIZE;
+        int length = Math.min(REGION_SIZE, size - start);
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            regions.set(region, buffer);
+        }
+        return buffer;
+    }
+
+    private void unmap() {
+        for (int i = 0; i < regions.length(); i++) {
+            regions.set(i, null);
+        }
+    }
+
+    /**
+     * Discards everything past <code>size</code>
+     *
+     * @param size
+     */
+    synchronized void truncate(int size) throws IOException {
+        channel.truncate(size);
+        channel.force(true);
+        this.size = size;
+        unmap();
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override public void close() throws IOException {
+        channel.close();
+        unmap();
+    }
+
+    @Override public String toString() {
+        return file.getName();
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.file;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.Journal;
+import com.eventsourcing.hlc.HybridTimestamp;
+import com.eventsourcing.repository.JournalTest;
+import com.google.common.collect.ImmutableSet;
+import lombok.SneakyThrows;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Optional;
+
+import static org.testng.Assert.*;
+
+@Test
+public class FileJournalTest extends JournalTest<FileJournal> {
+
+    @SneakyThrows
+    static FileJournal createJournal() {
+        return new FileJournal(Files.createTempDirectory("es4j-file-journal").toFile());
+    }
+
+    public FileJournalTest() {
+        super(createJournal());
+    }
+
+    @SneakyThrows
+    private FileJournal openJournal(File directory) {
+        FileJournal fileJournal = new FileJournal(directory);
+        fileJournal.onCommandsAdded(ImmutableSet.of(TestCommand.class));
+        fileJournal.onEventsAdded(ImmutableSet.of(TestEvent.class));
+        fileJournal.startAsync().awaitRunning();
+        return fileJournal;
+    }
+
+    @Test
+    @SneakyThrows
+    public void recovery() {
+        File directory = Files.createTempDirectory("es4j-file-journal").toFile();
+        FileJournal fileJournal = openJournal(directory);
+
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+        TestCommand command = TestCommand.builder().build();
+        command.timestamp(timestamp);
+        TestEvent event = TestEvent.builder().timestamp(timestamp).build();
+        Journal.Transaction tx = fileJournal.beginTransaction();
+        fileJournal.journal(tx, command);
+        fileJournal.journal(tx, event);
+        tx.commit();
+        fileJournal.stopAsync().awaitTerminated();
+
+        // simulate a torn write
+        File segment = directory.listFiles((dir, name) -> name.startsWith(FileJournal.SEGMENT_PREFIX))[0];
+        long size = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(size);
+            file.writeInt(1000);
+            file.writeInt(0);
+            file.write(new byte[]{1, 2, 3});
+        }
+
+        fileJournal = openJournal(directory);
+        assertEquals(segment.length(), size);
+
+        Optional<Entity> entity = fileJournal.get(command.uuid());
+        assertTrue(entity.isPresent());
+        assertEquals(entity.get().uuid(), command.uuid());
+        assertTrue(fileJournal.get(event.uuid()).isPresent());
+        assertEquals(fileJournal.size(TestCommand.class), 1);
+        assertEquals(fileJournal.size(TestEvent.class), 1);
+
+        TestCommand command1 = TestCommand.builder().build();
+        command1.timestamp(timestamp);
+        tx = fileJournal.beginTransaction();
+        fileJournal.journal(tx, command1);
+        tx.commit();
+        fileJournal.stopAsync().awaitTerminated();
+
+        fileJournal = openJournal(directory);
+        assertEquals(fileJournal.size(TestCommand.class), 2);
+        assertTrue(fileJournal.get(command1.uuid()).isPresent());
+        fileJournal.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    @SneakyThrows
+    public void segmentRolling() {
+        File directory = Files.createTempDirectory("es4j-file-journal").toFile();
+        FileJournal fileJournal = new FileJournal(directory);
+        fileJournal.setSegmentSize(128);
+        fileJournal.onCommandsAdded(ImmutableSet.of(TestCommand.class));
+        fileJournal.startAsync().awaitRunning();
+
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+        for (int i = 0; i < 10; i++) {
+            TestCommand command = TestCommand.builder().build();
+            command.timestamp(timestamp);
+            Journal.Transaction tx = fileJournal.beginTransaction();
+            fileJournal.journal(tx, command);
+            tx.commit();
+        }
+        fileJournal.stopAsync().awaitTerminated();
+
+        assertTrue(directory.listFiles((dir, name) -> name.startsWith(FileJournal.SEGMENT_PREFIX)).length > 1);
+
+        fileJournal = openJournal(directory);
+        assertEquals(fileJournal.size(TestCommand.class), 10);
+        fileJournal.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    @SneakyThrows
+    public void headerlessSegment() {
+        File directory = Files.createTempDirectory("es4j-file-journal").toFile();
+        FileJournal fileJournal = openJournal(directory);
+
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+        TestCommand command = TestCommand.builder().build();
+        command.timestamp(timestamp);
+        Journal.Transaction tx = fileJournal.beginTransaction();
+        fileJournal.journal(tx, command);
+        tx.commit();
+        fileJournal.stopAsync().awaitTerminated();
+
+        // simulate a crash while creating the next segment
+        File segment = new File(directory, String.format("%s%020d%s", FileJournal.SEGMENT_PREFIX, 1,
+                                                         FileJournal.SEGMENT_SUFFIX));
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.writeInt(0);
+        }
+
+        fileJournal = openJournal(directory);
+        assertEquals(segment.length(), Segment.HEADER_SIZE);
+        assertTrue(fileJournal.get(command.uuid()).isPresent());
+
+        TestCommand command1 = TestCommand.builder().build();
+        command1.timestamp(timestamp);
+        tx = fileJournal.beginTransaction();
+        fileJournal.journal(tx, command1);
+        tx.commit();
+        fileJournal.stopAsync().awaitTerminated();
+
+        fileJournal = openJournal(directory);
+        assertEquals(fileJournal.size(TestCommand.class), 2);
+        assertTrue(fileJournal.get(command1.uuid()).isPresent());
+        fileJournal.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    @SneakyThrows
+    public void regions() {
+        File file = new File(Files.createTempDirectory("es4j-file-journal").toFile(), "segment");
+        try (Segment segment = Segment.create(file, 0)) {
+            ByteBuffer frame = ByteBuffer.allocate(Segment.REGION_SIZE / 2);
+            int[] positions = new int[4];
+            for (int i = 0; i < positions.length; i++) {
+                frame.clear();
+                while (frame.hasRemaining()) {
+                    frame.putInt(i);
+                }
+                frame.flip();
+                positions[i] = segment.append(frame);
+                // reads within a region, including its growing tail, and across regions
+                for (int j = 0; j <= i; j++) {
+                    ByteBuffer buffer = segment.read(positions[j], Segment.REGION_SIZE / 2);
+                    assertEquals(buffer.remaining(), Segment.REGION_SIZE / 2);
+                    assertEquals(buffer.getInt(0), j);
+                    assertEquals(buffer.getInt(buffer.limit() - 4), j);
+                }
+            }
+        }
+    }
+}
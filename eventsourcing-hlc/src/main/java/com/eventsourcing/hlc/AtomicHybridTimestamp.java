@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.hlc;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread-safe {@link HybridTimestamp} clock that doesn't require external synchronization.
+ *
+ * Every update computes a new timestamp from the current one and installs it using
+ * compare-and-set, retrying if another thread has updated the clock concurrently.
+ * Installed timestamps are never mutated, and every method returns a copy that is
+ * safe for the caller to modify.
+ */
+public class AtomicHybridTimestamp {
+
+    private final AtomicReference<HybridTimestamp> timestamp;
+
+    public AtomicHybridTimestamp(HybridTimestamp timestamp) {
+        this.timestamp = new AtomicReference<>(timestamp.clone());
+    }
+
+    /**
+     * @return current timestamp
+     */
+    public HybridTimestamp get() {
+        return timestamp.get().clone();
+    }
+
+    /**
+     * Updates timestamp for local or send events
+     *
+     * @return updated timestamp
+     */
+    public HybridTimestamp update() {
+        while (true) {
+            HybridTimestamp current = timestamp.get();
+            HybridTimestamp next = current.clone();
+            next.update();
+            if (timestamp.compareAndSet(current, next)) {
+                return next.clone();
+            }
+        }
+    }
+
+    /**
+     * Updates timestamp for a received event
+     *
+     * @param ts received timestamp
+     * @return updated timestamp
+     */
+    public HybridTimestamp update(HybridTimestamp ts) {
+        while (true) {
+            HybridTimestamp current = timestamp.get();
+            HybridTimestamp next = current.clone();
+            next.update(ts);
+            if (timestamp.compareAndSet(current, next)) {
+                return next.clone();
+            }
+        }
+    }
+
+    @Override public String toString() {
+        return timestamp.get().toString();
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.hlc;
+
+import com.google.common.util.concurrent.AbstractService;
+import lombok.SneakyThrows;
+import org.apache.commons.net.ntp.TimeStamp;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AtomicHybridTimestampTest {
+
+    private static final long TIME = new TimeStamp(new Date()).ntpValue();
+
+    static class StillPhysicalTimeProvider extends AbstractService implements PhysicalTimeProvider {
+
+        @Override
+        public long getPhysicalTime() {
+            return TIME;
+        }
+
+        @Override
+        protected void doStart() {
+            notifyStarted();
+        }
+
+        @Override
+        protected void doStop() {
+            notifyStopped();
+        }
+    }
+
+    @Test
+    public void snapshots() {
+        AtomicHybridTimestamp timestamp = new AtomicHybridTimestamp(
+                new HybridTimestamp(new StillPhysicalTimeProvider()));
+        HybridTimestamp ts = timestamp.update();
+        ts.update();
+        assertEquals(timestamp.get(), new HybridTimestamp(null, TIME, 0));
+        HybridTimestamp ts1 = timestamp.update(ts);
+        assertTrue(ts1.compareTo(ts) > 0);
+        assertEquals(timestamp.get(), ts1);
+    }
+
+    @Test @SneakyThrows
+    public void concurrentUpdates() {
+        AtomicHybridTimestamp timestamp = new AtomicHybridTimestamp(
+                new HybridTimestamp(new StillPhysicalTimeProvider()));
+        int threads = 8;
+        int updates = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<HybridTimestamp>>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                List<HybridTimestamp> timestamps = new ArrayList<>();
+                for (int j = 0; j < updates; j++) {
+                    timestamps.add(timestamp.update());
+                }
+                return timestamps;
+            }));
+        }
+        Set<HybridTimestamp> all = new TreeSet<>();
+        for (Future<List<HybridTimestamp>> future : futures) {
+            List<HybridTimestamp> timestamps = future.get();
+            for (int j = 1; j < timestamps.size(); j++) {
+                assertTrue(timestamps.get(j).compareTo(timestamps.get(j - 1)) > 0);
+            }
+            all.addAll(timestamps);
+        }
+        executor.shutdown();
+        // every issued timestamp is unique
+        assertEquals(all.size(), threads * updates);
+        assertEquals(timestamp.get().getLogicalCounter(), threads * updates - 1);
+    }
+}
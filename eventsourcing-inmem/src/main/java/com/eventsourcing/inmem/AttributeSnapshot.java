@@ -0,0 +1,286 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.index.Attribute;
+import com.eventsourcing.index.Indices;
+import com.eventsourcing.index.ReflectableAttribute;
+import com.eventsourcing.layout.Deserializer;
+import com.eventsourcing.layout.Layout;
+import com.eventsourcing.layout.Serializer;
+import com.eventsourcing.layout.TypeHandler;
+import com.eventsourcing.layout.binary.BinarySerialization;
+import com.fasterxml.classmate.TypeResolver;
+import com.google.common.io.ByteStreams;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Snapshot of attribute values of all indexed entities, stored in a file.
+ *
+ * A snapshot is tagged with the entity's layout hash, the attribute type and the attribute's
+ * fingerprint (see {@link #fingerprint(Attribute)}), and is discarded if any of these changes.
+ * Once {@link #load() loaded}, values are handed out by {@link #get(UUID)} (entities missing from
+ * the snapshot, i.e. journalled after it was taken, get their values computed as usual). Every value
+ * handed out or {@link #put(UUID, Iterable) reported} is written to a new snapshot, which replaces
+ * the previous one on {@link #commit()}.
+ * <p>
+ * The previous snapshot is memory-mapped rather than read into memory: loading it only indexes
+ * record positions by UUID, values are deserialized when handed out and records are copied
+ * to the new snapshot as is.
+ */
+@Slf4j
+class AttributeSnapshot {
+
+    private static final int VERSION = 2;
+
+    @Getter
+    private final Attribute<?, ?> attribute;
+    private final Path file;
+    private final Path temporaryFile;
+    private final byte[] layoutHash;
+    private final String type;
+    private final byte[] fingerprint;
+    private final TypeHandler typeHandler;
+    private final Serializer<Object, TypeHandler> serializer;
+    private final Deserializer<Object, TypeHandler> deserializer;
+
+    // record positions in the mapped previous snapshot, guarded by this
+    private UUIDIndex records = new UUIDIndex();
+    private ByteBuffer buffer;
+    private DataOutputStream output;
+
+    private AttributeSnapshot(Path directory, Attribute<?, ?> attribute, TypeHandler typeHandler)
+            throws Exception {
+        this.attribute = attribute;
+        String name = attribute.getEffectiveObjectType().getName() + "." + attribute.getAttributeName();
+        this.file = directory.resolve(name + ".snapshot");
+        this.temporaryFile = directory.resolve(name + ".snapshot.tmp");
+        this.layoutHash = Layout.forClass(attribute.getEffectiveObjectType()).getHash();
+        this.type = reflectedType(attribute).getTypeName();
+        this.fingerprint = fingerprint(attribute);
+        this.typeHandler = typeHandler;
+        this.serializer = BinarySerialization.getInstance().getSerializer(typeHandler);
+        this.deserializer = BinarySerialization.getInstance().getDeserializer(typeHandler);
+    }
+
+    /**
+     * @param directory snapshot directory
+     * @param attribute attribute
+     * @return snapshot or {@link Optional#empty()} if attribute values can't be serialized
+     */
+    static Optional<AttributeSnapshot> create(Path directory, Attribute<?, ?> attribute) {
+        try {
+            TypeHandler typeHandler = TypeHandler.lookup(new TypeResolver().resolve(reflectedType(attribute)));
+            return Optional.of(new AttributeSnapshot(directory, attribute, typeHandler));
+        } catch (Exception e) {
+            log.debug("Attribute {} can't be snapshotted: {}", attribute, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static Type reflectedType(Attribute<?, ?> attribute) {
+        if (attribute instanceof ReflectableAttribute) {
+            return ((ReflectableAttribute) attribute).getAttributeReflectedType();
+        }
+        return attribute.getAttributeType();
+    }
+
+    /**
+     * Fingerprints attribute's definition: its name and the bytecode of the entity class, classes listed
+     * in its {@link Indices} annotation (where index functions, including lambdas, are defined) and
+     * the attribute's own class (if available). Any change to these classes discards the snapshot,
+     * even if it didn't affect attribute values.
+     *
+     * @param attribute attribute
+     * @return fingerprint
+     */
+    @SneakyThrows
+    static byte[] fingerprint(Attribute<?, ?> attribute) {
+        MessageDigest digest = MessageDigest.getInstance(Layout.DIGEST_ALGORITHM);
+        digest.update(attribute.getAttributeName().getBytes(StandardCharsets.UTF_8));
+        Class<?> entityClass = attribute.getEffectiveObjectType();
+        List<Class<?>> classes = new ArrayList<>();
+        classes.add(entityClass);
+        if (entityClass.isAnnotationPresent(Indices.class)) {
+            classes.addAll(Arrays.asList(entityClass.getAnnotation(Indices.class).value()));
+        }
+        classes.add(attribute.getClass());
+        for (Class<?> klass : classes) {
+            ClassLoader classLoader = klass.getClassLoader() == null ? ClassLoader.getSystemClassLoader() :
+                    klass.getClassLoader();
+            try (InputStream stream = classLoader.getResourceAsStream(klass.getName().replace('.', '/') + ".class")) {
+                // bytecode of classes generated at runtime (such as lambdas) is not available
+                if (stream != null) {
+                    digest.update(ByteStreams.toByteArray(stream));
+                }
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Maps the previous snapshot (if any) and starts writing a new one
+     */
+    @SneakyThrows
+    void load() {
+        if (Files.exists(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    log.warn("Discarding snapshot {} larger than 2GB", file);
+                } else {
+                    ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    if (readHeader(mapped)) {
+                        indexRecords(mapped);
+                        buffer = mapped;
+                    } else {
+                        log.info("Discarding outdated snapshot {}", file);
+                    }
+                }
+            } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+                log.warn("Discarding unreadable snapshot {}", file, e);
+                records.clear();
+            }
+        }
+        Files.createDirectories(file.getParent());
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)));
+        output.writeInt(VERSION);
+        output.writeInt(layoutHash.length);
+        output.write(layoutHash);
+        output.writeUTF(type);
+        output.writeInt(fingerprint.length);
+        output.write(fingerprint);
+    }
+
+    private boolean readHeader(ByteBuffer input) throws IOException {
+        if (input.getInt() != VERSION) {
+            return false;
+        }
+        byte[] hash = new byte[input.getInt()];
+        input.get(hash);
+        if (!Arrays.equals(hash, layoutHash)) {
+            return false;
+        }
+        byte[] typeName = new byte[input.getShort() & 0xFFFF];
+        input.get(typeName);
+        // attribute types are plain class names, for which modified UTF-8 and UTF-8 are the same
+        if (!new String(typeName, StandardCharsets.UTF_8).equals(type)) {
+            return false;
+        }
+        byte[] attributeFingerprint = new byte[input.getInt()];
+        input.get(attributeFingerprint);
+        return Arrays.equals(attributeFingerprint, fingerprint);
+    }
+
+    private void indexRecords(ByteBuffer input) {
+        while (input.hasRemaining()) {
+            int position = input.position();
+            UUID uuid = new UUID(input.getLong(), input.getLong());
+            int size = input.getInt();
+            for (int i = 0; i < size; i++) {
+                if (input.get() != 0) {
+                    int length = input.getInt();
+                    input.position(input.position() + length);
+                }
+            }
+            records.put(uuid, position);
+        }
+    }
+
+    /**
+     * Releases the previous snapshot. Its records that weren't requested are dropped (these entities
+     * are no longer in the journal)
+     */
+    synchronized void loaded() {
+        records = new UUIDIndex();
+        buffer = null;
+    }
+
+    /**
+     * @param uuid entity UUID
+     * @return snapshotted values or <code>null</code> if there are none
+     */
+    @SneakyThrows
+    synchronized List<Object> get(UUID uuid) {
+        long position = buffer == null ? -1 : records.get(uuid);
+        if (position < 0) {
+            return null;
+        }
+        records.remove(uuid);
+        ByteBuffer record = buffer.duplicate();
+        record.position((int) position + 16);
+        int size = record.getInt();
+        List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (record.get() != 0) {
+                int length = record.getInt();
+                ByteBuffer value = record.slice();
+                value.limit(length);
+                list.add(deserializer.deserialize(typeHandler, value));
+                record.position(record.position() + length);
+            } else {
+                list.add(null);
+            }
+        }
+        if (output != null) {
+            byte[] bytes = new byte[record.position() - (int) position];
+            record.position((int) position);
+            record.get(bytes);
+            output.write(bytes);
+        }
+        return list;
+    }
+
+    @SneakyThrows
+    synchronized void put(UUID uuid, Iterable<?> list) {
+        if (output == null) {
+            return;
+        }
+        List<Object> objects = new ArrayList<>();
+        list.forEach(objects::add);
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+        output.writeInt(objects.size());
+        for (Object value : objects) {
+            output.writeBoolean(value != null);
+            if (value != null) {
+                ByteBuffer buffer = ByteBuffer.allocate(serializer.size(typeHandler, value));
+                serializer.serialize(typeHandler, value, buffer);
+                output.writeInt(buffer.capacity());
+                output.write(buffer.array());
+            }
+        }
+    }
+
+    /**
+     * Replaces the previous snapshot with the new one. No more values are recorded after this.
+     */
+    @SneakyThrows
+    synchronized void commit() {
+        if (output == null) {
+            return;
+        }
+        output.close();
+        output = null;
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
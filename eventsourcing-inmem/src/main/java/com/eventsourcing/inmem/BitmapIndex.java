@@ -0,0 +1,388 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.EntityHandle;
+import com.eventsourcing.index.Attribute;
+import com.eventsourcing.index.KeyObjectStore;
+import com.eventsourcing.utils.CloseableWrappingIterator;
+import com.google.common.collect.AbstractIterator;
+import com.googlecode.cqengine.index.Index;
+import com.googlecode.cqengine.index.support.*;
+import com.googlecode.cqengine.persistence.support.ObjectSet;
+import com.googlecode.cqengine.persistence.support.ObjectStore;
+import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.query.option.QueryOptions;
+import com.googlecode.cqengine.query.simple.Equal;
+import com.googlecode.cqengine.query.simple.Has;
+import com.googlecode.cqengine.query.simple.In;
+import com.googlecode.cqengine.resultset.ResultSet;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Equality index for low-cardinality attributes (booleans, enums, statuses, etc.) that keeps
+ * a {@link CompressedBitmap} of entity ordinals (see {@link EntityOrdinals}) per key.
+ * <p>
+ * {@link MemoryIndexEngine} shares ordinals between all bitmap indices of an entity class,
+ * which allows its collections to evaluate <code>and</code>, <code>or</code> and <code>not</code>
+ * combinations of queries on such indices with bitmap operations.
+ */
+public class BitmapIndex<A, O extends Entity>
+        extends com.googlecode.cqengine.index.support.AbstractAttributeIndex<A, EntityHandle<O>>
+        implements KeyStatisticsAttributeIndex<A, EntityHandle<O>> {
+
+    protected static final int INDEX_RETRIEVAL_COST = 30;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final EntityOrdinals ordinals;
+    private KeyObjectStore<UUID, EntityHandle<O>> keyObjectStore;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // guarded by lock
+    private final Map<Object, CompressedBitmap> bitmaps = new LinkedHashMap<>();
+    // all indexed entities, including those without values, guarded by lock
+    private CompressedBitmap entities = new CompressedBitmap();
+
+    public static <A, O extends Entity> BitmapIndex<A, O> onAttribute(Attribute<O, A> attribute) {
+        return new BitmapIndex<>(attribute, new EntityOrdinals());
+    }
+
+    static <A, O extends Entity> BitmapIndex<A, O> onAttribute(Attribute<O, A> attribute, EntityOrdinals ordinals) {
+        return new BitmapIndex<>(attribute, ordinals);
+    }
+
+    protected BitmapIndex(Attribute<O, A> attribute, EntityOrdinals ordinals) {
+        super(attribute, new HashSet<Class<? extends Query>>() {{
+            add(Equal.class);
+            add(In.class);
+            add(Has.class);
+        }});
+        this.ordinals = ordinals;
+    }
+
+    // byte arrays don't implement equals()
+    private static Object key(Object value) {
+        return value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A> A value(Object key) {
+        return (A) (key instanceof ByteBuffer ? ((ByteBuffer) key).array() : key);
+    }
+
+    @Override public boolean addAll(ObjectSet<EntityHandle<O>> objectSet, QueryOptions queryOptions) {
+        try (CloseableIterator<EntityHandle<O>> iterator = objectSet.iterator()) {
+            while (iterator.hasNext()) {
+                EntityHandle<O> object = iterator.next();
+                Iterable<A> values = attribute.getValues(object, queryOptions);
+                lock.writeLock().lock();
+                try {
+                    int ordinal = ordinals.get(object.uuid());
+                    if (ordinal < 0 || !entities.contains(ordinal)) {
+                        ordinal = ordinals.acquire(object.uuid());
+                        entities.add(ordinal);
+                    }
+                    for (A value : values) {
+                        bitmaps.computeIfAbsent(key(value), k -> new CompressedBitmap()).add(ordinal);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override public boolean removeAll(ObjectSet<EntityHandle<O>> objectSet, QueryOptions queryOptions) {
+        try (CloseableIterator<EntityHandle<O>> iterator = objectSet.iterator()) {
+            while (iterator.hasNext()) {
+                EntityHandle<O> object = iterator.next();
+                Iterable<A> values = attribute.getValues(object, queryOptions);
+                lock.writeLock().lock();
+                try {
+                    int ordinal = ordinals.get(object.uuid());
+                    if (ordinal < 0 || !entities.contains(ordinal)) {
+                        continue;
+                    }
+                    for (A value : values) {
+                        Object key = key(value);
+                        CompressedBitmap bitmap = bitmaps.get(key);
+                        if (bitmap != null) {
+                            bitmap.remove(ordinal);
+                            if (bitmap.isEmpty()) {
+                                bitmaps.remove(key);
+                            }
+                        }
+                    }
+                    entities.remove(ordinal);
+                    ordinals.release(ordinal);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override public void clear(QueryOptions queryOptions) {
+        lock.writeLock().lock();
+        try {
+            for (PrimitiveIterator.OfInt iterator = entities.iterator(); iterator.hasNext(); ) {
+                ordinals.release(iterator.nextInt());
+            }
+            bitmaps.clear();
+            entities = new CompressedBitmap();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override public void init(ObjectStore<EntityHandle<O>> objectStore, QueryOptions queryOptions) {
+        if (objectStore instanceof KeyObjectStore) {
+            keyObjectStore = (KeyObjectStore<UUID, EntityHandle<O>>) objectStore;
+        } else {
+            keyObjectStore = new ScanningKeyObjectStore<>(objectStore);
+        }
+        addAll(ObjectSet.fromObjectStore(objectStore, queryOptions), queryOptions);
+    }
+
+    /**
+     * Returns a copy of the bitmap of entities matching an {@link Equal}, {@link In} or {@link Has} query
+     */
+    CompressedBitmap bitmap(Query<EntityHandle<O>> query) {
+        lock.readLock().lock();
+        try {
+            Class<?> queryClass = query.getClass();
+            if (queryClass.equals(Equal.class)) {
+                CompressedBitmap bitmap = bitmaps.get(key(((Equal<EntityHandle<O>, A>) query).getValue()));
+                return bitmap == null ? new CompressedBitmap() : bitmap.copy();
+            } else if (queryClass.equals(In.class)) {
+                CompressedBitmap result = new CompressedBitmap();
+                for (A value : ((In<EntityHandle<O>, A>) query).getValues()) {
+                    CompressedBitmap bitmap = bitmaps.get(key(value));
+                    if (bitmap != null) {
+                        result = result.or(bitmap);
+                    }
+                }
+                return result;
+            } else if (queryClass.equals(Has.class)) {
+                return universe();
+            } else {
+                throw new IllegalArgumentException("Unsupported query: " + query);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a bitmap of all entities that have a value of the attribute
+     */
+    CompressedBitmap universe() {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap result = new CompressedBitmap();
+            for (CompressedBitmap bitmap : bitmaps.values()) {
+                result = result.or(bitmap);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a result set of entities in the bitmap
+     *
+     * @param epoch {@link EntityOrdinals#epoch()} observed before the bitmap was taken
+     */
+    ResultSet<EntityHandle<O>> resultSet(CompressedBitmap bitmap, long epoch, Query<EntityHandle<O>> query,
+                                         QueryOptions queryOptions) {
+        return new BitmapResultSet(bitmap, epoch, query, queryOptions);
+    }
+
+    @Override public ResultSet<EntityHandle<O>> retrieve(Query<EntityHandle<O>> query, QueryOptions queryOptions) {
+        long epoch = ordinals.epoch();
+        return resultSet(bitmap(query), epoch, query, queryOptions);
+    }
+
+    /**
+     * Iterates entities in the bitmap, skipping ordinals reassigned after the epoch
+     */
+    private Iterator<EntityHandle<O>> entities(CompressedBitmap bitmap, long epoch) {
+        PrimitiveIterator.OfInt iterator = bitmap.iterator();
+        return new AbstractIterator<EntityHandle<O>>() {
+            @Override protected EntityHandle<O> computeNext() {
+                while (iterator.hasNext()) {
+                    UUID uuid = ordinals.uuid(iterator.nextInt(), epoch);
+                    if (uuid != null) {
+                        return keyObjectStore.get(uuid);
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    @Override public CloseableIterable<A> getDistinctKeys(QueryOptions queryOptions) {
+        List<A> keys = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            bitmaps.keySet().forEach(key -> keys.add(value(key)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return () -> new CloseableWrappingIterator<>(keys.iterator());
+    }
+
+    @Override public Integer getCountForKey(A key, QueryOptions queryOptions) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap bitmap = bitmaps.get(key(key));
+            return bitmap == null ? 0 : bitmap.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override public Integer getCountOfDistinctKeys(QueryOptions queryOptions) {
+        lock.readLock().lock();
+        try {
+            return bitmaps.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override public CloseableIterable<KeyStatistics<A>> getStatisticsForDistinctKeys(QueryOptions queryOptions) {
+        List<KeyStatistics<A>> statistics = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            bitmaps.forEach((key, bitmap) -> statistics.add(new KeyStatistics<>(value(key), bitmap.cardinality())));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return () -> new CloseableWrappingIterator<>(statistics.iterator());
+    }
+
+    /**
+     * Iterates keys and entities lazily, taking one key's bitmap at a time
+     */
+    @Override
+    public CloseableIterable<KeyValue<A, EntityHandle<O>>> getKeysAndValues(QueryOptions queryOptions) {
+        return () -> {
+            long epoch = ordinals.epoch();
+            Iterator<Object> keys = keys().iterator();
+            return new CloseableWrappingIterator<>(new AbstractIterator<KeyValue<A, EntityHandle<O>>>() {
+                private A key;
+                private Iterator<EntityHandle<O>> entities = Collections.emptyIterator();
+
+                @Override protected KeyValue<A, EntityHandle<O>> computeNext() {
+                    while (!entities.hasNext()) {
+                        if (!keys.hasNext()) {
+                            return endOfData();
+                        }
+                        Object next = keys.next();
+                        key = value(next);
+                        entities = entities(bitmap(next), epoch);
+                    }
+                    return new KeyValueMaterialized<>(key, entities.next());
+                }
+            });
+        };
+    }
+
+    private Collection<Object> keys() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(bitmaps.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private CompressedBitmap bitmap(Object key) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap bitmap = bitmaps.get(key);
+            return bitmap == null ? new CompressedBitmap() : bitmap.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override public boolean isMutable() {
+        return true;
+    }
+
+    @Override public boolean isQuantized() {
+        return false;
+    }
+
+    @Override public Index<EntityHandle<O>> getEffectiveIndex() {
+        return this;
+    }
+
+    @Override public String toString() {
+        return "BitmapIndex[" + attribute.getAttributeName() + "]";
+    }
+
+    private class BitmapResultSet extends ResultSet<EntityHandle<O>> {
+        private final CompressedBitmap bitmap;
+        private final long epoch;
+        @Getter
+        private final Query<EntityHandle<O>> query;
+        @Getter
+        private final QueryOptions queryOptions;
+        private final int size;
+
+        private BitmapResultSet(CompressedBitmap bitmap, long epoch, Query<EntityHandle<O>> query,
+                                QueryOptions queryOptions) {
+            this.bitmap = bitmap;
+            this.epoch = epoch;
+            this.query = query;
+            this.queryOptions = queryOptions;
+            size = bitmap.cardinality();
+        }
+
+        @Override public Iterator<EntityHandle<O>> iterator() {
+            return entities(bitmap, epoch);
+        }
+
+        @Override public boolean contains(EntityHandle<O> object) {
+            int ordinal = ordinals.get(object.uuid(), epoch);
+            return ordinal >= 0 && bitmap.contains(ordinal);
+        }
+
+        @Override public boolean matches(EntityHandle<O> object) {
+            return query.matches(object, queryOptions);
+        }
+
+        @Override public int getRetrievalCost() {
+            return INDEX_RETRIEVAL_COST;
+        }
+
+        @Override public int getMergeCost() {
+            return size;
+        }
+
+        @Override public int size() {
+            return size;
+        }
+
+        @Override public void close() {
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Compressed bitmap of non-negative <code>int</code>s, organized the same way Roaring bitmaps are:
+ * values are split into chunks by their upper 16 bits and every chunk is kept either as a sorted
+ * <code>char[]</code> (up to {@value #ARRAY_LIMIT} values) or as a 2<sup>16</sup>-bit <code>long[]</code>.
+ * {@link #and(CompressedBitmap)}, {@link #or(CompressedBitmap)} and {@link #andNot(CompressedBitmap)}
+ * return new bitmaps and don't share chunks with their operands. Not thread-safe.
+ */
+final class CompressedBitmap {
+
+    static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = (1 << 16) / 64;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    CompressedBitmap() {
+        this(4);
+    }
+
+    private CompressedBitmap(int capacity) {
+        keys = new char[Math.max(capacity, 1)];
+        containers = new Container[Math.max(capacity, 1)];
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void append(char key, Container container) {
+        if (container.cardinality() > 0) {
+            insert(size, key, container);
+        }
+    }
+
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        int i = indexOf(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) value);
+        } else {
+            insert(-i - 1, key, new ArrayContainer(1).add((char) value));
+        }
+    }
+
+    void remove(int value) {
+        int i = indexOf((char) (value >>> 16));
+        if (i >= 0) {
+            Container container = containers[i].remove((char) value);
+            if (container.cardinality() == 0) {
+                System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+                containers[--size] = null;
+            } else {
+                containers[i] = container;
+            }
+        }
+    }
+
+    boolean contains(int value) {
+        int i = indexOf((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    CompressedBitmap copy() {
+        CompressedBitmap copy = new CompressedBitmap(size);
+        for (int i = 0; i < size; i++) {
+            copy.append(keys[i], containers[i].copy());
+        }
+        return copy;
+    }
+
+    CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(Math.min(size, other.size));
+        for (int i = 0, j = 0; i < size && j < other.size; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], containers[i++].and(other.containers[j++]));
+            }
+        }
+        return result;
+    }
+
+    CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(size + other.size);
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i++].copy());
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j++].copy());
+            } else {
+                result.append(keys[i], containers[i++].or(other.containers[j++]));
+            }
+        }
+        return result;
+    }
+
+    CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(size);
+        for (int i = 0; i < size; i++) {
+            int j = other.indexOf(keys[i]);
+            result.append(keys[i], j < 0 ? containers[i].copy() : containers[i].andNot(other.containers[j]));
+        }
+        return result;
+    }
+
+    PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int i = 0;
+            private int high;
+            private PrimitiveIterator.OfInt current;
+
+            @Override public boolean hasNext() {
+                while (current == null || !current.hasNext()) {
+                    if (i == size) {
+                        return false;
+                    }
+                    high = keys[i] << 16;
+                    current = containers[i++].iterator();
+                }
+                return true;
+            }
+
+            @Override public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return high | current.nextInt();
+            }
+        };
+    }
+
+    private static abstract class Container {
+        abstract Container add(char value);
+        abstract Container remove(char value);
+        abstract boolean contains(char value);
+        abstract int cardinality();
+        abstract Container copy();
+        abstract Container and(Container other);
+        abstract Container or(Container other);
+        abstract Container andNot(Container other);
+        abstract PrimitiveIterator.OfInt iterator();
+        // a new bitmap of container's values
+        abstract long[] toWords();
+    }
+
+    private static Container fromWords(long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality > ARRAY_LIMIT) {
+            return new BitmapContainer(words, cardinality);
+        }
+        ArrayContainer container = new ArrayContainer(cardinality);
+        for (int w = 0; w < words.length; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                container.values[container.cardinality++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return container;
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer(int capacity) {
+            values = new char[Math.max(capacity, 1)];
+        }
+
+        @Override Container add(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return new BitmapContainer(toWords(), cardinality).add(value);
+            }
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_LIMIT));
+            }
+            i = -i - 1;
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override Container remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override int cardinality() {
+            return cardinality;
+        }
+
+        @Override Container copy() {
+            ArrayContainer copy = new ArrayContainer(cardinality);
+            System.arraycopy(values, 0, copy.values, 0, cardinality);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override Container and(Container other) {
+            ArrayContainer result = new ArrayContainer(Math.min(cardinality, other.cardinality()));
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    result.values[result.cardinality++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        @Override Container or(Container other) {
+            if (!(other instanceof ArrayContainer)) {
+                return other.or(this);
+            }
+            if (cardinality + other.cardinality() > ARRAY_LIMIT) {
+                long[] words = toWords();
+                for (int i = 0; i < ((ArrayContainer) other).cardinality; i++) {
+                    char value = ((ArrayContainer) other).values[i];
+                    words[value >>> 6] |= 1L << value;
+                }
+                return fromWords(words);
+            }
+            ArrayContainer that = (ArrayContainer) other;
+            ArrayContainer result = new ArrayContainer(cardinality + that.cardinality);
+            int i = 0, j = 0;
+            while (i < cardinality || j < that.cardinality) {
+                char value;
+                if (j == that.cardinality || (i < cardinality && values[i] < that.values[j])) {
+                    value = values[i++];
+                } else if (i == cardinality || values[i] > that.values[j]) {
+                    value = that.values[j++];
+                } else {
+                    value = values[i++];
+                    j++;
+                }
+                result.values[result.cardinality++] = value;
+            }
+            return result;
+        }
+
+        @Override Container andNot(Container other) {
+            ArrayContainer result = new ArrayContainer(cardinality);
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result.values[result.cardinality++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        @Override PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                private int i = 0;
+
+                @Override public boolean hasNext() {
+                    return i < cardinality;
+                }
+
+                @Override public int nextInt() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return values[i++];
+                }
+            };
+        }
+
+        @Override long[] toWords() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override Container add(char value) {
+            long word = words[value >>> 6];
+            words[value >>> 6] = word | (1L << value);
+            if (word != words[value >>> 6]) {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override Container remove(char value) {
+            long word = words[value >>> 6];
+            words[value >>> 6] = word & ~(1L << value);
+            if (word != words[value >>> 6]) {
+                cardinality--;
+            }
+            return cardinality > ARRAY_LIMIT ? this : fromWords(words);
+        }
+
+        @Override boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override int cardinality() {
+            return cardinality;
+        }
+
+        @Override Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] result = new long[BITMAP_WORDS];
+            long[] that = ((BitmapContainer) other).words;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & that[i];
+            }
+            return fromWords(result);
+        }
+
+        @Override Container or(Container other) {
+            long[] result = other.toWords();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] |= words[i];
+            }
+            return fromWords(result);
+        }
+
+        @Override Container andNot(Container other) {
+            long[] result = other.toWords();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & ~result[i];
+            }
+            return fromWords(result);
+        }
+
+        @Override PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                private int w = 0;
+                private long word = words[0];
+
+                @Override public boolean hasNext() {
+                    while (word == 0) {
+                        if (w == BITMAP_WORDS - 1) {
+                            return false;
+                        }
+                        word = words[++w];
+                    }
+                    return true;
+                }
+
+                @Override public int nextInt() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int value = w * 64 + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    return value;
+                }
+            };
+        }
+
+        @Override long[] toWords() {
+            return words.clone();
+        }
+    }
+}
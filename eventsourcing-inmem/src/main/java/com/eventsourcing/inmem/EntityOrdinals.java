@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Assigns dense ordinals to entity UUIDs, so that entities can be kept in {@link CompressedBitmap}s.
+ * {@link BitmapIndex}es that share ordinals can be combined with bitmap operations.
+ * <p>
+ * Every index holding an entity counts a reference to its ordinal, entities with at least one
+ * reference (including those without any indexed values) make up {@link #entities()}. Once the last
+ * reference is released, the ordinal is reclaimed and assigned to the next new entity.
+ * <p>
+ * Since bitmaps can outlive the entities in them, lookups take an {@link #epoch()} observed before
+ * the bitmap was taken and disregard ordinals reassigned since.
+ */
+class EntityOrdinals {
+
+    private final UUIDIndex index = new UUIDIndex();
+    // msb, lsb pairs by ordinal
+    private long[] uuids = new long[1024];
+    // number of indices holding an entity, by ordinal
+    private int[] references = new int[512];
+    // epoch at which an ordinal was last assigned, by ordinal
+    private long[] assigned = new long[512];
+    // ordinals with references
+    private final CompressedBitmap entities = new CompressedBitmap();
+    // reclaimed ordinals
+    private int[] free = new int[16];
+    private int freeSize;
+    private int size;
+    // number of reassignments
+    private long epoch;
+
+    /**
+     * Returns an ordinal of the UUID, assigning a new one if necessary, and counts a reference to it
+     */
+    synchronized int acquire(UUID uuid) {
+        int ordinal = ordinal(uuid);
+        if (references[ordinal]++ == 0) {
+            entities.add(ordinal);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Releases a reference acquired with {@link #acquire(UUID)}, reclaiming the ordinal if it was the last one
+     */
+    synchronized void release(int ordinal) {
+        if (--references[ordinal] == 0) {
+            entities.remove(ordinal);
+            index.remove(uuid(ordinal));
+            if (freeSize == free.length) {
+                free = Arrays.copyOf(free, free.length * 2);
+            }
+            free[freeSize++] = ordinal;
+        }
+    }
+
+    /**
+     * Returns a copy of the bitmap of entities held by any index
+     */
+    synchronized CompressedBitmap entities() {
+        return entities.copy();
+    }
+
+    /**
+     * Returns the current epoch, which changes every time a reclaimed ordinal is reassigned
+     */
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    private int ordinal(UUID uuid) {
+        long existing = index.get(uuid);
+        if (existing >= 0) {
+            return (int) existing;
+        }
+        int ordinal;
+        if (freeSize > 0) {
+            ordinal = free[--freeSize];
+            assigned[ordinal] = ++epoch;
+        } else {
+            if (size == Integer.MAX_VALUE / 2) {
+                throw new IllegalStateException("Too many entities");
+            }
+            if (size * 2 == uuids.length) {
+                uuids = Arrays.copyOf(uuids, uuids.length * 2);
+                references = Arrays.copyOf(references, references.length * 2);
+                assigned = Arrays.copyOf(assigned, assigned.length * 2);
+            }
+            ordinal = size++;
+        }
+        uuids[ordinal * 2] = uuid.getMostSignificantBits();
+        uuids[ordinal * 2 + 1] = uuid.getLeastSignificantBits();
+        index.put(uuid, ordinal);
+        return ordinal;
+    }
+
+    /**
+     * @return ordinal of the UUID or -1 if none is assigned
+     */
+    synchronized int get(UUID uuid) {
+        return (int) index.get(uuid);
+    }
+
+    /**
+     * @return ordinal of the UUID or -1 if none is assigned or it was assigned after the epoch
+     */
+    synchronized int get(UUID uuid, long epoch) {
+        int ordinal = (int) index.get(uuid);
+        return ordinal >= 0 && assigned[ordinal] <= epoch ? ordinal : -1;
+    }
+
+    /**
+     * @return UUID the ordinal was assigned to at the epoch or <code>null</code> if it was reassigned since
+     */
+    synchronized UUID uuid(int ordinal, long epoch) {
+        return assigned[ordinal] <= epoch ? uuid(ordinal) : null;
+    }
+
+    private UUID uuid(int ordinal) {
+        return new UUID(uuids[ordinal * 2], uuids[ordinal * 2 + 1]);
+    }
+}
@@ -13,38 +13,104 @@ import com.eventsourcing.Journal;
 import com.eventsourcing.Repository;
 import com.eventsourcing.index.CQIndexEngine;
 import com.eventsourcing.index.IndexEngine;
+import com.eventsourcing.queries.options.AttributeValueCache;
+import com.eventsourcing.queries.options.SkipJournalScan;
 import com.googlecode.cqengine.ConcurrentIndexedCollection;
 import com.googlecode.cqengine.IndexedCollection;
 import com.googlecode.cqengine.attribute.Attribute;
 import com.googlecode.cqengine.attribute.MultiValueAttribute;
+import com.googlecode.cqengine.index.AttributeIndex;
+import com.googlecode.cqengine.index.Index;
 import com.googlecode.cqengine.index.compound.CompoundIndex;
 import com.googlecode.cqengine.index.hash.HashIndex;
 import com.googlecode.cqengine.index.navigable.NavigableIndex;
 import com.googlecode.cqengine.index.radix.RadixTreeIndex;
 import com.googlecode.cqengine.index.radixinverted.InvertedRadixTreeIndex;
 import com.googlecode.cqengine.index.radixreversed.ReversedRadixTreeIndex;
+import com.googlecode.cqengine.index.support.CloseableIterator;
 import com.googlecode.cqengine.index.suffix.SuffixTreeIndex;
 import com.googlecode.cqengine.index.unique.UniqueIndex;
 import com.googlecode.cqengine.persistence.Persistence;
+import com.googlecode.cqengine.persistence.support.ObjectSet;
 import com.googlecode.cqengine.query.Query;
 import com.googlecode.cqengine.query.option.QueryOptions;
+import com.googlecode.cqengine.query.logical.And;
+import com.googlecode.cqengine.query.logical.LogicalQuery;
+import com.googlecode.cqengine.query.logical.Not;
+import com.googlecode.cqengine.query.logical.Or;
+import com.googlecode.cqengine.query.option.OrderByOption;
 import com.googlecode.cqengine.query.simple.Equal;
+import com.googlecode.cqengine.query.simple.Has;
+import com.googlecode.cqengine.query.simple.In;
+import com.googlecode.cqengine.query.simple.SimpleQuery;
 import com.googlecode.cqengine.resultset.ResultSet;
+import com.googlecode.cqengine.resultset.connective.ResultSetIntersection;
+import lombok.Getter;
 import org.osgi.service.component.annotations.Component;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component(property = {"type=MemoryIndexEngine"})
 public class MemoryIndexEngine extends CQIndexEngine implements IndexEngine {
 
+    /**
+     * Directory to keep index snapshots in. If set, values of indexed attributes are stored there
+     * when the engine is stopped, and are used on the next start to build indices without fetching
+     * entities from the journal (except for entities journalled since the snapshot was taken).
+     * Disabled (<code>null</code>) by default.
+     */
+    @Getter
+    private Path snapshotDirectory;
+
+    /**
+     * When enabled, equality indices on attributes of primitive key types (see {@link OffHeapHashIndex}) and
+     * strings are kept off-heap. Disabled by default.
+     * <p>
+     * Note that off-heap indices are limited to 2GB of keys each and their memory is only freed when they
+     * are garbage collected.
+     */
+    @Getter
+    private boolean offHeapIndices = false;
+
+    /**
+     * When enabled, equality indices on boolean and enum attributes are {@link BitmapIndex}es, which allows
+     * to evaluate <code>and</code>, <code>or</code> and <code>not</code> combinations of queries on them with
+     * bitmap operations. Disabled by default.
+     */
+    @Getter
+    private boolean bitmapIndices = false;
+
+    // bitmap indices of the same entity class share ordinals
+    private final Map<Class<?>, EntityOrdinals> ordinals = new ConcurrentHashMap<>();
+
     @Override public String getType() {
         return "MemoryIndexEngine";
     }
 
+    public void setSnapshotDirectory(Path snapshotDirectory) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    public void setOffHeapIndices(boolean offHeapIndices) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.offHeapIndices = offHeapIndices;
+    }
+
+    public void setBitmapIndices(boolean bitmapIndices) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.bitmapIndices = bitmapIndices;
+    }
+
     @Override
     public void setRepository(Repository repository) throws IllegalStateException {
         if (isRunning()) {
@@ -63,7 +129,20 @@ public class MemoryIndexEngine extends CQIndexEngine implements IndexEngine {
 
     @Override
     protected List<IndexCapabilities> getIndexMatrix() {
-        return Arrays.asList(
+        List<IndexCapabilities> matrix = new ArrayList<>();
+        if (offHeapIndices || bitmapIndices) {
+            matrix.add(new IndexCapabilities<Attribute>("Equality",
+                                                        new IndexFeature[]{IndexFeature.EQ, IndexFeature.IN},
+                                                        this::equalityIndex));
+        }
+        if (offHeapIndices) {
+            matrix.add(new IndexCapabilities<Attribute>("OffHeapUnique",
+                                                        new IndexFeature[]{IndexFeature.UNIQUE, IndexFeature.EQ, IndexFeature.IN},
+                                                        attr -> offHeapCompatible(attr) ?
+                                                                OffHeapHashIndex.onAttribute((com.eventsourcing.index.Attribute) attr, true) :
+                                                                UniqueIndex.onAttribute(compatibleAttribute(attr))));
+        }
+        matrix.addAll(Arrays.asList(
                 new IndexCapabilities<Attribute>("Hash",
                                                  new IndexFeature[]{IndexFeature.EQ, IndexFeature.IN, IndexFeature.QZ},
                                                  attr -> HashIndex.onAttribute(compatibleAttribute(attr))),
@@ -93,31 +172,277 @@ public class MemoryIndexEngine extends CQIndexEngine implements IndexEngine {
                 new IndexCapabilities<Attribute>("SuffixTree",
                                                  new IndexFeature[]{IndexFeature.EQ, IndexFeature.IN, IndexFeature.EW, IndexFeature.SC},
                                                  attr -> SuffixTreeIndex.onAttribute(compatibleAttribute(attr)))
-        );
+        ));
+        return matrix;
 
     }
 
+    /**
+     * Bitmap indices are used for low-cardinality attributes (booleans and enums)
+     */
+    private static boolean bitmapCompatible(Attribute attribute) {
+        return attribute instanceof com.eventsourcing.index.Attribute &&
+                (attribute.getAttributeType() == Boolean.class || attribute.getAttributeType().isEnum());
+    }
+
+    private Index equalityIndex(Attribute attribute) {
+        if (bitmapIndices && bitmapCompatible(attribute)) {
+            com.eventsourcing.index.Attribute attr = (com.eventsourcing.index.Attribute) attribute;
+            return BitmapIndex.onAttribute(attr, ordinals.computeIfAbsent(attr.getEffectiveObjectType(),
+                                                                          klass -> new EntityOrdinals()));
+        }
+        if (offHeapIndices && offHeapCompatible(attribute)) {
+            return OffHeapHashIndex.onAttribute((com.eventsourcing.index.Attribute) attribute);
+        }
+        return HashIndex.onAttribute(compatibleAttribute(attribute));
+    }
+
+    /**
+     * Off-heap hash indices are used for attributes with keys that are either stored as primitives
+     * (UUIDs, longs and ints, such as references to other entities), or strings, other attributes are
+     * indexed on-heap.
+     */
+    private static boolean offHeapCompatible(Attribute attribute) {
+        return attribute instanceof com.eventsourcing.index.Attribute &&
+                (OffHeapHashIndex.isPrimitiveKeyType(attribute.getAttributeType()) ||
+                        attribute.getAttributeType() == String.class);
+    }
+
     @Override protected <T extends Entity> IndexedCollection<EntityHandle<T>>
             createIndexedCollection(Persistence<EntityHandle<T>, ? extends Comparable> persistence) {
-        return new ConcurrentMemoryIndexedCollection<>(persistence);
+        return new ConcurrentMemoryIndexedCollection<>(persistence, snapshotDirectory);
     }
 
-    private static class ConcurrentMemoryIndexedCollection<O> extends ConcurrentIndexedCollection<O> {
-        public ConcurrentMemoryIndexedCollection() {
-            super();
+    /**
+     * Adds all indices from a single scan over the journal, fetching every entity once
+     */
+    @Override
+    public <T extends Entity> void addIndices(Class<T> klass, Collection<Index<EntityHandle<T>>> indices) {
+        IndexedCollection<EntityHandle<T>> collection = getIndexedCollection(klass);
+        if (collection instanceof ConcurrentMemoryIndexedCollection) {
+            ((ConcurrentMemoryIndexedCollection<EntityHandle<T>>) collection).addIndices(indices);
+        } else {
+            indices.forEach(collection::addIndex);
         }
+    }
+
+    @Override
+    protected void doStop() {
+        for (IndexedCollection collection : indexedCollections.values()) {
+            if (collection instanceof ConcurrentMemoryIndexedCollection) {
+                ((ConcurrentMemoryIndexedCollection) collection).commitSnapshots();
+            }
+        }
+        super.doStop();
+    }
+
+    private static class ConcurrentMemoryIndexedCollection<O> extends ConcurrentIndexedCollection<O> {
+
+        private final Path snapshotDirectory;
+        private final Map<com.eventsourcing.index.Attribute, AttributeSnapshot> snapshots = new ConcurrentHashMap<>();
+        private final SnapshotCache snapshotCache = new SnapshotCache();
+        private final Map<Attribute, BitmapIndex> bitmapIndices = new ConcurrentHashMap<>();
 
         public ConcurrentMemoryIndexedCollection(
-                Persistence<O, ? extends Comparable> persistence) {
+                Persistence<O, ? extends Comparable> persistence, Path snapshotDirectory) {
             super(persistence);
+            this.snapshotDirectory = snapshotDirectory;
+        }
+
+        // a new instance every time as persistence adds request scope options to it
+        private QueryOptions snapshotQueryOptions() {
+            QueryOptions queryOptions = new QueryOptions();
+            queryOptions.put(AttributeValueCache.class, snapshotCache);
+            return queryOptions;
+        }
+
+        private void registerBitmapIndex(Index<O> index) {
+            if (index instanceof BitmapIndex) {
+                bitmapIndices.put(((BitmapIndex) index).getAttribute(), (BitmapIndex) index);
+            }
+        }
+
+        @Override public void addIndex(Index<O> index) {
+            registerBitmapIndex(index);
+            Optional<AttributeSnapshot> snapshot = snapshot(index);
+            if (snapshot.isPresent()) {
+                snapshot.get().load();
+                snapshots.put(snapshot.get().getAttribute(), snapshot.get());
+                super.addIndex(index, snapshotQueryOptions());
+                snapshot.get().loaded();
+            } else {
+                super.addIndex(index);
+            }
+        }
+
+        void addIndices(Collection<Index<O>> indices) {
+            if (indices.size() < 2) {
+                indices.forEach(this::addIndex);
+                return;
+            }
+            List<AttributeSnapshot> loaded = new ArrayList<>();
+            for (Index<O> index : indices) {
+                registerBitmapIndex(index);
+                Optional<AttributeSnapshot> snapshot = snapshot(index);
+                if (snapshot.isPresent()) {
+                    snapshot.get().load();
+                    snapshots.put(snapshot.get().getAttribute(), snapshot.get());
+                    loaded.add(snapshot.get());
+                }
+                QueryOptions queryOptions = new QueryOptions();
+                queryOptions.put(SkipJournalScan.class, true);
+                super.addIndex(index, queryOptions);
+            }
+            try (CloseableIterator<O> iterator = iterator()) {
+                List<ScannedEntityHandle> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+                while (iterator.hasNext()) {
+                    batch.add(new ScannedEntityHandle((EntityHandle) iterator.next()));
+                    if (batch.size() == SCAN_BATCH_SIZE || !iterator.hasNext()) {
+                        ObjectSet<O> objects = ObjectSet.fromCollection((Collection<O>) batch);
+                        for (Index<O> index : indices) {
+                            index.addAll(objects, snapshotQueryOptions());
+                        }
+                        batch.forEach(ScannedEntityHandle::release);
+                        batch.clear();
+                    }
+                }
+            }
+            loaded.forEach(AttributeSnapshot::loaded);
+        }
+
+        private Optional<AttributeSnapshot> snapshot(Index<O> index) {
+            if (snapshotDirectory == null || !(index instanceof AttributeIndex)) {
+                return Optional.empty();
+            }
+            Attribute attribute = ((AttributeIndex) index).getAttribute();
+            if (attribute instanceof ByteArrayWrappingAttribute) {
+                attribute = ((ByteArrayWrappingAttribute) attribute).attribute;
+            }
+            if (!(attribute instanceof com.eventsourcing.index.Attribute) ||
+                    snapshots.containsKey(attribute)) {
+                return Optional.empty();
+            }
+            return AttributeSnapshot.create(snapshotDirectory, (com.eventsourcing.index.Attribute) attribute);
+        }
+
+        @Override public boolean add(O o) {
+            return addAll(Collections.singleton(o));
+        }
+
+        @Override public boolean addAll(Collection<? extends O> c) {
+            if (snapshots.isEmpty()) {
+                return super.addAll(c);
+            }
+            return update(Collections.<O>emptySet(), (Collection<O>) c, snapshotQueryOptions());
+        }
+
+        void commitSnapshots() {
+            snapshots.values().forEach(AttributeSnapshot::commit);
+        }
+
+        private class SnapshotCache implements AttributeValueCache {
+            @Override public <A> Iterable<A> get(com.eventsourcing.index.Attribute<?, A> attribute, UUID uuid) {
+                AttributeSnapshot snapshot = snapshots.get(attribute);
+                return snapshot == null ? null : (Iterable<A>) snapshot.get(uuid);
+            }
+
+            @Override
+            public <A> void put(com.eventsourcing.index.Attribute<?, A> attribute, UUID uuid, Iterable<A> values) {
+                AttributeSnapshot snapshot = snapshots.get(attribute);
+                if (snapshot != null) {
+                    snapshot.put(uuid, values);
+                }
+            }
         }
 
         @Override public ResultSet<O> retrieve(Query<O> query) {
-            return super.retrieve(compatibleQuery(query));
+            ResultSet<O> resultSet = retrieveBitmap(query, new QueryOptions());
+            return resultSet == null ? super.retrieve(compatibleQuery(query)) : resultSet;
         }
 
         @Override public ResultSet<O> retrieve(Query<O> query, QueryOptions queryOptions) {
-            return super.retrieve(compatibleQuery(query), queryOptions);
+            ResultSet<O> resultSet = retrieveBitmap(query, queryOptions);
+            return resultSet == null ? super.retrieve(compatibleQuery(query), queryOptions) : resultSet;
+        }
+
+        /**
+         * Evaluates <code>and</code>, <code>or</code> and <code>not</code> combinations of queries on
+         * bitmap indices with bitmap operations. Other children of a top-level <code>and</code> are
+         * retrieved as usual and intersected with the bitmap.
+         *
+         * @return <code>null</code> if the query can't be evaluated with bitmap operations
+         */
+        private ResultSet<O> retrieveBitmap(Query<O> query, QueryOptions queryOptions) {
+            if (bitmapIndices.isEmpty() || !(query instanceof LogicalQuery) ||
+                    queryOptions.get(OrderByOption.class) != null) {
+                return null;
+            }
+            BitmapEvaluation evaluation = new BitmapEvaluation();
+            if (!(query instanceof And)) {
+                CompressedBitmap bitmap = evaluation.evaluate(query);
+                return bitmap == null ? null : evaluation.index.resultSet(bitmap, evaluation.epoch, query, queryOptions);
+            }
+            CompressedBitmap bitmap = null;
+            List<Query<O>> rest = new ArrayList<>();
+            for (Query<O> child : ((And<O>) query).getChildQueries()) {
+                CompressedBitmap childBitmap = evaluation.evaluate(child);
+                if (childBitmap == null) {
+                    rest.add(child);
+                } else {
+                    bitmap = bitmap == null ? childBitmap : bitmap.and(childBitmap);
+                }
+            }
+            if (bitmap == null) {
+                return null;
+            }
+            ResultSet<O> resultSet = evaluation.index.resultSet(bitmap, evaluation.epoch, query, queryOptions);
+            if (rest.isEmpty()) {
+                return resultSet;
+            }
+            Query<O> restQuery = rest.size() == 1 ? rest.get(0) : new And<>(rest);
+            return new ResultSetIntersection<>(Arrays.asList(resultSet,
+                                                             super.retrieve(compatibleQuery(restQuery), queryOptions)),
+                                               query, queryOptions);
+        }
+
+        private class BitmapEvaluation {
+            private EntityOrdinals ordinals;
+            // observed before any bitmap is taken
+            private long epoch;
+            private BitmapIndex index;
+
+            private CompressedBitmap evaluate(Query<O> query) {
+                Class<?> queryClass = query.getClass();
+                if (queryClass == Equal.class || queryClass == In.class || queryClass == Has.class) {
+                    BitmapIndex bitmapIndex = bitmapIndices.get(((SimpleQuery) query).getAttribute());
+                    if (bitmapIndex == null || (ordinals != null && bitmapIndex.getOrdinals() != ordinals)) {
+                        return null;
+                    }
+                    if (ordinals == null) {
+                        ordinals = bitmapIndex.getOrdinals();
+                        epoch = ordinals.epoch();
+                    }
+                    if (index == null) {
+                        index = bitmapIndex;
+                    }
+                    return bitmapIndex.bitmap(query);
+                } else if (queryClass == And.class || queryClass == Or.class) {
+                    CompressedBitmap result = null;
+                    for (Query<O> child : ((LogicalQuery<O>) query).getChildQueries()) {
+                        CompressedBitmap bitmap = evaluate(child);
+                        if (bitmap == null) {
+                            return null;
+                        }
+                        result = result == null ? bitmap : queryClass == And.class ? result.and(bitmap) : result.or(bitmap);
+                    }
+                    return result;
+                } else if (queryClass == Not.class) {
+                    CompressedBitmap negated = evaluate(((Not<O>) query).getNegatedQuery());
+                    // all entities of the collection, including those with no values of negated attributes
+                    return negated == null ? null : ordinals.entities().andNot(negated);
+                }
+                return null;
+            }
         }
 
         private Query<O> compatibleQuery(Query<O> query) {
@@ -159,6 +484,40 @@ public class MemoryIndexEngine extends CQIndexEngine implements IndexEngine {
         }
     }
 
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    /**
+     * Entity handle that keeps the entity once it was fetched, until it is {@link #release()}d,
+     * so that all indices populated from the same scan fetch it only once
+     */
+    private static class ScannedEntityHandle<T extends Entity> implements EntityHandle<T> {
+        private final EntityHandle<T> handle;
+        private Optional<T> entity;
+        private boolean released;
+
+        private ScannedEntityHandle(EntityHandle<T> handle) {this.handle = handle;}
+
+        @Override public Optional<T> getOptional() {
+            if (entity != null) {
+                return entity;
+            }
+            Optional<T> result = handle.getOptional();
+            if (!released) {
+                entity = result;
+            }
+            return result;
+        }
+
+        @Override public UUID uuid() {
+            return handle.uuid();
+        }
+
+        void release() {
+            released = true;
+            entity = null;
+        }
+    }
+
     public static <O extends Entity, A> Attribute<EntityHandle<O>, ?> compatibleAttribute(Attribute<EntityHandle<O>, A>
                                                                                        attribute) {
         if (attribute.getAttributeType() == byte[].class) {
@@ -8,13 +8,10 @@
 package com.eventsourcing.inmem;
 
 import com.eventsourcing.*;
+import com.eventsourcing.events.EventCausalityEstablished;
 import com.eventsourcing.hlc.HybridTimestamp;
-import com.eventsourcing.layout.ObjectDeserializer;
-import com.eventsourcing.layout.ObjectSerializer;
-import com.eventsourcing.layout.Serialization;
-import com.eventsourcing.layout.binary.BinarySerialization;
+import com.eventsourcing.layout.LayoutCopier;
 import com.eventsourcing.utils.CloseableWrappingIterator;
-import com.google.common.collect.Iterators;
 import com.google.common.util.concurrent.AbstractService;
 import com.googlecode.cqengine.index.support.CloseableIterator;
 import com.googlecode.cqengine.query.option.QueryOptions;
@@ -22,12 +19,11 @@ import lombok.Getter;
 import lombok.Setter;
 import org.osgi.service.component.annotations.Component;
 
-import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * Memory-based {@link Journal} implementation. Not meant to be used in production.
@@ -35,14 +31,55 @@ import java.util.concurrent.ConcurrentHashMap;
 @Component(property = {"type=MemoryJournal"}, service = Journal.class)
 public class MemoryJournal extends AbstractService implements Journal {
 
-    private static final Serialization serialization = BinarySerialization.getInstance();
-
     @Getter @Setter
     private Repository repository;
 
     private Map<UUID, Command> commands = new ConcurrentHashMap<>();
     private Map<UUID, Event> events = new ConcurrentHashMap<>();
 
+    /**
+     * If enabled, {@link EventCausalityEstablished} entities are not stored. Instead,
+     * the command's UUID is stored alongside the event (see
+     * {@link EventCausalityEstablished#virtual(UUID, UUID, HybridTimestamp)})
+     */
+    @Getter @Setter
+    private boolean compactCausality = false;
+
+    /**
+     * Commands' UUIDs by their events' UUIDs, if {@link #compactCausality} is enabled
+     */
+    private Map<UUID, UUID> causes = new ConcurrentHashMap<>();
+
+    /**
+     * UUIDs of committed entities by their (concrete) class, in the order of insertion,
+     * to avoid scanning all entities when iterating or counting entities of a specific type
+     */
+    private Map<Class<? extends Entity>, TypeIndex> types = new ConcurrentHashMap<>();
+
+    private static class TypeIndex {
+        private final Queue<UUID> uuids = new ConcurrentLinkedQueue<>();
+        private final AtomicLong size = new AtomicLong();
+
+        void add(UUID uuid) {
+            uuids.add(uuid);
+            size.incrementAndGet();
+        }
+    }
+
+    private void index(Entity entity) {
+        index(entity.getClass(), entity.uuid());
+    }
+
+    private void index(Class<? extends Entity> klass, UUID uuid) {
+        types.computeIfAbsent(klass, k -> new TypeIndex()).add(uuid);
+    }
+
+    private Stream<TypeIndex> typeIndices(Class<?> klass) {
+        return types.entrySet().stream()
+                    .filter(entry -> klass.isAssignableFrom(entry.getKey()))
+                    .map(Map.Entry::getValue);
+    }
+
     @Override
     protected void doStart() {
         if (repository == null) {
@@ -57,43 +94,77 @@ public class MemoryJournal extends AbstractService implements Journal {
     }
 
     static class Transaction implements Journal.Transaction {
-        private final Map<UUID, Event> events = new HashMap<>();
-        @Setter
-        private Command command;
+        // linked, so that committed entities are indexed in the order they were journalled
+        private final Map<UUID, Event> events = new LinkedHashMap<>();
+        private final Map<UUID, Command> commands = new LinkedHashMap<>();
+        private final Map<UUID, UUID> causes = new LinkedHashMap<>();
         private final MemoryJournal journal;
+        private final Transaction parent;
+
+        Transaction(MemoryJournal journal) {this(journal, null);}
 
-        Transaction(MemoryJournal journal) {this.journal = journal;}
+        private Transaction(MemoryJournal journal, Transaction parent) {
+            this.journal = journal;
+            this.parent = parent;
+        }
+
+        private Event event(UUID uuid) {
+            Event event = events.get(uuid);
+            if (event == null) {
+                return parent == null ? journal.events.get(uuid) : parent.event(uuid);
+            }
+            return event;
+        }
 
         @Override public void rollback() {
+            events.clear();
+            commands.clear();
+            causes.clear();
         }
 
         @Override public void commit() {
-            journal.events.putAll(events);
-            journal.commands.put(command.uuid(), command);
+            if (parent != null) {
+                parent.events.putAll(events);
+                parent.commands.putAll(commands);
+                parent.causes.putAll(causes);
+            } else {
+                journal.events.putAll(events);
+                journal.commands.putAll(commands);
+                journal.causes.putAll(causes);
+                events.values().forEach(journal::index);
+                commands.values().forEach(journal::index);
+                causes.keySet().forEach(uuid -> journal.index(EventCausalityEstablished.class,
+                                                              EventCausalityEstablished.virtualUuid(uuid)));
+            }
+            events.clear();
+            commands.clear();
+            causes.clear();
+        }
+
+        @Override public Journal.Transaction beginNested() {
+            return new Transaction(journal, this);
         }
     }
 
     @Override public <S, T> Command<S, T> journal(Journal.Transaction tx, Command<S, T> command) {
-        ObjectSerializer<Command> serializer = serialization.getSerializer(command.getClass());
-        ObjectDeserializer<Command> deserializer = serialization.getDeserializer(command.getClass());
-
-        ByteBuffer buffer = serializer.serialize(command);
-        buffer.rewind();
-        Command command1 = deserializer.deserialize(buffer);
+        Command command1 = LayoutCopier.copyOf(command);
         command1.uuid(command.uuid());
 
-        ((Transaction) tx).setCommand(command1);
+        ((Transaction) tx).commands.put(command1.uuid(), command1);
 
         return command1;
     }
 
     @Override public Event journal(Journal.Transaction tx, Event event) {
-        ObjectSerializer<Event> serializer = serialization.getSerializer(event.getClass());
-        ObjectDeserializer<Event> deserializer = serialization.getDeserializer(event.getClass());
-
-        ByteBuffer buffer = serializer.serialize(event);
-        buffer.rewind();
-        Event event1 = deserializer.deserialize(buffer);
+        if (compactCausality && event instanceof EventCausalityEstablished) {
+            EventCausalityEstablished causality = (EventCausalityEstablished) event;
+            Event cause = ((Transaction) tx).event(causality.event());
+            if (cause != null) {
+                ((Transaction) tx).causes.put(cause.uuid(), causality.command());
+                return EventCausalityEstablished.virtual(cause.uuid(), causality.command(), cause.timestamp());
+            }
+        }
+        Event event1 = LayoutCopier.copyOf(event);
         event1.uuid(event.uuid());
 
         ((Transaction) tx).events.put(event1.uuid(), event1);
@@ -123,52 +194,64 @@ public class MemoryJournal extends AbstractService implements Journal {
         if (events.containsKey(uuid)) {
             return Optional.of((T) events.get(uuid));
         }
+        UUID event = EventCausalityEstablished.virtualUuid(uuid);
+        UUID command = causes.get(event);
+        if (command != null) {
+            return Optional.of((T) EventCausalityEstablished.virtual(event, command, events.get(event).timestamp()));
+        }
         return Optional.empty();
     }
 
+    @Override @SuppressWarnings("unchecked")
+    public <T extends Entity> Map<UUID, T> getAll(Collection<UUID> uuids) {
+        Map<UUID, T> result = new HashMap<>();
+        for (UUID uuid : uuids) {
+            Entity entity = commands.get(uuid);
+            if (entity == null) {
+                entity = events.get(uuid);
+            }
+            if (entity != null) {
+                result.put(uuid, (T) entity);
+            } else {
+                this.<T>get(uuid).ifPresent(causality -> result.put(uuid, causality));
+            }
+        }
+        return result;
+    }
+
     @Override
     public <T extends Command<?, ?>> CloseableIterator<EntityHandle<T>> commandIterator(Class<T> klass, QueryOptions queryOptions) {
-        return new CloseableWrappingIterator<>(commands.values().stream()
-                                                       .filter(command -> klass.isAssignableFrom(command.getClass()))
-                                                       .map(command -> (EntityHandle<T>) new JournalEntityHandle<T>(
-                                                               this, command.uuid())).iterator());
+        return entityIterator(klass);
     }
 
     @Override
     public <T extends Event> CloseableIterator<EntityHandle<T>> eventIterator(Class<T> klass, QueryOptions queryOptions) {
-        return new CloseableWrappingIterator<>(events.values().stream()
-                                                     .filter(event -> klass.isAssignableFrom(event.getClass()))
-                                                     .map(event -> (EntityHandle<T>) new JournalEntityHandle<T>(this,
-                                                                                                                event.uuid()))
-                                                     .iterator());
+        return entityIterator(klass);
+    }
+
+    private <T extends Entity> CloseableIterator<EntityHandle<T>> entityIterator(Class<T> klass) {
+        return new CloseableWrappingIterator<>(typeIndices(klass)
+                                                       .flatMap(index -> index.uuids.stream())
+                                                       .map(uuid -> (EntityHandle<T>) new JournalEntityHandle<T>(
+                                                               this, uuid)).iterator());
     }
 
     @Override
     public void clear() {
         events.clear();
         commands.clear();
+        causes.clear();
+        types.clear();
     }
 
-    @Override @SuppressWarnings("unchecked")
+    @Override
     public <T extends Entity> long size(Class<T> klass) {
-        if (Event.class.isAssignableFrom(klass)) {
-            return Iterators.size(eventIterator((Class<Event>) klass));
-        }
-        if (Command.class.isAssignableFrom(klass)) {
-            return Iterators.size(commandIterator((Class<Command<?, ?>>) klass));
-        }
-        return 0;
+        return typeIndices(klass).mapToLong(index -> index.size.get()).sum();
     }
 
-    @Override @SuppressWarnings("unchecked")
+    @Override
     public <T extends Entity> boolean isEmpty(Class<T> klass) {
-        if (Event.class.isAssignableFrom(klass)) {
-            return !eventIterator((Class<Event>) klass).hasNext();
-        }
-        if (Command.class.isAssignableFrom(klass)) {
-            return !commandIterator((Class<Command<?, ?>>) klass).hasNext();
-        }
-        return true;
+        return typeIndices(klass).allMatch(index -> index.size.get() == 0);
     }
 
 }
@@ -0,0 +1,737 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.EntityHandle;
+import com.eventsourcing.index.AbstractAttributeIndex;
+import com.eventsourcing.index.Attribute;
+import com.eventsourcing.index.KeyObjectStore;
+import com.eventsourcing.layout.binary.BinarySerialization;
+import com.eventsourcing.utils.CloseableWrappingIterator;
+import com.google.common.hash.Hashing;
+import com.googlecode.cqengine.index.Index;
+import com.googlecode.cqengine.index.support.*;
+import com.googlecode.cqengine.index.unique.UniqueIndex;
+import com.googlecode.cqengine.persistence.support.ObjectSet;
+import com.googlecode.cqengine.persistence.support.ObjectStore;
+import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.query.option.QueryOptions;
+import com.googlecode.cqengine.query.simple.Equal;
+import com.googlecode.cqengine.query.simple.Has;
+import com.googlecode.cqengine.query.simple.In;
+import com.googlecode.cqengine.resultset.ResultSet;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import static com.googlecode.cqengine.query.QueryFactory.equal;
+
+/**
+ * Equality index that keeps both keys and entity UUIDs off-heap, in direct {@link ByteBuffer}s.
+ * <p>
+ * Keys are kept in an open-addressing hash table, every key points to a bucket (an open-addressing
+ * set of entity UUIDs) in an arena. {@link UUID}, {@link Long} and {@link Integer} keys are stored
+ * as primitives, keys of other types are stored in the arena as {@link BinarySerialization} bytes
+ * and are hashed with murmur3. Lookups copy matching UUIDs into a <code>long[]</code> and
+ * {@link EntityHandle}s are only created while iterating over results, so the heap footprint
+ * of the index doesn't depend on the number of entities it covers.
+ * <p>
+ * Key table slot layout:
+ * <pre>
+ * long hi     (UUID msb, long/int value or key bytes hash)
+ * long lo     (UUID lsb, 0 or key bytes address)
+ * long bucket (bucket address + 1, zero marks an empty slot, -1 marks a removed one)
+ * </pre>
+ * Arena bucket layout (nil UUID marks an empty entry, hence entities with a nil UUID can't be indexed):
+ * <pre>
+ * int capacity
+ * int size
+ * (long msb, long lsb)[capacity]
+ * </pre>
+ * Arena key bytes layout:
+ * <pre>
+ * int size
+ * byte[size] key
+ * </pre>
+ */
+public class OffHeapHashIndex<A, O extends Entity> extends AbstractAttributeIndex<A, O>
+        implements KeyStatisticsAttributeIndex<A, EntityHandle<O>> {
+
+    protected static final int INDEX_RETRIEVAL_COST = 30;
+    protected static final int UNIQUE_INDEX_RETRIEVAL_COST = 25;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_BUCKET_CAPACITY = 2;
+    private static final int SLOT_SIZE = 8 + 8 + 8;
+    private static final int BUCKET_HEADER_SIZE = 4 + 4;
+    private static final int ENTRY_SIZE = 8 + 8;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+    private static final long[] NO_ENTITIES = new long[0];
+
+    private enum KeyType {
+        UUID, LONG, INT, BYTES
+    }
+
+    @Getter
+    private final boolean unique;
+    private final KeyType keyType;
+    private KeyObjectStore<UUID, EntityHandle<O>> keyObjectStore;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // all fields below are guarded by lock
+    private ByteBuffer table;
+    private int capacity;
+    private int keys;
+    private int removedKeys;
+    private ByteBuffer arena;
+    private int arenaSize;
+    private int garbage;
+
+    public static <A, O extends Entity> OffHeapHashIndex<A, O> onAttribute(Attribute<O, A> attribute) {
+        return new OffHeapHashIndex<>(attribute, false);
+    }
+
+    public static <A, O extends Entity> OffHeapHashIndex<A, O> onAttribute(Attribute<O, A> attribute,
+                                                                           boolean unique) {
+        return new OffHeapHashIndex<>(attribute, unique);
+    }
+
+    /**
+     * @param type attribute type
+     * @return <code>true</code> if keys of this type are stored as primitives
+     */
+    public static boolean isPrimitiveKeyType(Class<?> type) {
+        return type == UUID.class || type == Long.class || type == Integer.class;
+    }
+
+    protected OffHeapHashIndex(Attribute<O, A> attribute, boolean unique) {
+        super(attribute, new HashSet<Class<? extends Query>>() {{
+            add(Equal.class);
+            add(In.class);
+            add(Has.class);
+        }});
+        this.unique = unique;
+        Class<A> type = attribute.getAttributeType();
+        if (type == UUID.class) {
+            keyType = KeyType.UUID;
+        } else if (type == Long.class) {
+            keyType = KeyType.LONG;
+        } else if (type == Integer.class) {
+            keyType = KeyType.INT;
+        } else {
+            keyType = KeyType.BYTES;
+        }
+        reset(INITIAL_CAPACITY, INITIAL_CAPACITY * (BUCKET_HEADER_SIZE + INITIAL_BUCKET_CAPACITY * ENTRY_SIZE));
+    }
+
+    private void reset(int capacity, int arenaCapacity) {
+        this.capacity = capacity;
+        table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        arena = ByteBuffer.allocateDirect(arenaCapacity);
+        arenaSize = 0;
+        garbage = 0;
+        keys = 0;
+        removedKeys = 0;
+    }
+
+    private static int hash(long hi, long lo, int mask) {
+        long hash = hi ^ lo;
+        hash ^= hash >>> 32;
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    private int slot(long hi, long lo) {
+        return hash(hi, keyType == KeyType.BYTES ? 0 : lo, capacity - 1);
+    }
+
+    private ByteBuffer keyBytes(A value) {
+        if (keyType != KeyType.BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = attributeSerializer.serialize(attrTypeHandler, value);
+        buffer.rewind();
+        return buffer;
+    }
+
+    private long hi(A value, ByteBuffer bytes) {
+        switch (keyType) {
+            case UUID:
+                return ((UUID) value).getMostSignificantBits();
+            case LONG:
+                return ((Number) value).longValue();
+            case INT:
+                return ((Number) value).intValue();
+            default:
+                return Hashing.murmur3_128().hashBytes(bytes.array(), 0, bytes.limit()).asLong();
+        }
+    }
+
+    private long lo(A value) {
+        return keyType == KeyType.UUID ? ((UUID) value).getLeastSignificantBits() : 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private A key(int slot) {
+        long hi = table.getLong(slot * SLOT_SIZE);
+        long lo = table.getLong(slot * SLOT_SIZE + 8);
+        switch (keyType) {
+            case UUID:
+                return (A) new UUID(hi, lo);
+            case LONG:
+                return (A) Long.valueOf(hi);
+            case INT:
+                return (A) Integer.valueOf((int) hi);
+            default:
+                ByteBuffer buffer = arena.duplicate();
+                buffer.position((int) lo + 4);
+                buffer.limit((int) lo + 4 + arena.getInt((int) lo));
+                return attributeDeserializer.deserialize(attrTypeHandler, buffer.slice());
+        }
+    }
+
+    private boolean matches(int slot, long hi, long lo, ByteBuffer bytes) {
+        if (table.getLong(slot * SLOT_SIZE) != hi) {
+            return false;
+        }
+        if (bytes == null) {
+            return table.getLong(slot * SLOT_SIZE + 8) == lo;
+        }
+        int address = (int) table.getLong(slot * SLOT_SIZE + 8);
+        int size = arena.getInt(address);
+        if (size != bytes.limit()) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (arena.get(address + 4 + i) != bytes.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int find(long hi, long lo, ByteBuffer bytes) {
+        int mask = capacity - 1;
+        for (int i = slot(hi, lo); ; i = (i + 1) & mask) {
+            long bucket = table.getLong(i * SLOT_SIZE + 16);
+            if (bucket == EMPTY) {
+                return -1;
+            }
+            if (bucket != REMOVED && matches(i, hi, lo, bytes)) {
+                return i;
+            }
+        }
+    }
+
+    private int bucket(int slot) {
+        return (int) table.getLong(slot * SLOT_SIZE + 16) - 1;
+    }
+
+    private static int bucketSize(int capacity) {
+        return BUCKET_HEADER_SIZE + capacity * ENTRY_SIZE;
+    }
+
+    private int allocate(int size) {
+        if ((long) arenaSize + size > arena.capacity()) {
+            long grownCapacity = Math.max((long) arena.capacity() * 2, (long) arenaSize + size);
+            if (grownCapacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Index " + attribute.getAttributeName() + " is too large");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) grownCapacity);
+            ByteBuffer used = arena.duplicate();
+            used.position(0);
+            used.limit(arenaSize);
+            grown.put(used);
+            arena = grown;
+        }
+        int address = arenaSize;
+        arenaSize += size;
+        return address;
+    }
+
+    private int allocateBucket(int capacity) {
+        int bucket = allocate(bucketSize(capacity));
+        arena.putInt(bucket, capacity);
+        return bucket;
+    }
+
+    private int copy(ByteBuffer from, int address, int size) {
+        ByteBuffer source = from.duplicate();
+        source.position(address);
+        source.limit(address + size);
+        int copy = allocate(size);
+        ByteBuffer target = arena.duplicate();
+        target.position(copy);
+        target.put(source);
+        return copy;
+    }
+
+    private int entry(int bucket, int index) {
+        return bucket + BUCKET_HEADER_SIZE + index * ENTRY_SIZE;
+    }
+
+    private boolean isEmptyEntry(int entry) {
+        return arena.getLong(entry) == 0 && arena.getLong(entry + 8) == 0;
+    }
+
+    private int indexOf(int bucket, long msb, long lsb) {
+        int mask = arena.getInt(bucket) - 1;
+        for (int i = hash(msb, lsb, mask); !isEmptyEntry(entry(bucket, i)); i = (i + 1) & mask) {
+            if (arena.getLong(entry(bucket, i)) == msb && arena.getLong(entry(bucket, i) + 8) == lsb) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void put(int bucket, long msb, long lsb) {
+        int mask = arena.getInt(bucket) - 1;
+        int i = hash(msb, lsb, mask);
+        while (!isEmptyEntry(entry(bucket, i))) {
+            i = (i + 1) & mask;
+        }
+        arena.putLong(entry(bucket, i), msb);
+        arena.putLong(entry(bucket, i) + 8, lsb);
+        arena.putInt(bucket + 4, arena.getInt(bucket + 4) + 1);
+    }
+
+    private void add(int slot, A value, long msb, long lsb) {
+        int bucket = bucket(slot);
+        if (indexOf(bucket, msb, lsb) >= 0) {
+            return;
+        }
+        int size = arena.getInt(bucket + 4);
+        if (unique && size > 0) {
+            throw new UniqueIndex.UniqueConstraintViolatedException(
+                    "Entity " + new UUID(msb, lsb) + " has a value of " + attribute.getAttributeName() +
+                            " (" + value + ") that is already indexed for another entity");
+        }
+        int bucketCapacity = arena.getInt(bucket);
+        if ((size + 1) * 4 > bucketCapacity * 3) {
+            int grown = allocateBucket(bucketCapacity * 2);
+            for (int i = 0; i < bucketCapacity; i++) {
+                int entry = entry(bucket, i);
+                if (!isEmptyEntry(entry)) {
+                    put(grown, arena.getLong(entry), arena.getLong(entry + 8));
+                }
+            }
+            garbage += bucketSize(bucketCapacity);
+            table.putLong(slot * SLOT_SIZE + 16, grown + 1);
+            bucket = grown;
+        }
+        put(bucket, msb, lsb);
+    }
+
+    private void insert(A value, long msb, long lsb) {
+        ByteBuffer bytes = keyBytes(value);
+        long hi = hi(value, bytes);
+        long lo = lo(value);
+        if ((keys + removedKeys + 1) * 4 > capacity * 3) {
+            rebuild((keys + 1) * 2 > capacity ? capacity * 2 : capacity);
+        }
+        int mask = capacity - 1;
+        int removedSlot = -1;
+        int i = slot(hi, lo);
+        for (long bucket; (bucket = table.getLong(i * SLOT_SIZE + 16)) != EMPTY; i = (i + 1) & mask) {
+            if (bucket == REMOVED) {
+                if (removedSlot < 0) {
+                    removedSlot = i;
+                }
+            } else if (matches(i, hi, lo, bytes)) {
+                add(i, value, msb, lsb);
+                return;
+            }
+        }
+        if (removedSlot >= 0) {
+            i = removedSlot;
+            removedKeys--;
+        }
+        if (bytes != null) {
+            lo = allocate(4 + bytes.limit());
+            arena.putInt((int) lo, bytes.limit());
+            ByteBuffer target = arena.duplicate();
+            target.position((int) lo + 4);
+            target.put(bytes);
+        }
+        int bucket = allocateBucket(INITIAL_BUCKET_CAPACITY);
+        put(bucket, msb, lsb);
+        table.putLong(i * SLOT_SIZE, hi);
+        table.putLong(i * SLOT_SIZE + 8, lo);
+        table.putLong(i * SLOT_SIZE + 16, bucket + 1);
+        keys++;
+    }
+
+    private void remove(A value, long msb, long lsb) {
+        ByteBuffer bytes = keyBytes(value);
+        int slot = find(hi(value, bytes), lo(value), bytes);
+        if (slot < 0) {
+            return;
+        }
+        int bucket = bucket(slot);
+        int hole = indexOf(bucket, msb, lsb);
+        if (hole < 0) {
+            return;
+        }
+        // backward shift deletion, so that no tombstones are necessary
+        int bucketCapacity = arena.getInt(bucket);
+        int mask = bucketCapacity - 1;
+        for (int i = (hole + 1) & mask; !isEmptyEntry(entry(bucket, i)); i = (i + 1) & mask) {
+            int entry = entry(bucket, i);
+            int home = hash(arena.getLong(entry), arena.getLong(entry + 8), mask);
+            boolean inPlace = hole < i ? home > hole && home <= i : home > hole || home <= i;
+            if (!inPlace) {
+                arena.putLong(entry(bucket, hole), arena.getLong(entry));
+                arena.putLong(entry(bucket, hole) + 8, arena.getLong(entry + 8));
+                hole = i;
+            }
+        }
+        arena.putLong(entry(bucket, hole), 0);
+        arena.putLong(entry(bucket, hole) + 8, 0);
+        int size = arena.getInt(bucket + 4) - 1;
+        arena.putInt(bucket + 4, size);
+        if (size == 0) {
+            garbage += bucketSize(bucketCapacity);
+            if (keyType == KeyType.BYTES) {
+                garbage += 4 + arena.getInt((int) table.getLong(slot * SLOT_SIZE + 8));
+            }
+            table.putLong(slot * SLOT_SIZE + 16, REMOVED);
+            keys--;
+            removedKeys++;
+            if (garbage > arenaSize / 2) {
+                rebuild(capacity);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the key table with a new capacity and compacts the arena
+     */
+    private void rebuild(int newCapacity) {
+        ByteBuffer oldTable = table;
+        ByteBuffer oldArena = arena;
+        int oldCapacity = capacity;
+        reset(newCapacity, Math.max(arenaSize - garbage, BUCKET_HEADER_SIZE));
+        int mask = capacity - 1;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long bucket = oldTable.getLong(slot * SLOT_SIZE + 16);
+            if (bucket == EMPTY || bucket == REMOVED) {
+                continue;
+            }
+            long hi = oldTable.getLong(slot * SLOT_SIZE);
+            long lo = oldTable.getLong(slot * SLOT_SIZE + 8);
+            int i = slot(hi, lo);
+            while (table.getLong(i * SLOT_SIZE + 16) != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            if (keyType == KeyType.BYTES) {
+                lo = copy(oldArena, (int) lo, 4 + oldArena.getInt((int) lo));
+            }
+            int copy = copy(oldArena, (int) bucket - 1, bucketSize(oldArena.getInt((int) bucket - 1)));
+            table.putLong(i * SLOT_SIZE, hi);
+            table.putLong(i * SLOT_SIZE + 8, lo);
+            table.putLong(i * SLOT_SIZE + 16, copy + 1);
+            keys++;
+        }
+    }
+
+    private long[] entities(int slot) {
+        int bucket = bucket(slot);
+        long[] entities = new long[arena.getInt(bucket + 4) * 2];
+        int bucketCapacity = arena.getInt(bucket);
+        int n = 0;
+        for (int i = 0; i < bucketCapacity; i++) {
+            int entry = entry(bucket, i);
+            if (!isEmptyEntry(entry)) {
+                entities[n++] = arena.getLong(entry);
+                entities[n++] = arena.getLong(entry + 8);
+            }
+        }
+        return entities;
+    }
+
+    private long[] entities(A value) {
+        ByteBuffer bytes = keyBytes(value);
+        long hi = hi(value, bytes);
+        long lo = lo(value);
+        lock.readLock().lock();
+        try {
+            int slot = find(hi, lo, bytes);
+            return slot < 0 ? NO_ENTITIES : entities(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean contains(A value, UUID uuid) {
+        ByteBuffer bytes = keyBytes(value);
+        long hi = hi(value, bytes);
+        long lo = lo(value);
+        lock.readLock().lock();
+        try {
+            int slot = find(hi, lo, bytes);
+            return slot >= 0 &&
+                    indexOf(bucket(slot), uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override public boolean addAll(ObjectSet<EntityHandle<O>> objectSet, QueryOptions queryOptions) {
+        try (CloseableIterator<EntityHandle<O>> iterator = objectSet.iterator()) {
+            while (iterator.hasNext()) {
+                EntityHandle<O> object = iterator.next();
+                UUID uuid = object.uuid();
+                if (uuid.getMostSignificantBits() == 0 && uuid.getLeastSignificantBits() == 0) {
+                    throw new IllegalArgumentException("Entities with a nil UUID can't be indexed");
+                }
+                Iterable<A> values = attribute.getValues(object, queryOptions);
+                lock.writeLock().lock();
+                try {
+                    for (A value : values) {
+                        insert(value, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override public boolean removeAll(ObjectSet<EntityHandle<O>> objectSet, QueryOptions queryOptions) {
+        try (CloseableIterator<EntityHandle<O>> iterator = objectSet.iterator()) {
+            while (iterator.hasNext()) {
+                EntityHandle<O> object = iterator.next();
+                UUID uuid = object.uuid();
+                Iterable<A> values = attribute.getValues(object, queryOptions);
+                lock.writeLock().lock();
+                try {
+                    for (A value : values) {
+                        remove(value, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override public void clear(QueryOptions queryOptions) {
+        lock.writeLock().lock();
+        try {
+            reset(INITIAL_CAPACITY, INITIAL_CAPACITY * (BUCKET_HEADER_SIZE + INITIAL_BUCKET_CAPACITY * ENTRY_SIZE));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override public void init(ObjectStore<EntityHandle<O>> objectStore, QueryOptions queryOptions) {
+        if (objectStore instanceof KeyObjectStore) {
+            keyObjectStore = (KeyObjectStore<UUID, EntityHandle<O>>) objectStore;
+        } else {
+            keyObjectStore = new ScanningKeyObjectStore<>(objectStore);
+        }
+        addAll(ObjectSet.fromObjectStore(objectStore, queryOptions), queryOptions);
+    }
+
+    @Override public ResultSet<EntityHandle<O>> retrieve(Query<EntityHandle<O>> query, QueryOptions queryOptions) {
+        Class<?> queryClass = query.getClass();
+        if (queryClass.equals(Equal.class)) {
+            A value = ((Equal<EntityHandle<O>, A>) query).getValue();
+            return new EntityResultSet(query, queryOptions, entities(value),
+                                       object -> contains(value, object.uuid()));
+        } else if (queryClass.equals(In.class)) {
+            List<ResultSet<EntityHandle<O>>> results = new ArrayList<>();
+            for (A value : ((In<EntityHandle<O>, A>) query).getValues()) {
+                results.add(retrieve(equal(attribute, value), queryOptions));
+            }
+            return IndexSupport.deduplicateIfNecessary(results, query, attribute, queryOptions,
+                                                       indexRetrievalCost());
+        } else if (queryClass.equals(Has.class)) {
+            long[] entities;
+            lock.readLock().lock();
+            try {
+                long[][] buckets = new long[keys][];
+                int n = 0, size = 0;
+                for (int slot = 0; slot < capacity; slot++) {
+                    if (table.getLong(slot * SLOT_SIZE + 16) > 0) {
+                        buckets[n] = entities(slot);
+                        size += buckets[n++].length;
+                    }
+                }
+                entities = new long[size];
+                for (int i = 0, position = 0; i < n; position += buckets[i++].length) {
+                    System.arraycopy(buckets[i], 0, entities, position, buckets[i].length);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return new EntityResultSet(query, queryOptions, entities, object -> query.matches(object, queryOptions));
+        } else {
+            throw new IllegalArgumentException("Unsupported query: " + query);
+        }
+    }
+
+    protected int indexRetrievalCost() {
+        return unique ? UNIQUE_INDEX_RETRIEVAL_COST : INDEX_RETRIEVAL_COST;
+    }
+
+    private Map<A, Integer> countsByKey() {
+        Map<A, Integer> counts = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (table.getLong(slot * SLOT_SIZE + 16) > 0) {
+                    counts.put(key(slot), arena.getInt(bucket(slot) + 4));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+
+    private static <T> CloseableIterable<T> closeableIterable(Iterable<T> iterable) {
+        return () -> new CloseableWrappingIterator<>(iterable.iterator());
+    }
+
+    @Override public CloseableIterable<A> getDistinctKeys(QueryOptions queryOptions) {
+        return closeableIterable(countsByKey().keySet());
+    }
+
+    @Override public Integer getCountForKey(A key, QueryOptions queryOptions) {
+        ByteBuffer bytes = keyBytes(key);
+        long hi = hi(key, bytes);
+        long lo = lo(key);
+        lock.readLock().lock();
+        try {
+            int slot = find(hi, lo, bytes);
+            return slot < 0 ? 0 : arena.getInt(bucket(slot) + 4);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override public Integer getCountOfDistinctKeys(QueryOptions queryOptions) {
+        lock.readLock().lock();
+        try {
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override public CloseableIterable<KeyStatistics<A>> getStatisticsForDistinctKeys(QueryOptions queryOptions) {
+        List<KeyStatistics<A>> statistics = new ArrayList<>();
+        countsByKey().forEach((key, count) -> statistics.add(new KeyStatistics<>(key, count)));
+        return closeableIterable(statistics);
+    }
+
+    @Override
+    public CloseableIterable<KeyValue<A, EntityHandle<O>>> getKeysAndValues(QueryOptions queryOptions) {
+        List<KeyValue<A, EntityHandle<O>>> keysAndValues = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                if (table.getLong(slot * SLOT_SIZE + 16) > 0) {
+                    A key = key(slot);
+                    long[] entities = entities(slot);
+                    for (int i = 0; i < entities.length; i += 2) {
+                        keysAndValues.add(new KeyValueMaterialized<>(key, keyObjectStore
+                                .get(new UUID(entities[i], entities[i + 1]))));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return closeableIterable(keysAndValues);
+    }
+
+    @Override public boolean isMutable() {
+        return true;
+    }
+
+    @Override public boolean isQuantized() {
+        return false;
+    }
+
+    @Override public Index<EntityHandle<O>> getEffectiveIndex() {
+        return this;
+    }
+
+    @Override public String toString() {
+        return "OffHeapHashIndex[" + attribute.getAttributeName() + (unique ? ", unique" : "") + "]";
+    }
+
+    private class EntityResultSet extends ResultSet<EntityHandle<O>> {
+        @Getter
+        private final Query<EntityHandle<O>> query;
+        @Getter
+        private final QueryOptions queryOptions;
+        private final long[] entities;
+        private final Predicate<EntityHandle<O>> contains;
+
+        private EntityResultSet(Query<EntityHandle<O>> query, QueryOptions queryOptions, long[] entities,
+                                Predicate<EntityHandle<O>> contains) {
+            this.query = query;
+            this.queryOptions = queryOptions;
+            this.entities = entities;
+            this.contains = contains;
+        }
+
+        @Override public Iterator<EntityHandle<O>> iterator() {
+            return new Iterator<EntityHandle<O>>() {
+                private int i = 0;
+
+                @Override public boolean hasNext() {
+                    return i < entities.length;
+                }
+
+                @Override public EntityHandle<O> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    UUID uuid = new UUID(entities[i], entities[i + 1]);
+                    i += 2;
+                    return keyObjectStore.get(uuid);
+                }
+            };
+        }
+
+        @Override public boolean contains(EntityHandle<O> object) {
+            return contains.test(object);
+        }
+
+        @Override public boolean matches(EntityHandle<O> object) {
+            return query.matches(object, queryOptions);
+        }
+
+        @Override public int getRetrievalCost() {
+            return indexRetrievalCost();
+        }
+
+        @Override public int getMergeCost() {
+            return size();
+        }
+
+        @Override public int size() {
+            return entities.length / 2;
+        }
+
+        @Override public void close() {
+        }
+    }
+}
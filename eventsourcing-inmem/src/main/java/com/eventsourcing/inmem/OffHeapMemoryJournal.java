@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.*;
+import com.eventsourcing.hlc.HybridTimestamp;
+import com.eventsourcing.layout.ObjectDeserializer;
+import com.eventsourcing.layout.ObjectSerializer;
+import com.eventsourcing.layout.Serialization;
+import com.eventsourcing.layout.binary.BinarySerialization;
+import com.eventsourcing.utils.CloseableWrappingIterator;
+import com.google.common.util.concurrent.AbstractService;
+import com.googlecode.cqengine.index.support.CloseableIterator;
+import com.googlecode.cqengine.query.option.QueryOptions;
+import lombok.Getter;
+import lombok.Setter;
+import org.osgi.service.component.annotations.Component;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Memory-based {@link Journal} implementation that keeps serialized entities off-heap.
+ * <p>
+ * Unlike {@link MemoryJournal}, which retains deserialized entities on the heap, this journal
+ * appends {@link BinarySerialization} bytes to direct {@link ByteBuffer} arenas and deserializes
+ * entities on {@link #get(UUID)}. UUIDs are indexed with an open-addressing hash table of
+ * primitive arrays and entities of every class are tracked as primitive arrays of addresses,
+ * so the heap footprint per entity is a few dozen bytes, regardless of its size.
+ * <p>
+ * Arena record layout:
+ * <pre>
+ * int classId
+ * long uuidMsb
+ * long uuidLsb
+ * int size
+ * byte[size] entity
+ * </pre>
+ */
+@Component(property = {"type=OffHeapMemoryJournal"}, service = Journal.class)
+public class OffHeapMemoryJournal extends AbstractService implements Journal {
+
+    public static final int DEFAULT_ARENA_SIZE = 16 * 1024 * 1024;
+
+    private static final Serialization serialization = BinarySerialization.getInstance();
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 8 + 4;
+
+    @Getter @Setter
+    private Repository repository;
+
+    @Getter
+    private final int arenaSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // all fields below are guarded by lock
+    private final List<ByteBuffer> arenas = new ArrayList<>();
+    private final UUIDIndex index = new UUIDIndex();
+    private final List<Class<? extends Entity>> classes = new ArrayList<>();
+    private final Map<Class<? extends Entity>, Integer> classIds = new HashMap<>();
+    private final List<AddressList> addresses = new ArrayList<>();
+
+    public OffHeapMemoryJournal() {
+        this(DEFAULT_ARENA_SIZE);
+    }
+
+    /**
+     * @param arenaSize size of off-heap arenas to allocate (in bytes). Entities larger than that
+     *                  get an arena of their own.
+     */
+    public OffHeapMemoryJournal(int arenaSize) {
+        this.arenaSize = arenaSize;
+    }
+
+    @Override
+    protected void doStart() {
+        if (repository == null) {
+            notifyFailed(new IllegalStateException("repository == null"));
+        }
+        notifyStarted();
+    }
+
+    @Override
+    protected void doStop() {
+        notifyStopped();
+    }
+
+    private static class Record {
+        private final Class<? extends Entity> klass;
+        private final UUID uuid;
+        private final ByteBuffer entity;
+
+        Record(Class<? extends Entity> klass, UUID uuid, ByteBuffer entity) {
+            this.klass = klass;
+            this.uuid = uuid;
+            this.entity = entity;
+        }
+    }
+
+    static class Transaction implements Journal.Transaction {
+        private final List<Record> records = new ArrayList<>();
+        private final OffHeapMemoryJournal journal;
+        private final Transaction parent;
+
+        Transaction(OffHeapMemoryJournal journal) {this(journal, null);}
+
+        private Transaction(OffHeapMemoryJournal journal, Transaction parent) {
+            this.journal = journal;
+            this.parent = parent;
+        }
+
+        @Override public void rollback() {
+            records.clear();
+        }
+
+        @Override public void commit() {
+            if (parent != null) {
+                parent.records.addAll(records);
+            } else {
+                journal.write(records);
+            }
+            records.clear();
+        }
+
+        @Override public Journal.Transaction beginNested() {
+            return new Transaction(journal, this);
+        }
+    }
+
+    @Override public <S, T> Command<S, T> journal(Journal.Transaction tx, Command<S, T> command) {
+        return (Command<S, T>) record((Transaction) tx, command);
+    }
+
+    @Override public Event journal(Journal.Transaction tx, Event event) {
+        return (Event) record((Transaction) tx, event);
+    }
+
+    private Entity record(Transaction tx, Entity entity) {
+        ObjectSerializer<Entity> serializer = serialization.getSerializer(entity.getClass());
+
+        ByteBuffer buffer = serializer.serialize(entity);
+        buffer.rewind();
+        tx.records.add(new Record(entity.getClass(), entity.uuid(), buffer.asReadOnlyBuffer()));
+
+        // the journal keeps the serialized entity, so it is not affected
+        // by any later changes to the instance and there's no need to copy it
+        return entity;
+    }
+
+    private void write(List<Record> records) {
+        lock.writeLock().lock();
+        try {
+            for (Record record : records) {
+                int size = RECORD_HEADER_SIZE + record.entity.remaining();
+                ByteBuffer arena = arenas.isEmpty() ? null : arenas.get(arenas.size() - 1);
+                if (arena == null || arena.remaining() < size) {
+                    arena = ByteBuffer.allocateDirect(Math.max(arenaSize, size));
+                    arenas.add(arena);
+                }
+                long address = ((long) (arenas.size() - 1) << 32) | arena.position();
+                arena.putInt(classId(record.klass));
+                arena.putLong(record.uuid.getMostSignificantBits());
+                arena.putLong(record.uuid.getLeastSignificantBits());
+                arena.putInt(record.entity.remaining());
+                arena.put(record.entity.duplicate());
+
+                index.put(record.uuid, address);
+                addresses.get(classId(record.klass)).add(address);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // guarded by lock
+    private int classId(Class<? extends Entity> klass) {
+        Integer id = classIds.get(klass);
+        if (id == null) {
+            id = classes.size();
+            classes.add(klass);
+            classIds.put(klass, id);
+            addresses.add(new AddressList());
+        }
+        return id;
+    }
+
+    @Override public Journal.Transaction beginTransaction() {
+        return new Transaction(this);
+    }
+
+    @Getter
+    private final Properties properties = new Properties() {
+        @Getter
+        private Optional<HybridTimestamp> repositoryTimestamp = Optional.empty();
+
+        @Override public void setRepositoryTimestamp(HybridTimestamp timestamp) {
+            repositoryTimestamp = Optional.of(timestamp);
+        }
+    };
+
+    @Override @SuppressWarnings("unchecked")
+    public <T extends Entity> Optional<T> get(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            long address = index.get(uuid);
+            if (address < 0) {
+                return Optional.empty();
+            }
+            return Optional.of((T) read(address));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // guarded by lock (read)
+    private Entity read(long address) {
+        ByteBuffer arena = arenas.get((int) (address >>> 32));
+        int position = (int) address;
+        Class<? extends Entity> klass = classes.get(arena.getInt(position));
+        UUID uuid = new UUID(arena.getLong(position + 4), arena.getLong(position + 12));
+        int size = arena.getInt(position + 20);
+        ByteBuffer buffer = arena.duplicate();
+        buffer.limit(position + RECORD_HEADER_SIZE + size).position(position + RECORD_HEADER_SIZE);
+        ObjectDeserializer<Entity> deserializer = serialization.getDeserializer(klass);
+        Entity entity = deserializer.deserialize(buffer.slice());
+        entity.uuid(uuid);
+        return entity;
+    }
+
+    // records are never modified once written, so arenas may be read without a lock
+    private static UUID readUUID(List<ByteBuffer> arenas, long address) {
+        ByteBuffer arena = arenas.get((int) (address >>> 32));
+        int position = (int) address;
+        return new UUID(arena.getLong(position + 4), arena.getLong(position + 12));
+    }
+
+    @Override
+    public <T extends Command<?, ?>> CloseableIterator<EntityHandle<T>> commandIterator(Class<T> klass,
+                                                                                        QueryOptions queryOptions) {
+        return entityIterator(klass);
+    }
+
+    @Override
+    public <T extends Event> CloseableIterator<EntityHandle<T>> eventIterator(Class<T> klass,
+                                                                              QueryOptions queryOptions) {
+        return entityIterator(klass);
+    }
+
+    /**
+     * Iterates over entities of the class (and its subclasses) journalled by the time of the call,
+     * reading their UUIDs lazily
+     */
+    private <T extends Entity> CloseableIterator<EntityHandle<T>> entityIterator(Class<T> klass) {
+        List<ByteBuffer> arenas;
+        List<AddressList> lists = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            arenas = new ArrayList<>(this.arenas);
+            for (int i = 0; i < classes.size(); i++) {
+                if (klass.isAssignableFrom(classes.get(i))) {
+                    lists.add(addresses.get(i).snapshot());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new CloseableWrappingIterator<>(new Iterator<EntityHandle<T>>() {
+            private int list;
+            private int position;
+
+            @Override public boolean hasNext() {
+                while (list < lists.size() && position == lists.get(list).size) {
+                    list++;
+                    position = 0;
+                }
+                return list < lists.size();
+            }
+
+            @Override public EntityHandle<T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                UUID uuid = readUUID(arenas, lists.get(list).addresses[position++]);
+                return new JournalEntityHandle<>(OffHeapMemoryJournal.this, uuid);
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            arenas.clear();
+            index.clear();
+            addresses.forEach(AddressList::clear);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override public <T extends Entity> long size(Class<T> klass) {
+        lock.readLock().lock();
+        try {
+            long size = 0;
+            for (int i = 0; i < classes.size(); i++) {
+                if (klass.isAssignableFrom(classes.get(i))) {
+                    size += addresses.get(i).size;
+                }
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override public <T extends Entity> boolean isEmpty(Class<T> klass) {
+        return size(klass) == 0;
+    }
+
+    /**
+     * Growable array of addresses. Addresses are only appended and the array is replaced when grown or
+     * cleared, so a {@link #snapshot()} is never affected by later changes.
+     */
+    private static class AddressList {
+        private long[] addresses;
+        private int size;
+
+        AddressList() {
+            this(new long[16], 0);
+        }
+
+        private AddressList(long[] addresses, int size) {
+            this.addresses = addresses;
+            this.size = size;
+        }
+
+        AddressList snapshot() {
+            return new AddressList(addresses, size);
+        }
+
+        void add(long address) {
+            if (size == addresses.length) {
+                addresses = Arrays.copyOf(addresses, size * 2);
+            }
+            addresses[size++] = address;
+        }
+
+        void clear() {
+            addresses = new long[16];
+            size = 0;
+        }
+    }
+}
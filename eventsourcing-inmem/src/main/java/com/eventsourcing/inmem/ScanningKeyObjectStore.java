@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.EntityHandle;
+import com.eventsourcing.index.KeyObjectStore;
+import com.googlecode.cqengine.index.support.CloseableIterator;
+import com.googlecode.cqengine.persistence.support.ObjectStore;
+import com.googlecode.cqengine.query.option.QueryOptions;
+
+import java.util.UUID;
+
+/**
+ * Looks entities up by scanning an object store. Used by indices that only keep entity UUIDs
+ * for object stores that can't look entities up by UUID (not backed by a journal).
+ */
+class ScanningKeyObjectStore<O extends Entity> implements KeyObjectStore<UUID, EntityHandle<O>> {
+
+    private final ObjectStore<EntityHandle<O>> objectStore;
+
+    ScanningKeyObjectStore(ObjectStore<EntityHandle<O>> objectStore) {
+        this.objectStore = objectStore;
+    }
+
+    @Override public EntityHandle<O> get(UUID key) {
+        try (CloseableIterator<EntityHandle<O>> iterator = objectStore.iterator(new QueryOptions())) {
+            while (iterator.hasNext()) {
+                EntityHandle<O> next = iterator.next();
+                if (next.uuid().equals(key)) {
+                    return next;
+                }
+            }
+        }
+        return null;
+    }
+}
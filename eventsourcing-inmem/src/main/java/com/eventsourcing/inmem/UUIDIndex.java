@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import java.util.UUID;
+
+/**
+ * Open-addressing (linear probing) UUID to address hash table. Not thread-safe.
+ */
+class UUIDIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] msbs;
+    private long[] lsbs;
+    // address + 1, zero marks an empty slot
+    private long[] addresses;
+    private int size;
+
+    UUIDIndex() {
+        clear();
+    }
+
+    void clear() {
+        msbs = new long[INITIAL_CAPACITY];
+        lsbs = new long[INITIAL_CAPACITY];
+        addresses = new long[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    private static int slot(long msb, long lsb, int mask) {
+        long hash = msb ^ lsb;
+        hash ^= hash >>> 32;
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    long get(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = addresses.length - 1;
+        for (int i = slot(msb, lsb, mask); addresses[i] != 0; i = (i + 1) & mask) {
+            if (msbs[i] == msb && lsbs[i] == lsb) {
+                return addresses[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    void put(UUID uuid, long address) {
+        if ((size + 1) * 4 > addresses.length * 3) {
+            resize();
+        }
+        if (insert(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), address + 1)) {
+            size++;
+        }
+    }
+
+    void remove(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = addresses.length - 1;
+        int i = slot(msb, lsb, mask);
+        while (addresses[i] != 0 && (msbs[i] != msb || lsbs[i] != lsb)) {
+            i = (i + 1) & mask;
+        }
+        if (addresses[i] == 0) {
+            return;
+        }
+        // shift entries that probed past the removed one back, so that lookups don't stop short
+        for (int j = (i + 1) & mask; addresses[j] != 0; j = (j + 1) & mask) {
+            int home = slot(msbs[j], lsbs[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                msbs[i] = msbs[j];
+                lsbs[i] = lsbs[j];
+                addresses[i] = addresses[j];
+                i = j;
+            }
+        }
+        addresses[i] = 0;
+        size--;
+    }
+
+    private boolean insert(long msb, long lsb, long value) {
+        int mask = addresses.length - 1;
+        int i = slot(msb, lsb, mask);
+        while (addresses[i] != 0) {
+            if (msbs[i] == msb && lsbs[i] == lsb) {
+                addresses[i] = value;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        msbs[i] = msb;
+        lsbs[i] = lsb;
+        addresses[i] = value;
+        return true;
+    }
+
+    private void resize() {
+        long[] oldMsbs = msbs, oldLsbs = lsbs, oldAddresses = addresses;
+        msbs = new long[oldAddresses.length * 2];
+        lsbs = new long[oldAddresses.length * 2];
+        addresses = new long[oldAddresses.length * 2];
+        for (int i = 0; i < oldAddresses.length; i++) {
+            if (oldAddresses[i] != 0) {
+                insert(oldMsbs[i], oldLsbs[i], oldAddresses[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.EntityHandle;
+import com.eventsourcing.index.Attribute;
+import com.eventsourcing.index.EqualityIndexTest;
+import com.eventsourcing.index.IndexEngine;
+import com.eventsourcing.models.Car;
+import com.eventsourcing.models.CarFactory;
+import com.googlecode.cqengine.IndexedCollection;
+import com.googlecode.cqengine.index.hash.HashIndex;
+import com.googlecode.cqengine.persistence.onheap.OnHeapPersistence;
+import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.resultset.ResultSet;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.googlecode.cqengine.query.QueryFactory.*;
+import static org.testng.Assert.*;
+
+@Test
+public class BitmapIndexTest extends EqualityIndexTest<BitmapIndex> {
+
+    @Override
+    public <A, O extends Entity> BitmapIndex onAttribute(Attribute<O, A> attribute) {
+        return BitmapIndex.onAttribute(attribute);
+    }
+
+    @Test
+    public void logicalQueries() {
+        IndexedCollection<EntityHandle<Car>> collection = new MemoryIndexEngine()
+                .createIndexedCollection(OnHeapPersistence.withoutPrimaryKey());
+        EntityOrdinals ordinals = new EntityOrdinals();
+        collection.addIndex(BitmapIndex.onAttribute(Car.COLOR, ordinals));
+        collection.addIndex(BitmapIndex.onAttribute(Car.DOORS, ordinals));
+        collection.addIndex(BitmapIndex.onAttribute(Car.FEATURES, ordinals));
+        collection.addIndex(HashIndex.onAttribute(Car.MANUFACTURER));
+
+        Set<EntityHandle<Car>> cars = CarFactory.createCollectionOfCars(1000);
+        collection.addAll(cars);
+
+        assertQuery(collection, cars, and(equal(Car.COLOR, Car.Color.RED), equal(Car.DOORS, 5)));
+        assertQuery(collection, cars, or(equal(Car.COLOR, Car.Color.RED), in(Car.DOORS, 2, 3)));
+        assertQuery(collection, cars, and(equal(Car.COLOR, Car.Color.BLUE), not(equal(Car.DOORS, 5))));
+        assertQuery(collection, cars, not(or(equal(Car.COLOR, Car.Color.BLUE), has(Car.DOORS))));
+        assertQuery(collection, cars, and(equal(Car.COLOR, Car.Color.BLUE), equal(Car.MANUFACTURER, "Honda")));
+        assertQuery(collection, cars, or(equal(Car.COLOR, Car.Color.BLUE), equal(Car.MANUFACTURER, "Honda")));
+        // cars without features are matched, too
+        assertQuery(collection, cars, not(equal(Car.FEATURES, "hybrid")));
+        assertQuery(collection, cars, and(equal(Car.COLOR, Car.Color.RED), not(has(Car.FEATURES))));
+
+        Set<EntityHandle<Car>> removed = cars.stream().filter(car -> car.get().getCarId() % 2 == 0)
+                                             .collect(Collectors.toSet());
+        collection.removeAll(removed);
+        cars.removeAll(removed);
+        assertQuery(collection, cars, not(equal(Car.FEATURES, "hybrid")));
+        assertQuery(collection, cars, not(or(equal(Car.COLOR, Car.Color.BLUE), has(Car.DOORS))));
+    }
+
+    @Test
+    public void reclaimsOrdinals() {
+        IndexedCollection<EntityHandle<Car>> collection = new MemoryIndexEngine()
+                .createIndexedCollection(OnHeapPersistence.withoutPrimaryKey());
+        EntityOrdinals ordinals = new EntityOrdinals();
+        collection.addIndex(BitmapIndex.onAttribute(Car.COLOR, ordinals));
+        collection.addIndex(BitmapIndex.onAttribute(Car.FEATURES, ordinals));
+
+        Set<EntityHandle<Car>> cars = CarFactory.createCollectionOfCars(1000);
+        collection.addAll(cars);
+        Set<EntityHandle<Car>> replacements = CarFactory.createCollectionOfCars(1000);
+        try (ResultSet<EntityHandle<Car>> red = collection.retrieve(equal(Car.COLOR, Car.Color.RED))) {
+            collection.removeAll(cars);
+            assertTrue(ordinals.entities().isEmpty());
+            cars.forEach(car -> assertEquals(ordinals.get(car.uuid()), -1));
+
+            collection.addAll(replacements);
+            replacements.forEach(car -> assertTrue(ordinals.get(car.uuid()) < 1000));
+            // reassigned ordinals are not seen by earlier result sets
+            red.forEach(car -> assertFalse(replacements.contains(car)));
+            replacements.forEach(car -> assertFalse(red.contains(car)));
+        }
+        assertQuery(collection, replacements, not(equal(Car.COLOR, Car.Color.RED)));
+        assertQuery(collection, replacements, or(equal(Car.COLOR, Car.Color.RED), equal(Car.FEATURES, "hybrid")));
+    }
+
+    @Test
+    public void optIn() throws Exception {
+        MemoryIndexEngine indexEngine = new MemoryIndexEngine();
+        assertTrue(indexEngine.getIndexOnAttribute(Car.COLOR, IndexEngine.IndexFeature.EQ) instanceof HashIndex);
+        indexEngine.setBitmapIndices(true);
+        assertTrue(indexEngine.getIndexOnAttribute(Car.COLOR, IndexEngine.IndexFeature.EQ) instanceof BitmapIndex);
+        assertTrue(indexEngine.getIndexOnAttribute(Car.MANUFACTURER, IndexEngine.IndexFeature.EQ) instanceof HashIndex);
+    }
+
+    private static void assertQuery(IndexedCollection<EntityHandle<Car>> collection, Set<EntityHandle<Car>> cars,
+                                    Query<EntityHandle<Car>> query) {
+        Set<EntityHandle<Car>> expected = cars.stream().filter(car -> query.matches(car, noQueryOptions()))
+                                              .collect(Collectors.toSet());
+        try (ResultSet<EntityHandle<Car>> resultSet = collection.retrieve(query)) {
+            assertEquals(resultSet.size(), expected.size(), query.toString());
+            Set<EntityHandle<Car>> actual = new HashSet<>();
+            resultSet.forEach(actual::add);
+            assertEquals(actual, expected, query.toString());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.CachingJournal;
+import com.eventsourcing.Journal;
+import com.eventsourcing.hlc.HybridTimestamp;
+import com.eventsourcing.repository.JournalTest;
+import lombok.SneakyThrows;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class CachingMemoryJournalTest extends JournalTest<CachingJournal> {
+
+    public CachingMemoryJournalTest() {
+        super(new CachingJournal(new MemoryJournal()));
+    }
+
+    @Test
+    @SneakyThrows
+    public void caching() {
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+        TestCommand command = TestCommand.builder().build();
+        command.timestamp(timestamp);
+        Journal.Transaction tx = journal.beginTransaction();
+        journal.journal(tx, command);
+        tx.commit();
+
+        long hits = journal.getHitCount();
+        long misses = journal.getMissCount();
+
+        TestCommand retrieved = (TestCommand) journal.get(command.uuid()).get();
+        assertEquals(journal.getMissCount(), misses + 1);
+        assertSame(journal.get(command.uuid()).get(), retrieved);
+        assertEquals(journal.getHitCount(), hits + 1);
+        assertTrue(journal.getSize() > 0);
+    }
+}
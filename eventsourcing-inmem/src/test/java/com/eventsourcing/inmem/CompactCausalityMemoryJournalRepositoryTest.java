@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.Event;
+import com.eventsourcing.Journal;
+import com.eventsourcing.events.CommandTerminatedExceptionally;
+import com.eventsourcing.events.EventCausalityEstablished;
+import com.eventsourcing.repository.RepositoryTest;
+import org.testng.annotations.Test;
+
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+
+@Test
+public class CompactCausalityMemoryJournalRepositoryTest extends RepositoryTest {
+
+    private MemoryJournal journal;
+
+    protected Journal createJournal() {
+        journal = new MemoryJournal();
+        journal.setCompactCausality(true);
+        return journal;
+    }
+
+    @Test
+    public void virtualCausality() {
+        long size = journal.size(EventCausalityEstablished.class);
+        Journal.Transaction tx = journal.beginTransaction();
+        Event event = journal.journal(tx, new CommandTerminatedExceptionally());
+        UUID command = UUID.randomUUID();
+        Event causality = journal.journal(tx, EventCausalityEstablished.builder()
+                                                                       .event(event.uuid()).command(command)
+                                                                       .build());
+        tx.commit();
+
+        assertEquals(causality.uuid(), EventCausalityEstablished.virtualUuid(event.uuid()));
+        EventCausalityEstablished journalled = journal.<EventCausalityEstablished>get(causality.uuid()).get();
+        assertEquals(journalled.event(), event.uuid());
+        assertEquals(journalled.command(), command);
+        assertEquals(journal.size(EventCausalityEstablished.class), size + 1);
+    }
+}
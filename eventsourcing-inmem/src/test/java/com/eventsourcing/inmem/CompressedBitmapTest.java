@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import org.testng.annotations.Test;
+
+import java.util.BitSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+@Test
+public class CompressedBitmapTest {
+
+    private static BitSet bitSet(CompressedBitmap bitmap) {
+        BitSet bitSet = new BitSet();
+        for (PrimitiveIterator.OfInt iterator = bitmap.iterator(); iterator.hasNext(); ) {
+            bitSet.set(iterator.nextInt());
+        }
+        return bitSet;
+    }
+
+    private static CompressedBitmap random(Random random, BitSet expected, int count, int bound) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < count; i++) {
+            int value = random.nextInt(bound);
+            bitmap.add(value);
+            expected.set(value);
+        }
+        return bitmap;
+    }
+
+    @Test
+    public void containerTransitions() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < 10000; i++) {
+            bitmap.add(i);
+        }
+        bitmap.add(70000);
+        assertEquals(bitmap.cardinality(), 10001);
+        assertTrue(bitmap.contains(CompressedBitmap.ARRAY_LIMIT + 1));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(10000));
+
+        for (int i = 0; i < 10000; i += 2) {
+            bitmap.remove(i);
+        }
+        assertEquals(bitmap.cardinality(), 5001);
+        assertFalse(bitmap.contains(0));
+        assertTrue(bitmap.contains(1));
+
+        BitSet expected = new BitSet();
+        for (int i = 1; i < 10000; i += 2) {
+            expected.set(i);
+        }
+        expected.set(70000);
+        assertEquals(bitSet(bitmap), expected);
+
+        bitmap.remove(70000);
+        for (int i = 1; i < 10000; i += 2) {
+            bitmap.remove(i);
+        }
+        assertTrue(bitmap.isEmpty());
+        assertFalse(bitmap.iterator().hasNext());
+    }
+
+    @Test
+    public void operations() {
+        Random random = new Random(42);
+        for (int count : new int[]{100, 3000, 20000}) {
+            BitSet a = new BitSet(), b = new BitSet();
+            CompressedBitmap x = random(random, a, count, 200000);
+            CompressedBitmap y = random(random, b, count, 200000);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            assertEquals(bitSet(x.and(y)), and);
+            assertEquals(x.and(y).cardinality(), and.cardinality());
+
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            assertEquals(bitSet(x.or(y)), or);
+            assertEquals(x.or(y).cardinality(), or.cardinality());
+
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+            assertEquals(bitSet(x.andNot(y)), andNot);
+            assertEquals(x.andNot(y).cardinality(), andNot.cardinality());
+
+            // operands are left intact
+            assertEquals(bitSet(x), a);
+            assertEquals(bitSet(y), b);
+        }
+    }
+}
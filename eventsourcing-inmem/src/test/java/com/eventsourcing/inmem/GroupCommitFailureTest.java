@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.*;
+import com.eventsourcing.hlc.HybridTimestamp;
+import com.eventsourcing.hlc.NTPServerTimeProvider;
+import com.eventsourcing.index.IndexEngineTest;
+import com.eventsourcing.repository.StandardRepository;
+import lombok.Builder;
+import lombok.SneakyThrows;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+@Test
+public class GroupCommitFailureTest {
+
+    private static final AtomicInteger invocations = new AtomicInteger();
+
+    private StandardRepository repository;
+    private LocalLockProvider lockProvider;
+
+    private static class FailingJournal extends MemoryJournal {
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        @Override public Event journal(Journal.Transaction tx, Event event) {
+            if (event instanceof IndexEngineTest.TestEvent && failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("journal failure");
+            }
+            return super.journal(tx, event);
+        }
+    }
+
+    public static class LockingCommand extends StandardCommand<Void, Void> {
+        @Builder
+        public LockingCommand(HybridTimestamp timestamp) {
+            super(timestamp);
+        }
+
+        @Override public EventStream<Void> events(Repository repository, LockProvider lockProvider) {
+            invocations.incrementAndGet();
+            lockProvider.lock("LOCK");
+            return EventStream.of(IndexEngineTest.TestEvent.builder().string("test").build());
+        }
+    }
+
+    @BeforeMethod
+    @SneakyThrows
+    public void setUp() {
+        invocations.set(0);
+        repository = new StandardRepository();
+        repository.setGroupCommitSize(16);
+        repository.setGroupCommitDelay(2);
+        FailingJournal journal = new FailingJournal();
+        repository.setJournal(journal);
+        repository.addCommandSetProvider(() -> Collections.singleton(LockingCommand.class));
+        repository.addEventSetProvider(() -> Collections.singleton(IndexEngineTest.TestEvent.class));
+        repository.setIndexEngine(new MemoryIndexEngine());
+        lockProvider = new LocalLockProvider();
+        repository.setLockProvider(lockProvider);
+        repository.setPhysicalTimeProvider(new NTPServerTimeProvider(new String[]{"localhost"}));
+        repository.startAsync().awaitRunning();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        repository.stopAsync().awaitTerminated();
+    }
+
+    @Test(timeOut = 10000)
+    public void failureIsolation() {
+        CompletableFuture<Void> future = repository.publish(LockingCommand.builder().build());
+        assertTrue(future.handle((result, throwable) -> throwable != null).join());
+        // the command is not run again and its locks are released
+        assertEquals(invocations.get(), 1);
+        Lock lock = lockProvider.lock("LOCK");
+        assertTrue(lock.isLocked());
+        lock.unlock();
+    }
+}
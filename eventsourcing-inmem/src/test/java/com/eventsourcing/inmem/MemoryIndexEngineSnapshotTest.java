@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.*;
+import com.eventsourcing.hlc.NTPServerTimeProvider;
+import com.eventsourcing.index.Attribute;
+import com.eventsourcing.index.IndexEngineTest;
+import com.eventsourcing.repository.StandardRepository;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Bytes;
+import com.googlecode.cqengine.IndexedCollection;
+import com.googlecode.cqengine.index.AttributeIndex;
+import com.googlecode.cqengine.index.Index;
+import lombok.SneakyThrows;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+
+import static com.eventsourcing.index.IndexEngine.IndexFeature.EQ;
+import static com.eventsourcing.queries.QueryFactory.equal;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class MemoryIndexEngineSnapshotTest {
+
+    private Repository repository;
+    private CountingJournal journal;
+    private MemoryIndexEngine indexEngine;
+    private Path directory;
+
+    private static class CountingJournal extends MemoryJournal {
+        private final AtomicInteger fetches = new AtomicInteger();
+
+        @Override public <T extends Entity> Optional<T> get(UUID uuid) {
+            fetches.incrementAndGet();
+            return super.get(uuid);
+        }
+    }
+
+    @BeforeMethod
+    @SneakyThrows
+    public void setUp() {
+        directory = Files.createTempDirectory("es4j-snapshots");
+        repository = new StandardRepository();
+        journal = new CountingJournal();
+        journal.setRepository(repository);
+        repository.setJournal(journal);
+        repository.addCommandSetProvider(() -> Collections.singleton(IndexEngineTest.TestCommand.class));
+        repository.addEventSetProvider(() -> Collections.singleton(IndexEngineTest.TestEvent.class));
+        indexEngine = createIndexEngine();
+        repository.setIndexEngine(indexEngine);
+        repository.setLockProvider(new LocalLockProvider());
+        repository.setPhysicalTimeProvider(new NTPServerTimeProvider(new String[]{"localhost"}));
+        repository.startAsync().awaitRunning();
+    }
+
+    private MemoryIndexEngine createIndexEngine() {
+        MemoryIndexEngine engine = new MemoryIndexEngine();
+        engine.setSnapshotDirectory(directory);
+        engine.setJournal(journal);
+        engine.setRepository(repository);
+        return engine;
+    }
+
+    @AfterMethod
+    @SneakyThrows
+    public void tearDown() {
+        repository.stopAsync().awaitTerminated();
+        Files.walk(directory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    private Attribute<IndexEngineTest.TestEvent, String> attribute(String name) {
+        Index<EntityHandle<IndexEngineTest.TestEvent>> index =
+                StreamSupport.stream(indexEngine.getIndexedCollection(IndexEngineTest.TestEvent.class)
+                                                .getIndexes().spliterator(), false)
+                             .filter(i -> i instanceof AttributeIndex &&
+                                          ((AttributeIndex) i).getAttribute().getAttributeName().equals(name))
+                             .findFirst().get();
+        return (Attribute<IndexEngineTest.TestEvent, String>) ((AttributeIndex) index).getAttribute();
+    }
+
+    @Test
+    @SneakyThrows
+    public void restore() {
+        for (int i = 0; i < 10; i++) {
+            repository.publish(IndexEngineTest.TestCommand.builder().string("test" + i).build()).get();
+        }
+        Attribute<IndexEngineTest.TestEvent, String> attribute = attribute("ATTR");
+        indexEngine.stopAsync().awaitTerminated();
+
+        // journalled after the snapshot was taken
+        repository.publish(IndexEngineTest.TestCommand.builder().string("new").build()).get();
+
+        MemoryIndexEngine restored = createIndexEngine();
+        restored.startAsync().awaitRunning();
+        journal.fetches.set(0);
+        IndexedCollection<EntityHandle<IndexEngineTest.TestEvent>> collection =
+                restored.getIndexedCollection(IndexEngineTest.TestEvent.class);
+        collection.addIndex((Index) restored.getIndexOnAttribute(attribute, EQ));
+        assertEquals(journal.fetches.get(), 1);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(collection.retrieve(equal(IndexEngineTest.TestEvent.ATTR, "test" + i)).size(), 1);
+        }
+        assertEquals(collection.retrieve(equal(IndexEngineTest.TestEvent.ATTR, "new")).size(), 1);
+        restored.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    @SneakyThrows
+    public void changedAttribute() {
+        for (int i = 0; i < 10; i++) {
+            repository.publish(IndexEngineTest.TestCommand.builder().string("test" + i).build()).get();
+        }
+        Attribute<IndexEngineTest.TestEvent, String> attribute = attribute("ATTR");
+        indexEngine.stopAsync().awaitTerminated();
+
+        // pretend the attribute's definition has changed since the snapshot was taken
+        Path file = directory.resolve(IndexEngineTest.TestEvent.class.getName() + ".ATTR.snapshot");
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] fingerprint = AttributeSnapshot.fingerprint(attribute);
+        int offset = Bytes.indexOf(bytes, fingerprint);
+        assertTrue(offset > 0);
+        bytes[offset] = (byte) ~bytes[offset];
+        Files.write(file, bytes);
+
+        MemoryIndexEngine restored = createIndexEngine();
+        restored.startAsync().awaitRunning();
+        journal.fetches.set(0);
+        IndexedCollection<EntityHandle<IndexEngineTest.TestEvent>> collection =
+                restored.getIndexedCollection(IndexEngineTest.TestEvent.class);
+        collection.addIndex((Index) restored.getIndexOnAttribute(attribute, EQ));
+        assertEquals(journal.fetches.get(), 10);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(collection.retrieve(equal(IndexEngineTest.TestEvent.ATTR, "test" + i)).size(), 1);
+        }
+        restored.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    @SneakyThrows
+    public void sharedScan() {
+        for (int i = 0; i < 10; i++) {
+            repository.publish(IndexEngineTest.TestCommand.builder().string("test" + i).build()).get();
+        }
+        MemoryIndexEngine engine = new MemoryIndexEngine();
+        engine.setJournal(journal);
+        engine.setRepository(repository);
+        engine.startAsync().awaitRunning();
+        journal.fetches.set(0);
+        engine.addIndices(IndexEngineTest.TestEvent.class,
+                          Arrays.asList((Index) engine.getIndexOnAttribute(attribute("ATTR"), EQ),
+                                        (Index) engine.getIndexOnAttribute(attribute("ANOTHER_ATTR"), EQ)));
+        assertEquals(journal.fetches.get(), 10);
+
+        IndexedCollection<EntityHandle<IndexEngineTest.TestEvent>> collection =
+                engine.getIndexedCollection(IndexEngineTest.TestEvent.class);
+        assertEquals(Iterables.size(collection.getIndexes()), 2);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(collection.retrieve(equal(IndexEngineTest.TestEvent.ATTR, "test" + i)).size(), 1);
+        }
+        engine.stopAsync().awaitTerminated();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.EntityHandle;
+import com.eventsourcing.index.Attribute;
+import com.eventsourcing.index.EqualityIndexTest;
+import com.eventsourcing.index.IndexEngine;
+import com.eventsourcing.index.SimpleAttribute;
+import com.eventsourcing.models.Car;
+import com.eventsourcing.models.CarFactory;
+import com.googlecode.cqengine.ConcurrentIndexedCollection;
+import com.googlecode.cqengine.IndexedCollection;
+import com.googlecode.cqengine.index.hash.HashIndex;
+import com.googlecode.cqengine.query.option.QueryOptions;
+import com.googlecode.cqengine.resultset.ResultSet;
+import lombok.SneakyThrows;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+import static com.googlecode.cqengine.query.QueryFactory.*;
+import static org.testng.Assert.*;
+
+@Test
+public class OffHeapHashIndexTest extends EqualityIndexTest<OffHeapHashIndex> {
+
+    @Override
+    public <A, O extends Entity> OffHeapHashIndex onAttribute(Attribute<O, A> attribute) {
+        return OffHeapHashIndex.onAttribute(attribute);
+    }
+
+    public static final Attribute<Car, UUID> REFERENCE = new SimpleAttribute<Car, UUID>("reference") {
+        @Override public UUID getValue(Car car, QueryOptions queryOptions) {
+            return UUID.nameUUIDFromBytes(car.getModel().getBytes());
+        }
+    };
+
+    @Test
+    public void primitiveKeys() {
+        IndexedCollection<EntityHandle<Car>> collection = new ConcurrentIndexedCollection<>();
+        OffHeapHashIndex<UUID, Car> referenceIndex = OffHeapHashIndex.onAttribute(REFERENCE);
+        OffHeapHashIndex<Integer, Car> doorsIndex = OffHeapHashIndex.onAttribute(Car.DOORS);
+        collection.addIndex(referenceIndex);
+        collection.addIndex(doorsIndex);
+
+        collection.addAll(CarFactory.createCollectionOfCars(20));
+
+        UUID civic = UUID.nameUUIDFromBytes("Civic".getBytes());
+        try (ResultSet<EntityHandle<Car>> cars = collection.retrieve(equal(REFERENCE, civic))) {
+            assertEquals(cars.size(), 2);
+            cars.forEach(car -> assertEquals(car.get().getModel(), "Civic"));
+        }
+        assertEquals(setOf(doorsIndex.getDistinctKeys(noQueryOptions())), setOf(2, 3, 4, 5));
+        try (ResultSet<EntityHandle<Car>> cars = collection.retrieve(in(Car.DOORS, 2, 3))) {
+            assertTrue(cars.isNotEmpty());
+            cars.forEach(car -> assertTrue(car.get().getDoors() == 2 || car.get().getDoors() == 3));
+        }
+    }
+
+    @Test
+    public void growthAndRemoval() {
+        IndexedCollection<EntityHandle<Car>> collection = new ConcurrentIndexedCollection<>();
+        OffHeapHashIndex<Integer, Car> index = OffHeapHashIndex.onAttribute(Car.CAR_ID);
+        OffHeapHashIndex<String, Car> manufacturers = OffHeapHashIndex.onAttribute(Car.MANUFACTURER);
+        collection.addIndex(index);
+        collection.addIndex(manufacturers);
+
+        Set<EntityHandle<Car>> cars = CarFactory.createCollectionOfCars(10000);
+        collection.addAll(cars);
+        assertEquals((int) index.getCountOfDistinctKeys(noQueryOptions()), 10000);
+        assertEquals((int) manufacturers.getCountForKey("Honda", noQueryOptions()), 3000);
+
+        List<EntityHandle<Car>> removed = new ArrayList<>();
+        for (EntityHandle<Car> car : cars) {
+            if (car.get().getCarId() % 2 == 0) {
+                removed.add(car);
+            }
+        }
+        collection.removeAll(removed);
+        assertEquals((int) index.getCountOfDistinctKeys(noQueryOptions()), 5000);
+        assertEquals((int) manufacturers.getCountForKey("Honda", noQueryOptions()), 2000);
+        for (EntityHandle<Car> car : cars) {
+            int carId = car.get().getCarId();
+            assertEquals((int) index.getCountForKey(carId, noQueryOptions()), carId % 2 == 0 ? 0 : 1);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void optIn() {
+        MemoryIndexEngine indexEngine = new MemoryIndexEngine();
+        assertTrue(indexEngine.getIndexOnAttribute(Car.MANUFACTURER, IndexEngine.IndexFeature.EQ) instanceof HashIndex);
+        indexEngine.setOffHeapIndices(true);
+        assertTrue(indexEngine.getIndexOnAttribute(Car.MANUFACTURER, IndexEngine.IndexFeature.EQ)
+                   instanceof OffHeapHashIndex);
+    }
+}
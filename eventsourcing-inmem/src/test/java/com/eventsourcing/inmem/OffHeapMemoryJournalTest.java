@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import com.eventsourcing.EntityHandle;
+import com.eventsourcing.Journal;
+import com.eventsourcing.hlc.HybridTimestamp;
+import com.eventsourcing.repository.JournalTest;
+import com.googlecode.cqengine.index.support.CloseableIterator;
+import lombok.SneakyThrows;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class OffHeapMemoryJournalTest extends JournalTest<OffHeapMemoryJournal> {
+
+    public OffHeapMemoryJournalTest() {
+        // small arenas to exercise arena allocation
+        super(new OffHeapMemoryJournal(4096));
+    }
+
+    @Test
+    @SneakyThrows
+    public void manyEntities() {
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+        List<UUID> uuids = new ArrayList<>();
+        Journal.Transaction tx = journal.beginTransaction();
+        for (int i = 0; i < 5000; i++) {
+            TestEvent event = TestEvent.builder().timestamp(timestamp.clone()).build();
+            journal.journal(tx, event);
+            uuids.add(event.uuid());
+        }
+        tx.commit();
+
+        assertEquals(journal.size(TestEvent.class), uuids.size());
+        for (UUID uuid : uuids) {
+            assertTrue(journal.get(uuid).isPresent());
+            assertEquals(journal.get(uuid).get().uuid(), uuid);
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void iterationSnapshot() {
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+        List<UUID> uuids = new ArrayList<>();
+        Journal.Transaction tx = journal.beginTransaction();
+        for (int i = 0; i < 100; i++) {
+            TestEvent event = TestEvent.builder().timestamp(timestamp.clone()).build();
+            journal.journal(tx, event);
+            uuids.add(event.uuid());
+        }
+        tx.commit();
+
+        try (CloseableIterator<EntityHandle<TestEvent>> iterator = journal.eventIterator(TestEvent.class)) {
+            // entities journalled after the iterator was created are not iterated over
+            tx = journal.beginTransaction();
+            for (int i = 0; i < 100; i++) {
+                journal.journal(tx, TestEvent.builder().timestamp(timestamp.clone()).build());
+            }
+            tx.commit();
+            List<UUID> iterated = new ArrayList<>();
+            iterator.forEachRemaining(handle -> iterated.add(handle.uuid()));
+            assertEquals(iterated, uuids);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.inmem;
+
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class UUIDIndexTest {
+
+    @Test
+    public void putGetRemove() {
+        Random random = new Random(42);
+        UUIDIndex index = new UUIDIndex();
+        Map<UUID, Long> expected = new HashMap<>();
+        // enough entries to resize and to make probe sequences collide
+        for (int i = 0; i < 5000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            index.put(uuid, i);
+            expected.put(uuid, (long) i);
+        }
+        List<UUID> uuids = new ArrayList<>(expected.keySet());
+        Collections.shuffle(uuids, random);
+        for (UUID uuid : uuids.subList(0, uuids.size() / 2)) {
+            index.remove(uuid);
+            expected.remove(uuid);
+        }
+        // removing an absent key is a no-op
+        index.remove(UUID.randomUUID());
+        for (UUID uuid : uuids) {
+            assertEquals(index.get(uuid), (long) expected.getOrDefault(uuid, -1L));
+        }
+        // removed keys can be put back
+        UUID readded = uuids.get(0);
+        index.put(readded, 7);
+        assertEquals(index.get(readded), 7);
+    }
+
+    @Test
+    public void clear() {
+        UUIDIndex index = new UUIDIndex();
+        UUID uuid = UUID.randomUUID();
+        index.put(uuid, 0);
+        assertEquals(index.get(uuid), 0);
+        index.clear();
+        assertEquals(index.get(uuid), -1);
+    }
+}
@@ -300,6 +300,13 @@ public class Layout<T> {
         throw new NoSuchElementException();
     }
 
+    /**
+     * Setters of properties that are not passed to the constructor, by property name
+     */
+    Map<String, MethodHandle> getSetters() {
+        return Collections.unmodifiableMap(setters);
+    }
+
     private Property<T> getNullableProperty(String name) {
         for (Property<T> property : properties) {
             if (property.getName().contentEquals(name)) {
@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.layout;
+
+import com.eventsourcing.layout.binary.BinarySerialization;
+import com.eventsourcing.layout.types.*;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Produces copies of layout-compatible objects property by property,
+ * without serializing them. The copy is equivalent to what a serialization
+ * round trip would produce: containers, dates and byte arrays are copied,
+ * nested objects are copied through their own layouts and immutable values
+ * are shared.
+ *
+ * If the class is immutable (either annotated with {@link Immutable} or verified
+ * to have only final fields and immutable property types) and none of its properties
+ * is <code>null</code>, the object itself is returned, so the caller and the recipient
+ * of the copy share the same instance. {@link Immutable} is not verified, annotating
+ * a class that can be modified makes such modifications visible on both sides.
+ * <p>
+ * Copiers are cached per class (including copiers of nested objects) and copied values are
+ * passed straight to the layout's constructor, without going through {@link Layout#instantiate(Map)}.
+ *
+ * @param <T> Bean's class
+ */
+public class LayoutCopier<T> {
+
+    private static final Map<Class<?>, LayoutCopier<?>> copiers = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a (cached) copier for a class
+     *
+     * @param klass Type
+     * @return copier
+     */
+    @SneakyThrows
+    public static <T> LayoutCopier<T> forClass(Class<T> klass) {
+        @SuppressWarnings("unchecked")
+        LayoutCopier<T> copier = (LayoutCopier<T>) copiers.get(klass);
+        if (copier == null) {
+            copier = cache(new LayoutCopier<>(Layout.forClass(klass)));
+        }
+        return copier;
+    }
+
+    /**
+     * Returns a (cached) copier for a layout's class
+     *
+     * @param layout Layout
+     * @return copier
+     */
+    public static <T> LayoutCopier<T> forLayout(Layout<T> layout) {
+        @SuppressWarnings("unchecked")
+        LayoutCopier<T> copier = (LayoutCopier<T>) copiers.get(layout.getLayoutClass());
+        if (copier == null) {
+            copier = cache(new LayoutCopier<>(layout));
+        }
+        return copier;
+    }
+
+    private static <T> LayoutCopier<T> cache(LayoutCopier<T> copier) {
+        @SuppressWarnings("unchecked")
+        LayoutCopier<T> existing = (LayoutCopier<T>) copiers.putIfAbsent(copier.getLayout().getLayoutClass(), copier);
+        return existing == null ? copier : existing;
+    }
+
+    /**
+     * Copies an object using a copier for its class
+     *
+     * @param object object to copy
+     * @return copy
+     * @see #copy(Object)
+     */
+    public static <T> T copyOf(T object) {
+        @SuppressWarnings("unchecked")
+        LayoutCopier<T> copier = (LayoutCopier<T>) forClass(object.getClass());
+        return copier.copy(object);
+    }
+
+    @Getter
+    private final Layout<T> layout;
+
+    /**
+     * <code>true</code> if instances of the layout class can be shared instead of being copied
+     */
+    @Getter
+    private final boolean immutable;
+
+    private final List<Property<T>> properties;
+    private final Constructor<T> constructor;
+    private final PropertyCopier[] arguments;
+    private final PropertyCopier[] setters;
+
+    private final class PropertyCopier {
+        private final Property<T> property;
+        private final TypeHandler typeHandler;
+        private final Function<Object, Object> copier;
+        private final MethodHandle setter;
+
+        private PropertyCopier(Property<T> property, MethodHandle setter) {
+            this.property = property;
+            this.typeHandler = property.getTypeHandler();
+            this.copier = copier(typeHandler);
+            this.setter = setter;
+        }
+    }
+
+    public LayoutCopier(Layout<T> layout) {
+        this.layout = layout;
+        this.properties = layout.getProperties();
+        this.constructor = layout.getConstructor();
+        Map<String, Property<T>> propertiesByName = new HashMap<>();
+        boolean immutableProperties = true;
+        for (Property<T> property : properties) {
+            propertiesByName.put(property.getName(), property);
+            immutableProperties = immutableProperties && isImmutable(property.getTypeHandler());
+        }
+        List<Property<T>> constructorProperties = layout.getConstructorProperties();
+        this.arguments = new LayoutCopier.PropertyCopier[constructorProperties.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = new PropertyCopier(propertiesByName.get(constructorProperties.get(i).getName()), null);
+        }
+        Map<String, MethodHandle> setterHandles = layout.getSetters();
+        this.setters = new LayoutCopier.PropertyCopier[setterHandles.size()];
+        int i = 0;
+        for (Map.Entry<String, MethodHandle> entry : setterHandles.entrySet()) {
+            setters[i++] = new PropertyCopier(propertiesByName.get(entry.getKey()), entry.getValue());
+        }
+        Class<T> klass = layout.getLayoutClass();
+        this.immutable = klass.isAnnotationPresent(Immutable.class) ||
+                (immutableProperties && constructorProperties.size() == properties.size() &&
+                        hasFinalFields(klass));
+    }
+
+    /**
+     * Copies an object
+     *
+     * @param object object to copy
+     * @return copy (or the object itself, if it is immutable and has no <code>null</code> properties)
+     */
+    @SneakyThrows
+    public T copy(T object) {
+        if (immutable && isComplete(object)) {
+            return object;
+        }
+        Object[] args = new Object[arguments.length];
+        for (int i = 0; i < args.length; i++) {
+            PropertyCopier argument = arguments[i];
+            Object value = argument.property.get(object);
+            if (value == null) {
+                // normalized the same way Layout#instantiate does
+                args[i] = roundTrip(argument.typeHandler, null);
+            } else {
+                args[i] = immutable ? value : argument.copier.apply(value);
+            }
+        }
+        T copy = constructor.newInstance(args);
+        for (PropertyCopier setter : setters) {
+            Object value = setter.property.get(object);
+            if (value != null) {
+                setter.setter.invoke(copy, immutable ? value : setter.copier.apply(value));
+            }
+        }
+        return copy;
+    }
+
+    private boolean isComplete(T object) {
+        for (Property<T> property : properties) {
+            if (property.get(object) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasFinalFields(Class<?> klass) {
+        for (Class<?> c = klass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isScalar(TypeHandler typeHandler) {
+        return typeHandler instanceof BigDecimalTypeHandler || typeHandler instanceof BigIntegerTypeHandler ||
+                typeHandler instanceof BooleanTypeHandler || typeHandler instanceof ByteTypeHandler ||
+                typeHandler instanceof DoubleTypeHandler || typeHandler instanceof EnumTypeHandler ||
+                typeHandler instanceof FloatTypeHandler || typeHandler instanceof IntegerTypeHandler ||
+                typeHandler instanceof LongTypeHandler || typeHandler instanceof ShortTypeHandler ||
+                typeHandler instanceof StringTypeHandler || typeHandler instanceof UUIDTypeHandler;
+    }
+
+    private static boolean isImmutable(TypeHandler typeHandler) {
+        if (isScalar(typeHandler)) {
+            return true;
+        }
+        if (typeHandler instanceof OptionalTypeHandler) {
+            return isImmutable(((OptionalTypeHandler) typeHandler).getWrappedHandler());
+        }
+        if (typeHandler instanceof ObjectTypeHandler && ((ObjectTypeHandler) typeHandler).getLayout() != null) {
+            return forLayout(((ObjectTypeHandler<?>) typeHandler).getLayout()).isImmutable();
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> copier(TypeHandler typeHandler) {
+        if (isScalar(typeHandler)) {
+            return Function.identity();
+        }
+        if (typeHandler instanceof DateTypeHandler) {
+            return value -> new Date(((Date) value).getTime());
+        }
+        if (typeHandler instanceof ByteArrayTypeHandler) {
+            return value -> value instanceof byte[] ? ((byte[]) value).clone() : ((Byte[]) value).clone();
+        }
+        if (typeHandler instanceof OptionalTypeHandler) {
+            Function<Object, Object> wrapped = copier(((OptionalTypeHandler) typeHandler).getWrappedHandler());
+            return value -> ((Optional<Object>) value).map(wrapped);
+        }
+        if (typeHandler instanceof ListTypeHandler) {
+            TypeHandler wrappedHandler = ((ListTypeHandler) typeHandler).getWrappedHandler();
+            Function<Object, Object> wrapped = nullSafe(wrappedHandler, copier(wrappedHandler));
+            return value -> {
+                List<Object> list = (List<Object>) value;
+                List<Object> copy = new ArrayList<>(list.size());
+                for (Object o : list) {
+                    copy.add(wrapped.apply(o));
+                }
+                return copy;
+            };
+        }
+        if (typeHandler instanceof MapTypeHandler) {
+            TypeHandler keyHandler = ((MapTypeHandler) typeHandler).getWrappedKeyHandler();
+            TypeHandler valueHandler = ((MapTypeHandler) typeHandler).getWrappedValueHandler();
+            Function<Object, Object> key = nullSafe(keyHandler, copier(keyHandler));
+            Function<Object, Object> wrapped = nullSafe(valueHandler, copier(valueHandler));
+            return value -> {
+                Map<Object, Object> copy = new HashMap<>();
+                for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                    copy.put(key.apply(entry.getKey()), wrapped.apply(entry.getValue()));
+                }
+                return copy;
+            };
+        }
+        if (typeHandler instanceof ObjectTypeHandler && ((ObjectTypeHandler) typeHandler).getLayout() != null) {
+            LayoutCopier<Object> copier = forLayout(((ObjectTypeHandler<Object>) typeHandler).getLayout());
+            return copier::copy;
+        }
+        return value -> roundTrip(typeHandler, value);
+    }
+
+    /**
+     * Values nested in containers are not normalized by {@link Layout#instantiate(Map)},
+     * so <code>null</code>s are passed through serialization instead
+     */
+    private static Function<Object, Object> nullSafe(TypeHandler typeHandler, Function<Object, Object> copier) {
+        return value -> value == null ? roundTrip(typeHandler, null) : copier.apply(value);
+    }
+
+    private static Object roundTrip(TypeHandler typeHandler, Object value) {
+        BinarySerialization serialization = BinarySerialization.getInstance();
+        ByteBuffer buffer = serialization.getSerializer(typeHandler).serialize(typeHandler, value);
+        buffer.rewind();
+        return serialization.getDeserializer(typeHandler).deserialize(typeHandler, buffer);
+    }
+
+}
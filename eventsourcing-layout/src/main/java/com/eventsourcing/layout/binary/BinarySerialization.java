@@ -14,8 +14,8 @@ import com.eventsourcing.layout.types.ObjectTypeHandler;
 import lombok.SneakyThrows;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.eventsourcing.layout.TypeHandler.*;
 
@@ -67,23 +67,36 @@ public class BinarySerialization extends Serialization {
         return BINARY_SERIALIZATION;
     }
 
-    private Map<String, ObjectSerializer> objectSerializers = new HashMap<>();
-    private Map<String, ObjectDeserializer> objectDeserializers = new HashMap<>();
+    // accessed concurrently by command handlers journalling entities
+    private Map<String, ObjectSerializer> objectSerializers = new ConcurrentHashMap<>();
+    private Map<String, ObjectDeserializer> objectDeserializers = new ConcurrentHashMap<>();
 
     @SneakyThrows
     @Override public <T> ObjectSerializer<T> getSerializer(Class<?> klass) {
+        String key = klass.getName();
         @SuppressWarnings("unchecked")
-        ObjectSerializer<T> objectSerializer = objectSerializers
-                .computeIfAbsent(klass.getName(), (k) -> new RootObjectBinarySerializer<T>(new ObjectTypeHandler
-                                                                                                   (klass)));
+        ObjectSerializer<T> objectSerializer = objectSerializers.get(key);
+        if (objectSerializer == null) {
+            objectSerializer = new RootObjectBinarySerializer<T>(new ObjectTypeHandler(klass));
+            ObjectSerializer<T> existing = objectSerializers.putIfAbsent(key, objectSerializer);
+            if (existing != null) {
+                objectSerializer = existing;
+            }
+        }
         return objectSerializer;
     }
 
     @Override public <T> ObjectDeserializer<T> getDeserializer(Class<?> klass, boolean allowReadonly) {
+        String key = klass.getName() + (allowReadonly ? "(r/o)": "");
         @SuppressWarnings("unchecked")
-        ObjectDeserializer<T> objectDeserializer = objectDeserializers
-                .computeIfAbsent(klass.getName() + (allowReadonly ? "(r/o)": ""),
-                                 (k) -> new RootObjectBinaryDeserializer<>(new ObjectTypeHandler(klass)));
+        ObjectDeserializer<T> objectDeserializer = objectDeserializers.get(key);
+        if (objectDeserializer == null) {
+            objectDeserializer = new RootObjectBinaryDeserializer<>(new ObjectTypeHandler(klass));
+            ObjectDeserializer<T> existing = objectDeserializers.putIfAbsent(key, objectDeserializer);
+            if (existing != null) {
+                objectDeserializer = existing;
+            }
+        }
         return objectDeserializer;
     }
 
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.layout;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.Value;
+import lombok.experimental.Accessors;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+import static org.testng.Assert.*;
+
+public class LayoutCopierTest {
+
+    @Value
+    public static class Point {
+        private int x;
+        private int y;
+    }
+
+    @Value
+    public static class Shape {
+        private String name;
+        private List<Point> points;
+        private Date created;
+        private byte[] data;
+        private Optional<Point> origin;
+        private Map<String, Point> labels;
+    }
+
+    @Accessors(fluent = true)
+    public static class Mutable {
+        @Getter @Setter
+        private String name;
+        public Mutable(String name) {
+            this.name = name;
+        }
+    }
+
+    @Immutable
+    public static class Annotated extends Mutable {
+        public Annotated(String name) {
+            super(name);
+        }
+    }
+
+    @Test
+    public void immutable() {
+        assertTrue(LayoutCopier.forClass(Point.class).isImmutable());
+        assertFalse(LayoutCopier.forClass(Shape.class).isImmutable());
+        assertFalse(LayoutCopier.forClass(Mutable.class).isImmutable());
+        assertTrue(LayoutCopier.forClass(Annotated.class).isImmutable());
+    }
+
+    @Test
+    public void sharesImmutable() {
+        Point point = new Point(1, 2);
+        assertSame(LayoutCopier.copyOf(point), point);
+        Annotated annotated = new Annotated("test");
+        assertSame(LayoutCopier.copyOf(annotated), annotated);
+    }
+
+    @Test
+    public void normalizesNulls() {
+        Annotated annotated = new Annotated(null);
+        Annotated copy = LayoutCopier.copyOf(annotated);
+        assertNotSame(copy, annotated);
+        assertEquals(copy.name(), "");
+    }
+
+    @Test
+    public void copies() {
+        Point point = new Point(1, 2);
+        Map<String, Point> labels = new HashMap<>();
+        labels.put("a", point);
+        Shape shape = new Shape("shape", Arrays.asList(point, null), new Date(), new byte[]{1, 2},
+                                Optional.of(point), labels);
+        Shape copy = LayoutCopier.copyOf(shape);
+        assertNotSame(copy, shape);
+        assertEquals(copy.getName(), "shape");
+        assertNotSame(copy.getPoints(), shape.getPoints());
+        assertEquals(copy.getPoints().get(0), point);
+        assertEquals(copy.getPoints().get(1), new Point(0, 0));
+        assertNotSame(copy.getCreated(), shape.getCreated());
+        assertEquals(copy.getCreated(), shape.getCreated());
+        assertNotSame(copy.getData(), shape.getData());
+        assertEquals(copy.getData(), shape.getData());
+        assertEquals(copy.getOrigin(), Optional.of(point));
+        assertNotSame(copy.getLabels(), labels);
+        assertEquals(copy.getLabels(), labels);
+    }
+
+    @Test
+    public void copiesInherited() {
+        LayoutTest.Inheritance inheritance = new LayoutTest.Inheritance("C");
+        inheritance.setA("hello");
+        inheritance.setB(true);
+        LayoutTest.Inheritance copy = LayoutCopier.copyOf(inheritance);
+        assertNotSame(copy, inheritance);
+        assertEquals(copy.getA(), "hello");
+        assertTrue(copy.isB());
+        assertEquals(copy.getC(), "C");
+    }
+
+    @Test
+    public void cachesCopiers() {
+        assertSame(LayoutCopier.forClass(Shape.class), LayoutCopier.forClass(Shape.class));
+        assertSame(LayoutCopier.forLayout(LayoutCopier.forClass(Point.class).getLayout()),
+                   LayoutCopier.forClass(Point.class));
+    }
+
+    @Test
+    public void copiesMutable() {
+        Mutable mutable = new Mutable("test");
+        Mutable copy = LayoutCopier.copyOf(mutable);
+        assertNotSame(copy, mutable);
+        assertEquals(copy.name(), "test");
+    }
+
+}
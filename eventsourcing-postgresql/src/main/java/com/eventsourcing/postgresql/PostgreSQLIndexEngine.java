@@ -33,6 +33,10 @@ public class PostgreSQLIndexEngine extends CQIndexEngine implements IndexEngine
         return "PostgreSQLIndexEngine";
     }
 
+    @Override public boolean isRemote() {
+        return true;
+    }
+
     @Reference
     protected DataSourceProvider dataSourceProvider;
 
@@ -8,12 +8,15 @@
 package com.eventsourcing.postgresql;
 
 import com.eventsourcing.*;
+import com.eventsourcing.events.EventCausalityEstablished;
 import com.eventsourcing.hlc.HybridTimestamp;
 import com.eventsourcing.queries.options.EagerFetching;
 import com.eventsourcing.layout.*;
 import com.eventsourcing.layout.binary.BinarySerialization;
 import com.eventsourcing.queries.options.NotSeenBy;
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.CharStreams;
 import com.google.common.util.concurrent.AbstractService;
@@ -22,6 +25,7 @@ import com.googlecode.cqengine.query.option.QueryOptions;
 import com.impossibl.postgres.jdbc.PGDataSource;
 import com.zaxxer.hikari.HikariConfig;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.Value;
 import org.osgi.service.component.annotations.Component;
@@ -32,17 +36,21 @@ import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Savepoint;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.eventsourcing.postgresql.PostgreSQLSerialization.*;
 
@@ -50,6 +58,16 @@ import static com.eventsourcing.postgresql.PostgreSQLSerialization.*;
 public class PostgreSQLJournal extends AbstractService implements Journal {
 
     public static final int MAX_FETCH_SIZE = 10_000;
+    /**
+     * PostgreSQL's protocol limits the number of bind parameters in a single statement,
+     * multi-row insertions are split into chunks that stay within this limit.
+     */
+    public static final int MAX_PARAMETERS = 32_767;
+    /**
+     * Number of entities {@link #load(Class, Stream)} accumulates before sending them
+     * to the server
+     */
+    public static final int LOAD_BUFFER_SIZE = 10_000;
     @Reference
     protected DataSourceProvider dataSourceProvider;
 
@@ -60,6 +78,48 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
     private Repository repository;
     private EntityLayoutExtractor entityLayoutExtractor = new EntityLayoutExtractor();
 
+    /**
+     * When enabled, entities journalled within a transaction are not inserted right away. Instead,
+     * they are buffered per layout and flushed upon {@link Journal.Transaction#commit()} using
+     * multi-row <code>INSERT</code> statements (one per layout table and one for <code>layouts_v1</code>),
+     * which dramatically reduces the number of round trips for commands producing many events.
+     * <p>
+     * Note that in this mode constraint violations are reported upon commit and not upon journalling.
+     */
+    @Getter @Setter
+    private boolean batching = false;
+
+    /**
+     * When enabled, {@link EventCausalityEstablished} entities are not inserted into their layout table.
+     * Instead, the command's UUID is stored alongside the event's UUID in <code>causality_v1</code>, within
+     * the same transaction (and batch), and is presented as a virtual entity
+     * (see {@link EventCausalityEstablished#virtual(UUID, UUID, HybridTimestamp)}).
+     * This saves a layout table row and a <code>layouts_v1</code> row per event.
+     */
+    @Getter @Setter
+    private boolean compactCausality = false;
+
+    /**
+     * Key of <code>causality_v1</code> rows in <code>seenby_v1</code>
+     */
+    static final byte[] CAUSALITY_KEY = "causality_v1".getBytes();
+
+    /**
+     * Key of the <code>causality_v1</code> row counter in <code>layout_counts_v1</code>
+     * (in the same encoding as layout hashes)
+     */
+    static final String CAUSALITY_COUNT = BaseEncoding.base16().encode(CAUSALITY_KEY);
+
+    /**
+     * Maximum number of entity UUIDs {@link #get(UUID)} remembers the layout of
+     */
+    public static final int LAYOUT_CACHE_SIZE = 100_000;
+    /**
+     * Layouts (encoded hashes) of recently journalled or iterated entities, used to
+     * skip the <code>layouts_v1</code> lookup in {@link #get(UUID)}
+     */
+    private final Cache<UUID, String> layoutHashes = CacheBuilder.newBuilder().maximumSize(LAYOUT_CACHE_SIZE).build();
+
     @Override public void setRepository(Repository repository) {
         this.repository = repository;
         PooledDataSource pooledDataSource = PooledDataSource.getInstance(repository);
@@ -91,17 +151,93 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
     static class Transaction implements Journal.Transaction {
         private final Connection connection;
         private final Savepoint savepoint;
+        private final Transaction parent;
+        private final Map<InsertFunction, List<Object>> batch = new LinkedHashMap<>();
+        // (event, command) pairs to be inserted into causality_v1
+        private final List<UUID[]> causes = new ArrayList<>();
+        // timestamps of journalled events, if compactCausality is enabled
+        private final Map<UUID, HybridTimestamp> timestamps = new HashMap<>();
+        // sorted to acquire row locks in layout_counts_v1 in a consistent order
+        private final Map<String, Long> counts = new TreeMap<>();
 
         @SneakyThrows
         public Transaction(DataSource dataSource) {
             connection = dataSource.getConnection();
             connection.setAutoCommit(false);
             savepoint = connection.setSavepoint();
+            parent = null;
+        }
+
+        @SneakyThrows
+        private Transaction(Transaction parent) {
+            // parent's pending rows have to be written before the savepoint,
+            // otherwise rolling back to it would not discard them but they
+            // would still be inserted later
+            parent.flush();
+            this.parent = parent;
+            connection = parent.connection;
+            savepoint = connection.setSavepoint();
+        }
+
+        void add(InsertFunction insertFunction, Object object) {
+            batch.computeIfAbsent(insertFunction, f -> new ArrayList<>()).add(object);
         }
 
+        void count(String hash) {
+            counts.merge(hash, 1L, Long::sum);
+        }
+
+        HybridTimestamp timestamp(UUID event) {
+            HybridTimestamp timestamp = timestamps.get(event);
+            if (timestamp == null && parent != null) {
+                return parent.timestamp(event);
+            }
+            return timestamp;
+        }
+
+        @SneakyThrows
+        void flush() {
+            insertCauses(connection, causes);
+            causes.clear();
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<UUID> uuids = new ArrayList<>();
+            List<byte[]> hashes = new ArrayList<>();
+            for (Map.Entry<InsertFunction, List<Object>> entry : batch.entrySet()) {
+                List<UUID> inserted = entry.getKey().apply(entry.getValue(), connection);
+                uuids.addAll(inserted);
+                byte[] hash = entry.getKey().getLayout().getHash();
+                inserted.forEach(uuid -> hashes.add(hash));
+            }
+            insertLayouts(connection, uuids, hashes);
+            batch.clear();
+        }
 
         @SneakyThrows
         @Override public void commit() {
+            if (parent != null) {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    rollback();
+                    throw e;
+                }
+                connection.releaseSavepoint(savepoint);
+                counts.forEach((hash, count) -> parent.counts.merge(hash, count, Long::sum));
+                counts.clear();
+                parent.timestamps.putAll(timestamps);
+                timestamps.clear();
+                return;
+            }
+            try {
+                flush();
+                // done last to hold the counter row locks for as short as possible
+                updateCounts(connection, counts);
+            } catch (Exception e) {
+                rollback();
+                throw e;
+            }
             connection.releaseSavepoint(savepoint);
             connection.commit();
             connection.close();
@@ -109,9 +245,19 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
 
         @SneakyThrows
         @Override public void rollback() {
+            batch.clear();
+            causes.clear();
+            timestamps.clear();
+            counts.clear();
             connection.rollback(savepoint);
             connection.releaseSavepoint(savepoint);
-            connection.close();
+            if (parent == null) {
+                connection.close();
+            }
+        }
+
+        @Override public Journal.Transaction beginNested() {
+            return new Transaction(this);
         }
     }
 
@@ -189,63 +335,328 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
     @Override public <S, T> Command<S, T> journal(Journal.Transaction tx, Command<S, T> command) {
         Layout layout = getLayout(command.getClass());
         String encoded = BaseEncoding.base16().encode(layout.getHash());
-        insertFunctions.get(encoded).apply(command, ((Transaction)tx).getConnection());
-        BinarySerialization serialization = BinarySerialization.getInstance();
-        ByteBuffer s = serialization.getSerializer(command.getClass()).serialize(command);
-        s.rewind();
-        Command command1 = (Command) serialization.getDeserializer(command.getClass()).deserialize(s);
+        insert(insertFunctions.get(encoded), (Transaction) tx, command);
+        Command command1 = LayoutCopier.copyOf(command);
         command1.uuid(command.uuid());
         return command1;
     }
 
     @Override public Event journal(Journal.Transaction tx, Event event) {
+        if (compactCausality) {
+            Transaction transaction = (Transaction) tx;
+            if (event instanceof EventCausalityEstablished) {
+                EventCausalityEstablished causality = (EventCausalityEstablished) event;
+                HybridTimestamp timestamp = transaction.timestamp(causality.event());
+                if (timestamp != null) {
+                    UUID[] cause = new UUID[]{causality.event(), causality.command()};
+                    transaction.count(CAUSALITY_COUNT);
+                    if (batching) {
+                        transaction.getCauses().add(cause);
+                    } else {
+                        insertCauses(transaction.getConnection(), Collections.singletonList(cause));
+                    }
+                    return EventCausalityEstablished.virtual(causality.event(), causality.command(), timestamp);
+                }
+            } else {
+                transaction.getTimestamps().put(event.uuid(), event.timestamp());
+            }
+        }
         Layout layout = getLayout(event.getClass());
         String encoded = BaseEncoding.base16().encode(layout.getHash());
-        InsertFunction insert = insertFunctions.get(encoded);
-        insert.apply(event, ((Transaction)tx).getConnection());
-        BinarySerialization serialization = BinarySerialization.getInstance();
-        ByteBuffer s = serialization.getSerializer(event.getClass()).serialize(event);
-        s.rewind();
-        Event event1 = (Event) serialization.getDeserializer(event.getClass()).deserialize(s);
+        insert(insertFunctions.get(encoded), (Transaction) tx, event);
+        Event event1 = LayoutCopier.copyOf(event);
         event1.uuid(event.uuid());
         return event1;
     }
 
+    private void insert(InsertFunction insert, Transaction tx, Entity entity) {
+        layoutHashes.put(entity.uuid(), insert.getEncodedHash());
+        tx.count(insert.getEncodedHash());
+        if (batching) {
+            tx.add(insert, entity);
+        } else {
+            List<UUID> uuids = insert.apply(Collections.singletonList(entity), tx.getConnection());
+            insertLayouts(tx.getConnection(), uuids, Collections.singletonList(insert.getLayout().getHash()));
+        }
+    }
+
+    static final String LAYOUT_COUNTS_TABLE = "CREATE TABLE IF NOT EXISTS layout_counts_v1 (\n" +
+                                              "  layout BYTEA NOT NULL,\n" +
+                                              "  slot   INT NOT NULL DEFAULT 0,\n" +
+                                              "  count  BIGINT NOT NULL,\n" +
+                                              "  PRIMARY KEY (layout, slot)\n" +
+                                              ")";
+
+    /**
+     * Number of counter rows per layout in <code>layout_counts_v1</code>. Every transaction updates
+     * a random one, so that concurrent writers of the same layout rarely wait for each other's row locks.
+     */
+    static final int COUNTER_SLOTS = 16;
+
+    /**
+     * Adds numbers of inserted entities to per-layout counters in <code>layout_counts_v1</code>,
+     * which allows {@link #size(Class)} to avoid counting rows
+     */
+    @SneakyThrows
+    private static void updateCounts(Connection connection, Map<String, Long> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        // the same slot for all layouts keeps the order of row locks consistent between transactions
+        int slot = ThreadLocalRandom.current().nextInt(COUNTER_SLOTS);
+        try (PreparedStatement s = connection.prepareStatement(
+                "INSERT INTO layout_counts_v1 (layout, slot, count) VALUES (?, ?, ?) " +
+                "ON CONFLICT (layout, slot) DO UPDATE SET count = layout_counts_v1.count + EXCLUDED.count")) {
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                s.setBytes(1, BaseEncoding.base16().decode(entry.getKey()));
+                s.setInt(2, slot);
+                s.setLong(3, entry.getValue());
+                s.executeUpdate();
+            }
+        }
+        counts.clear();
+    }
+
+    @SneakyThrows
+    private static void insertLayouts(Connection connection, List<UUID> uuids, List<byte[]> hashes) {
+        int chunkSize = MAX_PARAMETERS / 2;
+        for (int offset = 0; offset < uuids.size(); offset += chunkSize) {
+            int rows = Math.min(chunkSize, uuids.size() - offset);
+            String values = Joiner.on(",").join(Collections.nCopies(rows, "(?::UUID, ?)"));
+            try (PreparedStatement s = connection.prepareStatement("INSERT INTO layouts_v1 VALUES " + values)) {
+                int i = 1;
+                for (int row = offset; row < offset + rows; row++) {
+                    s.setString(i++, uuids.get(row).toString());
+                    s.setBytes(i++, hashes.get(row));
+                }
+                s.executeUpdate();
+            }
+        }
+    }
+
+    @SneakyThrows
+    private static void insertCauses(Connection connection, List<UUID[]> causes) {
+        int chunkSize = MAX_PARAMETERS / 2;
+        for (int offset = 0; offset < causes.size(); offset += chunkSize) {
+            int rows = Math.min(chunkSize, causes.size() - offset);
+            String values = Joiner.on(",").join(Collections.nCopies(rows, "(?::UUID, ?::UUID)"));
+            try (PreparedStatement s = connection
+                    .prepareStatement("INSERT INTO causality_v1 (event, command) VALUES " + values)) {
+                int i = 1;
+                for (int row = offset; row < offset + rows; row++) {
+                    s.setString(i++, causes.get(row)[0].toString());
+                    s.setString(i++, causes.get(row)[1].toString());
+                }
+                s.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Bulk-loads entities of a single layout into the journal, bypassing the command pipeline.
+     * <p>
+     * This is meant for imports, replays and backfills: entities are streamed to the server
+     * in large multi-row insertions within a single transaction. Entities are expected to be
+     * fully prepared (UUIDs and timestamps assigned) and <b>are not indexed</b>, so this should be
+     * used before the repository is started or followed by reindexing.
+     *
+     * @param klass entity class (all entities must be of this exact class)
+     * @param entities entities to load
+     * @param <T> entity type
+     * @return number of entities loaded
+     * @throws IllegalArgumentException if an entity of a different class is encountered
+     */
+    @SneakyThrows
+    public <T extends Entity> long load(Class<T> klass, Stream<? extends T> entities) {
+        Layout layout = getLayout(klass);
+        byte[] hash = layout.getHash();
+        InsertFunction insert = insertFunctions.get(BaseEncoding.base16().encode(hash));
+        long count = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                List<T> buffer = new ArrayList<>(LOAD_BUFFER_SIZE);
+                Iterator<? extends T> iterator = entities.iterator();
+                while (iterator.hasNext()) {
+                    T entity = iterator.next();
+                    if (entity.getClass() != klass) {
+                        throw new IllegalArgumentException(entity.getClass() + " is not " + klass);
+                    }
+                    buffer.add(entity);
+                    if (buffer.size() == LOAD_BUFFER_SIZE || !iterator.hasNext()) {
+                        List<UUID> uuids = insert.apply(buffer, connection);
+                        insertLayouts(connection, uuids, Collections.nCopies(uuids.size(), hash));
+                        count += uuids.size();
+                        buffer.clear();
+                    }
+                }
+                if (count > 0) {
+                    updateCounts(connection, Collections.singletonMap(insert.getEncodedHash(), count));
+                }
+                connection.commit();
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Resolves entities in a single round trip: the layout is looked up in <code>layouts_v1</code>
+     * and the row is fetched from its table by the same statement (see {@link LayoutResolution}),
+     * unless the layout is already known from {@link #layoutHashes}, in which case the layout
+     * table is queried directly.
+     */
     @SneakyThrows
     @Override public <T extends Entity> Optional<T> get(UUID uuid) {
-            Optional<T> result;
+        Optional<T> result = Optional.empty();
         Connection connection = dataSource.getConnection();
         refreshConnectionRegistry(connection);
-        PreparedStatement s = connection
-                .prepareStatement("SELECT layout FROM layouts_v1 WHERE uuid = ?::UUID");
-        s.setString(1, uuid.toString());
-        try (ResultSet resultSet = s.executeQuery()) {
-            if (resultSet.next()) {
-                byte[] bytes = resultSet.getBytes(1);
-                String hash = BaseEncoding.base16().encode(bytes);
-                ReaderFunction reader = readerFunctions.get(hash);
-                Layout<?> layout = getLayout(bytes);
-                String columns = Joiner.on(", ")
-                                       .join(layout.getProperties().stream()
-                                                   .map(p -> "\"" + p.getName() + "\"").collect(Collectors.toList()));
-                String query = "SELECT " + columns + " FROM layout_v1_" + hash + " WHERE uuid = ?::UUID";
-
-                PreparedStatement s1 = connection.prepareStatement(query);
-                s1.setString(1, uuid.toString());
-
-                try (ResultSet rs = s1.executeQuery()) {
-                    rs.next();
-                    Entity o = (Entity) reader.apply(rs);
-                    o.uuid(uuid);
-                    result = Optional.of((T) o);
+        String hash = layoutHashes.getIfPresent(uuid);
+        if (hash != null) {
+            result = select(connection, hash, uuid);
+            if (!result.isPresent()) {
+                // the entity might have not been committed
+                layoutHashes.invalidate(uuid);
+            }
+        } else {
+            LayoutResolution resolution = layoutResolution();
+            PreparedStatement s = connection.prepareStatement(resolution.getSelect());
+            s.setString(1, uuid.toString());
+            try (ResultSet resultSet = s.executeQuery()) {
+                if (resultSet.next()) {
+                    hash = BaseEncoding.base16().encode(resultSet.getBytes(2));
+                    layoutHashes.put(uuid, hash);
+                    Integer column = resolution.getColumns().get(hash);
+                    if (column == null) {
+                        // layout registered after the resolution statement was built
+                        result = select(connection, hash, uuid);
+                    } else if (resultSet.getString(column) != null) {
+                        Entity o = (Entity) readerFunctions.get(hash).apply(resultSet, column + 1);
+                        o.uuid(uuid);
+                        result = Optional.of((T) o);
+                    }
                 }
-                s1.close();
+            }
+            s.close();
+            if (!result.isPresent()) {
+                result = selectVirtual(connection, uuid);
+            }
+        }
+        connection.close();
+        return result;
+    }
+
+    /**
+     * Resolves a virtual {@link EventCausalityEstablished} entity (see {@link #compactCausality})
+     */
+    @SneakyThrows
+    private <T extends Entity> Optional<T> selectVirtual(Connection connection, UUID uuid) {
+        UUID event = EventCausalityEstablished.virtualUuid(uuid);
+        try (PreparedStatement s = connection.prepareStatement("SELECT command FROM causality_v1 WHERE event = ?::UUID")) {
+            s.setString(1, event.toString());
+            try (ResultSet resultSet = s.executeQuery()) {
+                if (resultSet.next()) {
+                    UUID command = UUID.fromString(resultSet.getString(1));
+                    Optional<Entity> cause = get(event);
+                    if (cause.isPresent()) {
+                        return Optional.of((T) EventCausalityEstablished.virtual(event, command,
+                                                                                 cause.get().timestamp()));
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves entities with one query per layout known from {@link #layoutHashes}
+     * (plus one query resolving the rest, see {@link LayoutResolution})
+     */
+    @SneakyThrows
+    @Override @SuppressWarnings("unchecked")
+    public <T extends Entity> Map<UUID, T> getAll(Collection<UUID> uuids) {
+        Map<UUID, T> result = new HashMap<>();
+        if (uuids.isEmpty()) {
+            return result;
+        }
+        Map<String, List<UUID>> uuidsByHash = new HashMap<>();
+        List<UUID> unknown = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            String hash = layoutHashes.getIfPresent(uuid);
+            if (hash == null) {
+                unknown.add(uuid);
             } else {
-                result = Optional.empty();
+                uuidsByHash.computeIfAbsent(hash, h -> new ArrayList<>()).add(uuid);
+            }
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            refreshConnectionRegistry(connection);
+            if (!unknown.isEmpty()) {
+                LayoutResolution resolution = layoutResolution();
+                try (PreparedStatement s = connection.prepareStatement(resolution.getSelectAll())) {
+                    s.setArray(1, uuidArray(connection, unknown));
+                    try (ResultSet resultSet = s.executeQuery()) {
+                        while (resultSet.next()) {
+                            UUID uuid = UUID.fromString(resultSet.getString(1));
+                            String hash = BaseEncoding.base16().encode(resultSet.getBytes(2));
+                            layoutHashes.put(uuid, hash);
+                            Integer column = resolution.getColumns().get(hash);
+                            if (column == null) {
+                                uuidsByHash.computeIfAbsent(hash, h -> new ArrayList<>()).add(uuid);
+                            } else if (resultSet.getString(column) != null) {
+                                Entity o = (Entity) readerFunctions.get(hash).apply(resultSet, column + 1);
+                                o.uuid(uuid);
+                                result.put(uuid, (T) o);
+                            }
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, List<UUID>> entry : uuidsByHash.entrySet()) {
+                ReaderFunction reader = readerFunctions.get(entry.getKey());
+                try (PreparedStatement s = connection
+                        .prepareStatement(layoutStatements.get(entry.getKey()).getSelectAll())) {
+                    s.setArray(1, uuidArray(connection, entry.getValue()));
+                    try (ResultSet rs = s.executeQuery()) {
+                        while (rs.next()) {
+                            Entity o = (Entity) reader.apply(rs);
+                            UUID uuid = UUID.fromString(rs.getString("___uuid___"));
+                            o.uuid(uuid);
+                            result.put(uuid, (T) o);
+                        }
+                    }
+                }
+            }
+            for (UUID uuid : unknown) {
+                if (!result.containsKey(uuid)) {
+                    this.<T>selectVirtual(connection, uuid).ifPresent(entity -> result.put(uuid, entity));
+                }
+            }
+        }
+        return result;
+    }
+
+    @SneakyThrows
+    private static Array uuidArray(Connection connection, Collection<UUID> uuids) {
+        return connection.createArrayOf("text", uuids.stream().map(UUID::toString).toArray());
+    }
+
+    @SneakyThrows
+    private <T extends Entity> Optional<T> select(Connection connection, String hash, UUID uuid) {
+        Optional<T> result = Optional.empty();
+        ReaderFunction reader = readerFunctions.get(hash);
+        PreparedStatement s = connection.prepareStatement(layoutStatements.get(hash).getSelect());
+        s.setString(1, uuid.toString());
+        try (ResultSet rs = s.executeQuery()) {
+            if (rs.next()) {
+                Entity o = (Entity) reader.apply(rs);
+                o.uuid(uuid);
+                result = Optional.of((T) o);
             }
         }
         s.close();
-        connection.close();
         return result;
     }
 
@@ -259,31 +670,47 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
         return entityIterator(klass, queryOptions);
     }
 
-    @SneakyThrows
     private <T extends Entity> CloseableIterator<EntityHandle<T>> entityIterator(Class<T> klass, QueryOptions queryOptions) {
+        CloseableIterator<EntityHandle<T>> iterator = layoutIterator(klass, queryOptions);
+        if (klass == EventCausalityEstablished.class) {
+            return new ConcatenatedIterator<>(iterator, () -> causalityIterator(queryOptions));
+        }
+        return iterator;
+    }
+
+    @SneakyThrows
+    private <T extends Entity> CloseableIterator<EntityHandle<T>> causalityIterator(QueryOptions queryOptions) {
+        Connection connection = dataSource.getConnection();
+        PreparedStatement s = connection.prepareStatement(
+                "SELECT event, ___id___ FROM causality_v1 " +
+                "LEFT JOIN seenby_v1 ON seenby_v1.layout = ? AND seenby_v1.seen_by = ? " +
+                "WHERE ___id___ > COALESCE(seenby_v1.seen, 0)");
+        s.setFetchSize(MAX_FETCH_SIZE);
+        s.setBytes(1, CAUSALITY_KEY);
+        NotSeenBy notSeenBy = queryOptions.get(NotSeenBy.class);
+        s.setBytes(2, notSeenBy == null ? new byte[]{} : notSeenBy.getId());
+        return new CausalityIterator<>(this, s, connection, queryOptions);
+    }
+
+    @SneakyThrows
+    private <T extends Entity> CloseableIterator<EntityHandle<T>> layoutIterator(Class<T> klass, QueryOptions queryOptions) {
         boolean eagerFetching = queryOptions.get(EagerFetching.class) != null;
         Connection connection = dataSource.getConnection();
 
         Layout<?> layout = getLayout(klass);
         String hash = BaseEncoding.base16().encode(layout.getHash());
+        LayoutStatements statements = layoutStatements.get(hash);
 
-        String join = " LEFT JOIN seenby_v1 ON seenby_v1.layout = ? AND seenby_v1.seen_by = ? WHERE " +
-                          "___id___ > COALESCE(seenby_v1.seen, 0)";
         if (!eagerFetching) {
-            PreparedStatement s = connection.prepareStatement("SELECT uuid, ___id___  FROM layout_v1_" + hash + join);
+            PreparedStatement s = connection.prepareStatement(statements.getIterate());
             s.setFetchSize(MAX_FETCH_SIZE);
             s.setBytes(1, layout.getHash());
             NotSeenBy notSeenBy = queryOptions.get(NotSeenBy.class);
             s.setBytes(2, notSeenBy == null ? new byte[]{} : notSeenBy.getId());
-            return new EntityIterator<>(this, s, connection, queryOptions, layout);
+            return new EntityIterator<>(this, s, connection, queryOptions, layout, layoutHashes);
         } else {
             ReaderFunction reader = readerFunctions.get(hash);
-            List<? extends Property<?>> properties = layout.getProperties();
-            String columns = Joiner.on(", ").join(properties.stream()
-                                                        .map(p -> "t.\"" + p.getName() + "\"").collect(Collectors
-                                                                                                              .toList()));
-            String query = "SELECT " + columns + ", uuid AS ___uuid___, ___id___ FROM layout_v1_" + hash + " AS t" + join;
-            PreparedStatement s = connection.prepareStatement(query);
+            PreparedStatement s = connection.prepareStatement(statements.getIterateEagerly());
             s.setFetchSize(MAX_FETCH_SIZE);
             s.setBytes(1, layout.getHash());
             NotSeenBy notSeenBy = queryOptions.get(NotSeenBy.class);
@@ -297,12 +724,12 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
 
         private final byte[] identifier;
         private final Connection connection;
-        private final Layout<?> layout;
+        private final byte[] key;
         private BigInteger lastSeen;
 
-        public SeenByListener(Connection connection, QueryOptions queryOptions, Layout<?> layout) {
+        public SeenByListener(Connection connection, QueryOptions queryOptions, byte[] key) {
             this.connection = connection;
-            this.layout = layout;
+            this.key = key;
             NotSeenBy notSeenBy = queryOptions.get(NotSeenBy.class);
             if (notSeenBy != null) {
                 identifier = notSeenBy.getId();
@@ -327,7 +754,7 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
                 try (PreparedStatement s = connection
                         .prepareStatement("INSERT INTO seenby_v1 (layout, seen_by, seen) VALUES (?, ?, ?) " +
                                           " ON CONFLICT (layout, seen_by) DO UPDATE SET seen = ?")) {
-                    s.setBytes(1, layout.getHash());
+                    s.setBytes(1, key);
                     s.setBytes(2, identifier);
                     s.setBigDecimal(3, new BigDecimal(lastSeen));
                     s.setBigDecimal(4, new BigDecimal(lastSeen));
@@ -340,18 +767,25 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
     static private class EntityIterator<R extends Entity> extends PostgreSQLStatementIterator<EntityHandle<R>> {
 
         private final Journal journal;
+        private final String hash;
+        private final Cache<UUID, String> layoutHashes;
 
         public EntityIterator(Journal journal, PreparedStatement statement,
-                              Connection connection, QueryOptions queryOptions, Layout<?> layout) {
+                              Connection connection, QueryOptions queryOptions, Layout<?> layout,
+                              Cache<UUID, String> layoutHashes) {
             super(statement, connection, true);
-            setListener(new SeenByListener<>(connection, queryOptions, layout));
+            setListener(new SeenByListener<>(connection, queryOptions, layout.getHash()));
             this.journal = journal;
+            this.hash = BaseEncoding.base16().encode(layout.getHash());
+            this.layoutHashes = layoutHashes;
         }
 
         @SneakyThrows
         @Override
         public EntityHandle<R> fetchNext() {
-            return new JournalEntityHandle<>(journal, UUID.fromString(resultSet.getString(1)));
+            UUID uuid = UUID.fromString(resultSet.getString(1));
+            layoutHashes.put(uuid, hash);
+            return new JournalEntityHandle<>(journal, uuid);
         }
     }
 
@@ -364,7 +798,7 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
                                    Connection connection, ReaderFunction reader, QueryOptions queryOptions,
                                    Layout<?> layout) {
             super(statement, connection, true);
-            setListener(new SeenByListener<>(connection, queryOptions, layout));
+            setListener(new SeenByListener<>(connection, queryOptions, layout.getHash()));
             this.journal = journal;
             this.reader = reader;
         }
@@ -378,9 +812,70 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
         }
     }
 
+    /**
+     * Iterates over virtual {@link EventCausalityEstablished} entities stored in <code>causality_v1</code>
+     */
+    static private class CausalityIterator<R extends Entity> extends PostgreSQLStatementIterator<EntityHandle<R>> {
+
+        private final Journal journal;
+
+        public CausalityIterator(Journal journal, PreparedStatement statement, Connection connection,
+                                 QueryOptions queryOptions) {
+            super(statement, connection, true);
+            setListener(new SeenByListener<>(connection, queryOptions, CAUSALITY_KEY));
+            this.journal = journal;
+        }
+
+        @SneakyThrows
+        @Override
+        public EntityHandle<R> fetchNext() {
+            UUID event = UUID.fromString(resultSet.getString(1));
+            return new JournalEntityHandle<>(journal, EventCausalityEstablished.virtualUuid(event));
+        }
+    }
+
+    /**
+     * Iterates over the first iterator and then the second one, which is only opened (and holds
+     * a connection) once the first one is exhausted
+     */
+    static private class ConcatenatedIterator<T> implements CloseableIterator<T> {
+
+        private final CloseableIterator<T> first;
+        private final Supplier<CloseableIterator<T>> secondSupplier;
+        private CloseableIterator<T> second;
+
+        ConcatenatedIterator(CloseableIterator<T> first, Supplier<CloseableIterator<T>> second) {
+            this.first = first;
+            this.secondSupplier = second;
+        }
+
+        private CloseableIterator<T> second() {
+            if (second == null) {
+                second = secondSupplier.get();
+            }
+            return second;
+        }
+
+        @Override public boolean hasNext() {
+            return first.hasNext() || second().hasNext();
+        }
+
+        @Override public T next() {
+            return first.hasNext() ? first.next() : second().next();
+        }
+
+        @Override public void close() {
+            first.close();
+            if (second != null) {
+                second.close();
+            }
+        }
+    }
+
 
     @SneakyThrows
     @Override public void clear() {
+        layoutHashes.invalidateAll();
         Connection connection = dataSource.getConnection();
         layoutsByHash.keySet().forEach(new Consumer<String>() {
             @SneakyThrows
@@ -388,8 +883,21 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
                 PreparedStatement s = connection.prepareStatement("DELETE FROM layout_v1_" + hash);
                 s.execute();
                 s.close();
+                PreparedStatement s1 = connection
+                        .prepareStatement("UPDATE layout_counts_v1 SET count = 0 WHERE layout = ?");
+                s1.setBytes(1, BaseEncoding.base16().decode(hash));
+                s1.execute();
+                s1.close();
             }
         });
+        try (PreparedStatement s = connection.prepareStatement("DELETE FROM causality_v1")) {
+            s.execute();
+        }
+        try (PreparedStatement s = connection
+                .prepareStatement("UPDATE layout_counts_v1 SET count = 0 WHERE layout = ?")) {
+            s.setBytes(1, CAUSALITY_KEY);
+            s.execute();
+        }
         PreparedStatement check = connection
                 .prepareStatement("SELECT * from pg_catalog.pg_tables WHERE tablename = 'layouts' AND schemaname = ?");
         check.setString(1, "eventsourcing");
@@ -407,24 +915,38 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
     @SneakyThrows
     @Override public <T extends Entity> long size(Class<T> klass) {
         Layout layout = getLayout(klass);
-        String hash = BaseEncoding.base16().encode(layout.getHash());
-        Connection connection = dataSource.getConnection();
-        PreparedStatement s = connection
-                .prepareStatement("SELECT count(uuid) FROM layout_v1_" + hash);
-
-        long size;
-        try (ResultSet resultSet = s.executeQuery()) {
-            resultSet.next();
-            size = resultSet.getLong(1);
+        try (Connection connection = dataSource.getConnection()) {
+            // virtual causality entities have their own counter
+            boolean causality = klass == EventCausalityEstablished.class;
+            try (PreparedStatement s = connection
+                    .prepareStatement("SELECT coalesce(sum(count), 0) FROM layout_counts_v1 WHERE layout = ?" +
+                                      (causality ? " OR layout = ?" : ""))) {
+                s.setBytes(1, layout.getHash());
+                if (causality) {
+                    s.setBytes(2, CAUSALITY_KEY);
+                }
+                try (ResultSet resultSet = s.executeQuery()) {
+                    return resultSet.next() ? resultSet.getLong(1) : 0;
+                }
+            }
         }
-
-        s.close();
-        connection.close();
-        return size;
     }
 
+    @SneakyThrows
     @Override public <T extends Entity> boolean isEmpty(Class<T> klass) {
-        return size(klass) == 0;
+        Layout layout = getLayout(klass);
+        String hash = BaseEncoding.base16().encode(layout.getHash());
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement s = connection
+                    .prepareStatement("SELECT EXISTS (SELECT 1 FROM layout_v1_" + hash + ")" +
+                                      (klass == EventCausalityEstablished.class ?
+                                              " OR EXISTS (SELECT 1 FROM causality_v1)" : ""))) {
+                try (ResultSet resultSet = s.executeQuery()) {
+                    resultSet.next();
+                    return !resultSet.getBoolean(1);
+                }
+            }
+        }
     }
 
     @Override protected void doStart() {
@@ -456,6 +978,9 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
             try (PreparedStatement s = connection.prepareStatement(timestampFunction)) {
                 s.executeUpdate();
             }
+            try (PreparedStatement s = connection.prepareStatement(LAYOUT_COUNTS_TABLE)) {
+                s.executeUpdate();
+            }
             try (PreparedStatement s = connection
                     .prepareStatement("CREATE TABLE IF NOT EXISTS seenby_v1 (\n" +
                                               "  layout  BYTEA NOT NULL,\n" +
@@ -465,6 +990,24 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
                                               ")")) {
                 s.executeUpdate();
             }
+            try (PreparedStatement s = connection
+                    .prepareStatement("CREATE TABLE IF NOT EXISTS causality_v1 (\n" +
+                                              "  event    UUID PRIMARY KEY,\n" +
+                                              "  command  UUID NOT NULL,\n" +
+                                              "  ___id___ BIGSERIAL UNIQUE\n" +
+                                              ")")) {
+                s.executeUpdate();
+            }
+            // Seed the counter (for databases that had causality_v1 rows before they were counted)
+            try (PreparedStatement s = connection
+                    .prepareStatement("INSERT INTO layout_counts_v1 (layout, count) SELECT ?, count(event) FROM " +
+                                      "causality_v1 WHERE NOT EXISTS " +
+                                      "(SELECT 1 FROM layout_counts_v1 WHERE layout = ?) " +
+                                      "ON CONFLICT (layout, slot) DO NOTHING")) {
+                s.setBytes(1, CAUSALITY_KEY);
+                s.setBytes(2, CAUSALITY_KEY);
+                s.executeUpdate();
+            }
 
         }
     }
@@ -475,6 +1018,135 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
 
     private Map<String, InsertFunction> insertFunctions = new ConcurrentHashMap<>();
     private Map<String, ReaderFunction> readerFunctions = new ConcurrentHashMap<>();
+    private Map<String, LayoutStatements> layoutStatements = new ConcurrentHashMap<>();
+    private volatile LayoutResolution layoutResolution;
+
+    private LayoutResolution layoutResolution() {
+        LayoutResolution resolution = layoutResolution;
+        if (resolution == null) {
+            resolution = new LayoutResolution(new ArrayList<>(layoutStatements.values()));
+            layoutResolution = resolution;
+        }
+        return resolution;
+    }
+
+    /**
+     * Statements resolving entities of any registered layout by UUID in one round trip: layouts of
+     * the UUIDs are looked up in <code>layouts_v1</code> once, and a <code>UNION ALL</code> branch per
+     * layout, gated on the layout hash, fetches rows of that layout's table by primary key. Only the
+     * tables holding the requested entities are probed.
+     * <p>
+     * Every row starts with <code>uuid</code> and <code>layout</code>, followed by a block of columns
+     * per layout, which are <code>NULL</code> except for the block of the row's layout; {@link #columns}
+     * maps an encoded layout hash to the first column of its block, which is the layout table's
+     * <code>uuid</code>, followed by the layout's properties. The last branch returns UUIDs of layouts
+     * registered after the statements were built, with all blocks empty.
+     * <p>
+     * Rebuilt lazily when a new layout is registered.
+     */
+    @Value
+    private static class LayoutResolution {
+        private final String select;
+        private final String selectAll;
+        private final Map<String, Integer> columns;
+
+        LayoutResolution(List<LayoutStatements> statements) {
+            Map<String, Integer> columns = new HashMap<>();
+            List<String> hashes = new ArrayList<>();
+            // NULLs have to be typed, as UNION ALL resolves column types branch by branch
+            List<List<String>> empty = new ArrayList<>();
+            int column = 3;
+            for (LayoutStatements layoutStatements : statements) {
+                String encoded = BaseEncoding.base16().encode(layoutStatements.getLayout().getHash());
+                columns.put(encoded, column);
+                hashes.add("decode('" + encoded + "', 'hex')");
+                List<String> block = new ArrayList<>();
+                block.add("NULL::UUID");
+                layoutStatements.getColumnTypes().forEach(type -> block.add("NULL::" + type));
+                empty.add(block);
+                column += block.size();
+            }
+            List<String> branches = new ArrayList<>();
+            for (int i = 0; i < statements.size(); i++) {
+                Layout<?> layout = statements.get(i).getLayout();
+                List<String> selected = new ArrayList<>(Arrays.asList("l.uuid", "l.layout"));
+                for (int j = 0; j < statements.size(); j++) {
+                    if (i == j) {
+                        selected.add("t.uuid");
+                        for (Property<?> property : layout.getProperties()) {
+                            selected.add("t.\"" + property.getName() + "\"");
+                        }
+                    } else {
+                        selected.addAll(empty.get(j));
+                    }
+                }
+                branches.add("SELECT " + Joiner.on(", ").join(selected) + " FROM l JOIN layout_v1_" +
+                             BaseEncoding.base16().encode(layout.getHash()) + " AS t ON t.uuid = l.uuid" +
+                             " WHERE l.layout = " + hashes.get(i));
+            }
+            List<String> selected = new ArrayList<>(Arrays.asList("l.uuid", "l.layout"));
+            empty.forEach(selected::addAll);
+            branches.add("SELECT " + Joiner.on(", ").join(selected) + " FROM l" +
+                         (hashes.isEmpty() ? "" : " WHERE l.layout NOT IN (" + Joiner.on(", ").join(hashes) + ")"));
+            String union = Joiner.on(" UNION ALL ").join(branches);
+            select = "WITH l AS (SELECT uuid, layout FROM layouts_v1 WHERE uuid = ?::UUID) " + union;
+            selectAll = "WITH l AS (SELECT uuid, layout FROM layouts_v1 WHERE uuid = ANY(?::UUID[])) " + union;
+            this.columns = Collections.unmodifiableMap(columns);
+        }
+    }
+
+    /**
+     * SQL statements for a specific layout, computed once when the layout is registered.
+     * <p>
+     * Besides avoiding string building on every call, stable statement text allows pgjdbc-ng to
+     * reuse server-side prepared statements on every pooled connection (see
+     * {@link PGDataSource#setPreparedStatementCacheSize(int)}, which should be large enough
+     * to accommodate a handful of statements per layout).
+     */
+    @Value
+    private static class LayoutStatements {
+        private final Layout<?> layout;
+        // SQL types of the layout's properties
+        private final List<String> columnTypes;
+        private final String select;
+        private final String selectAll;
+        private final String iterate;
+        private final String iterateEagerly;
+        private final String insert;
+        private final String insertRow;
+
+        LayoutStatements(Layout<?> layout, List<String> columnTypes) {
+            this.layout = layout;
+            this.columnTypes = columnTypes;
+            String table = "layout_v1_" + BaseEncoding.base16().encode(layout.getHash());
+            List<? extends Property<?>> properties = layout.getProperties();
+
+            String columns = Joiner.on(", ").join(properties.stream()
+                                                            .map(p -> "\"" + p.getName() + "\"")
+                                                            .collect(Collectors.toList()));
+            select = "SELECT " + columns + " FROM " + table + " WHERE uuid = ?::UUID";
+            selectAll = "SELECT " + columns + ", uuid AS ___uuid___ FROM " + table + " WHERE uuid = ANY(?::UUID[])";
+
+            String join = " LEFT JOIN seenby_v1 ON seenby_v1.layout = ? AND seenby_v1.seen_by = ? WHERE " +
+                          "___id___ > COALESCE(seenby_v1.seen, 0)";
+            iterate = "SELECT uuid, ___id___  FROM " + table + join;
+            String prefixedColumns = Joiner.on(", ").join(properties.stream()
+                                                                    .map(p -> "t.\"" + p.getName() + "\"")
+                                                                    .collect(Collectors.toList()));
+            iterateEagerly = "SELECT " + prefixedColumns + ", uuid AS ___uuid___, ___id___ FROM " + table + " AS t" +
+                             join;
+
+            String parameters = Joiner.on(",").join(properties.stream()
+                                                              .map(p -> getParameter(p.getTypeHandler()))
+                                                              .collect(Collectors.toList()));
+            insertRow = "(?::UUID," + parameters + ")";
+            insert = "INSERT INTO " + table + " VALUES ";
+        }
+
+        String getInsert(int rows) {
+            return insert + Joiner.on(",").join(Collections.nCopies(rows, insertRow));
+        }
+    }
 
     private class ReaderFunction implements Function<ResultSet, Object> {
 
@@ -484,9 +1156,16 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
             this.layout = layout;
         }
 
-        @SneakyThrows
         @Override public Object apply(ResultSet resultSet) {
-            AtomicInteger i = new AtomicInteger(1);
+            return apply(resultSet, 1);
+        }
+
+        /**
+         * Reads layout's properties starting at the given column
+         */
+        @SneakyThrows
+        public Object apply(ResultSet resultSet, int column) {
+            AtomicInteger i = new AtomicInteger(column);
             List<? extends Property<?>> properties = layout.getProperties();
             Map<Property<?>, Object> props = new HashMap<>();
             for (Property property : properties) {
@@ -499,50 +1178,52 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
 
     }
 
-    private class InsertFunction implements BiFunction<Object, Connection, UUID> {
+    private class InsertFunction implements BiFunction<List<?>, Connection, List<UUID>> {
+        @Getter
         private final Layout<?> layout;
-        private final String table;
+        private final LayoutStatements statements;
+        @Getter
+        private final String encodedHash;
+        private final String singleRowInsert;
         private final List<? extends Property> properties;
 
-        public InsertFunction(Layout<?> layout) {
+        public InsertFunction(Layout<?> layout, LayoutStatements statements) {
             this.layout = layout;
-            table = "layout_v1_" +  BaseEncoding.base16().encode(layout.getHash());
+            encodedHash = BaseEncoding.base16().encode(layout.getHash());
+            this.statements = statements;
+            singleRowInsert = statements.getInsert(1);
             properties = layout.getProperties();
         }
 
+        /**
+         * Inserts objects into the layout table, using as few multi-row <code>INSERT</code>
+         * statements as possible.
+         *
+         * @return UUIDs of inserted objects, in the same order as objects
+         */
         @SneakyThrows
-        @Override public UUID apply(Object object, Connection connection) {
-            String parameters = Joiner.on(",")
-                               .join(properties.stream()
-                                               .map(p -> getParameter(connection, p.getTypeHandler(), p.get(object)))
-                                               .collect(Collectors.toList()));
-
-            PreparedStatement s = connection
-                    .prepareStatement("INSERT INTO " + table + " VALUES (?::UUID," + parameters + ")");
-            int i = 1;
-            UUID uuid;
-            if (object instanceof Entity) {
-                uuid = ((Entity) object).uuid();
-            } else {
-                uuid = UUID.randomUUID();
-            }
-            s.setString(i, uuid.toString());
-            i++;
-            for (Property property : layout.getProperties()) {
-                Object value = property.get(object);
-                i = setValue(connection, s, i, value, property.getTypeHandler());
+        @Override public List<UUID> apply(List<?> objects, Connection connection) {
+            List<UUID> uuids = new ArrayList<>(objects.size());
+            int chunkSize = Math.max(1, MAX_PARAMETERS / (properties.size() + 1));
+            for (int offset = 0; offset < objects.size(); offset += chunkSize) {
+                List<?> chunk = objects.subList(offset, Math.min(objects.size(), offset + chunkSize));
+                String sql = chunk.size() == 1 ? singleRowInsert : statements.getInsert(chunk.size());
+                try (PreparedStatement s = connection.prepareStatement(sql)) {
+                    int i = 1;
+                    for (Object object : chunk) {
+                        UUID uuid = object instanceof Entity ? ((Entity) object).uuid() : UUID.randomUUID();
+                        uuids.add(uuid);
+                        s.setString(i, uuid.toString());
+                        i++;
+                        for (Property property : properties) {
+                            Object value = property.get(object);
+                            i = setValue(connection, s, i, value, property.getTypeHandler());
+                        }
+                    }
+                    s.execute();
+                }
             }
-            s.execute();
-
-            PreparedStatement layoutsInsertion = connection.prepareStatement("INSERT INTO layouts_v1 " +
-                                                                                     "VALUES (?::UUID, " +
-                                                                                     "?)");
-            layoutsInsertion.setString(1, uuid.toString());
-            layoutsInsertion.setBytes(2, layout.getHash());
-            layoutsInsertion.executeUpdate();
-
-            s.close();
-            return uuid;
+            return uuids;
         }
 
 
@@ -573,9 +1254,18 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
             String encoded = BaseEncoding.base16().encode(fingerprint);
             if (!layoutsByHash.containsKey(encoded)) {
                 layoutsByHash.put(encoded, layout);
+                List<String> columnTypes;
                 try (Connection connection = dataSource.getConnection()) {
 
-                    String columns = defineColumns(connection, layout);
+                    columnTypes = layout.getProperties().stream()
+                                        .map(p -> PostgreSQLSerialization.getMappedType(connection,
+                                                                                        p.getTypeHandler()))
+                                        .collect(Collectors.toList());
+                    List<String> definitions = new ArrayList<>();
+                    for (int i = 0; i < columnTypes.size(); i++) {
+                        definitions.add("\"" + layout.getProperties().get(i).getName() + "\" " + columnTypes.get(i));
+                    }
+                    String columns = Joiner.on(",\n").join(definitions);
 
                     String createTable = "CREATE TABLE IF NOT EXISTS layout_v1_" + encoded + " (" + "uuid UUID PRIMARY KEY," + columns + ")";
 
@@ -597,13 +1287,29 @@ public class PostgreSQLJournal extends AbstractService implements Journal {
                         s.execute();
                     }
 
+                    // Seed the counter (this will only count rows once, for tables that existed
+                    // before layout_counts_v1 was introduced)
+                    String seedCount = "INSERT INTO layout_counts_v1 (layout, count) SELECT ?, count(uuid) FROM " +
+                                       "layout_v1_" + encoded + " WHERE NOT EXISTS " +
+                                       "(SELECT 1 FROM layout_counts_v1 WHERE layout = ?) " +
+                                       "ON CONFLICT (layout, slot) DO NOTHING";
+                    try (PreparedStatement s = connection.prepareStatement(seedCount)) {
+                        s.setBytes(1, fingerprint);
+                        s.setBytes(2, fingerprint);
+                        s.execute();
+                    }
+
                 }
 
-                InsertFunction insertFunction = new InsertFunction(layout);
+                LayoutStatements statements = new LayoutStatements(layout, columnTypes);
+                layoutStatements.put(encoded, statements);
+
+                InsertFunction insertFunction = new InsertFunction(layout, statements);
                 insertFunctions.put(encoded, insertFunction);
 
                 ReaderFunction readerFunction = new ReaderFunction(layout);
                 readerFunctions.put(encoded, readerFunction);
+                layoutResolution = null;
             }
         }
 
@@ -666,6 +666,24 @@ public class PostgreSQLSerialization {
         }
     }
 
+    /**
+     * Returns a parameter placeholder that is suitable for any value handled by
+     * <code>typeHandler</code>, which makes it possible to prepare statements
+     * ahead of time.
+     *
+     * @param typeHandler
+     * @return parameter placeholder
+     */
+    public static String getParameter(TypeHandler typeHandler) {
+        if (typeHandler instanceof UUIDTypeHandler) {
+            return "?::UUID";
+        } else if (typeHandler instanceof OptionalTypeHandler) {
+            return getParameter(((OptionalTypeHandler) typeHandler).getWrappedHandler());
+        } else {
+            return "?";
+        }
+    }
+
 
     private static class ObjectArrayCollector implements Function<Map<String,Object>, Object> {
         private final Layout objectLayout;
@@ -375,6 +375,61 @@ public class PostgreSQLJournalTest extends JournalTest<PostgreSQLJournal> {
         assertEquals(serializationResult(TestClass.builder().date(date).build()).date(), date);
     }
 
+    @Test @SneakyThrows
+    public void loading() {
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+
+        List<TestEvent> events = new ArrayList<>();
+        for (int i = 0; i < PostgreSQLJournal.LOAD_BUFFER_SIZE + 1; i++) {
+            events.add(TestEvent.builder().timestamp(timestamp.clone()).build());
+        }
+
+        assertEquals(journal.load(TestEvent.class, events.stream()), events.size());
+        assertEquals(journal.size(TestEvent.class), events.size());
+        assertTrue(journal.get(events.get(0).uuid()).isPresent());
+        assertTrue(journal.get(events.get(events.size() - 1).uuid()).isPresent());
+    }
+
+    @Test @SneakyThrows
+    public void retrievingRolledBack() {
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+
+        Journal.Transaction tx = journal.beginTransaction();
+        TestEvent event = TestEvent.builder().timestamp(timestamp).build();
+        journal.journal(tx, event);
+        tx.rollback();
+
+        assertFalse(journal.get(event.uuid()).isPresent());
+    }
+
+    @Test @SneakyThrows
+    public void counting() {
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+
+        assertTrue(journal.isEmpty(TestEvent.class));
+
+        Journal.Transaction tx = journal.beginTransaction();
+        journal.journal(tx, TestEvent.builder().timestamp(timestamp.clone()).build());
+        tx.rollback();
+
+        assertEquals(journal.size(TestEvent.class), 0);
+        assertTrue(journal.isEmpty(TestEvent.class));
+
+        tx = journal.beginTransaction();
+        journal.journal(tx, TestEvent.builder().timestamp(timestamp.clone()).build());
+        journal.journal(tx, TestEvent.builder().timestamp(timestamp.clone()).build());
+        tx.commit();
+
+        assertEquals(journal.size(TestEvent.class), 2);
+        assertFalse(journal.isEmpty(TestEvent.class));
+
+        journal.clear();
+        assertEquals(journal.size(TestEvent.class), 0);
+    }
+
     @SneakyThrows
     private TestClass serializationResult(TestClass t) {
         HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
@@ -10,6 +10,9 @@ package com.eventsourcing.repository;
 import com.eventsourcing.Entity;
 import com.eventsourcing.EntitySubscriber;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * {@link EntitySubscriber} that subscribes to all entities that are inherited from
  * a certain class.
@@ -23,6 +26,10 @@ public class ClassEntitySubscriber<T extends Entity> implements EntitySubscriber
         this.klass = klass;
     }
 
+    @Override public Set<Class<? extends Entity>> getEntityClasses() {
+        return Collections.singleton(klass);
+    }
+
     @Override public boolean matches(T entity) {
         return klass.isAssignableFrom(entity.getClass());
     }
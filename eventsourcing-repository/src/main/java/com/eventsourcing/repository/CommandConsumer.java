@@ -11,16 +11,108 @@ import com.eventsourcing.Command;
 import com.eventsourcing.EntitySubscriber;
 import com.eventsourcing.hlc.HybridTimestamp;
 import com.google.common.util.concurrent.Service;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
 
 public interface CommandConsumer extends Service {
     default <T, S, C extends Command<S, T>> CompletableFuture<T> publish(C command) {
-        return publish(command, Collections.emptyList());
+        return publish(command, SubscriberRegistry.EMPTY);
     }
-    <T, S, C extends Command<S, T>> CompletableFuture<T> publish(C command, Collection<EntitySubscriber> subscribers);
+    default <T, S, C extends Command<S, T>> CompletableFuture<T> publish(C command,
+                                                                         Collection<EntitySubscriber> subscribers) {
+        return publish(command, SubscriberRegistry.of(subscribers));
+    }
+    <T, S, C extends Command<S, T>> CompletableFuture<T> publish(C command, SubscriberRegistry subscribers);
 
     HybridTimestamp getTimestamp();
+
+    /**
+     * @return number of published commands waiting for the executor
+     */
+    int getQueuedCommands();
+
+    /**
+     * @return number of published commands that haven't completed yet
+     */
+    int getInFlightCommands();
+
+    /**
+     * @return number of commands rejected by admission control
+     */
+    long getRejectedCommands();
+
+    /**
+     * @return number of entity subscriber deliveries queued but not yet made
+     */
+    int getSubscriberLag();
+
+    /**
+     * @return number of entity subscriber deliveries dropped because of a full queue
+     */
+    long getDroppedSubscriberDeliveries();
+
+    /**
+     * Admission control policy, applied when the number of commands in flight
+     * has reached the limit
+     */
+    enum AdmissionPolicy {
+        /**
+         * Block the publisher until a command completes
+         */
+        BLOCK,
+        /**
+         * Reject the command (the returned future fails with {@link CommandRejected})
+         */
+        FAIL,
+        /**
+         * Reject the command if its class is sheddable, block the publisher otherwise
+         */
+        SHED
+    }
+
+    /**
+     * Entity subscriber delivery mode
+     */
+    enum SubscriberDelivery {
+        /**
+         * Deliver on the command thread before completing the command
+         */
+        SYNCHRONOUS,
+        /**
+         * Deliver on a dispatch thread, one delivery at a time per subscriber, in commit order
+         */
+        ORDERED,
+        /**
+         * Deliver on dispatch threads, possibly concurrently and out of order
+         */
+        UNORDERED
+    }
+
+    /**
+     * Policy applied when a subscriber's delivery queue is full
+     */
+    enum SubscriberOverflow {
+        /**
+         * Block the command thread until there's room in the queue. The group commit
+         * thread is never blocked, deliveries it makes are dropped instead.
+         */
+        BLOCK,
+        /**
+         * Drop the delivery
+         */
+        DROP
+    }
+
+    @AllArgsConstructor class CommandRejected extends RuntimeException {
+        @Getter
+        private Command<?, ?> command;
+
+        @Override
+        public String getMessage() {
+            return "Too many commands in flight, rejected " + command;
+        }
+    }
 }
@@ -12,35 +12,97 @@ import com.eventsourcing.cep.events.DescriptionChanged;
 import com.eventsourcing.events.CommandTerminatedExceptionally;
 import com.eventsourcing.events.EventCausalityEstablished;
 import com.eventsourcing.events.JavaExceptionOccurred;
+import com.eventsourcing.hlc.AtomicHybridTimestamp;
 import com.eventsourcing.hlc.HybridTimestamp;
 import com.eventsourcing.hlc.PhysicalTimeProvider;
 import com.eventsourcing.index.IndexEngine;
 import com.google.common.util.concurrent.AbstractService;
-import com.googlecode.cqengine.ConcurrentIndexedCollection;
 import com.googlecode.cqengine.IndexedCollection;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 @Slf4j
 class CommandConsumerImpl extends AbstractService implements CommandConsumer {
 
+    /**
+     * Executor to run commands on
+     */
+    @Setter
     private Executor threadPool = Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors());
 
+    private final AtomicInteger queuedCommands = new AtomicInteger();
+    private final AtomicInteger inFlightCommands = new AtomicInteger();
+    private final AtomicLong rejectedCommands = new AtomicLong();
+
+    /**
+     * Maximum number of commands in flight, unlimited if 0 or less (default)
+     */
+    @Getter @Setter
+    private int maximumInFlightCommands = 0;
+
+    @Getter @Setter
+    private AdmissionPolicy admissionPolicy = AdmissionPolicy.BLOCK;
+
+    /**
+     * Command classes rejected first under {@link AdmissionPolicy#SHED}
+     */
+    @Getter @Setter
+    private Set<Class<? extends Command>> sheddableCommands = Collections.emptySet();
+
+    private Semaphore admission;
+
     private final Repository repository;
     private final Journal journal;
     private final IndexEngine indexEngine;
     private final LockProvider lockProvider;
 
-    @Getter
-    private HybridTimestamp timestamp;
+    private final AtomicHybridTimestamp timestamp;
+    private final TimestampHighWaterMark highWaterMark;
+
+    /**
+     * Maximum number of commands committed in one journal transaction. Group commit
+     * is disabled if it is 1 or less (default)
+     */
+    @Getter @Setter
+    private int groupCommitSize = 1;
+
+    /**
+     * Maximum time (in milliseconds) to wait for more commands to arrive
+     * before committing a group
+     */
+    @Getter @Setter
+    private long groupCommitDelay = 1;
+
+    private GroupCommitter committer;
+
+    @Getter @Setter
+    private SubscriberDelivery subscriberDelivery = SubscriberDelivery.SYNCHRONOUS;
+
+    @Getter @Setter
+    private SubscriberOverflow subscriberOverflow = SubscriberOverflow.BLOCK;
 
+    /**
+     * Maximum number of pending deliveries per entity subscriber
+     */
+    @Getter @Setter
+    private int subscriberQueueSize = SubscriberDispatcher.DEFAULT_QUEUE_SIZE;
+
+    private SubscriberDispatcher dispatcher;
 
     @SneakyThrows
     public CommandConsumerImpl(Iterable<Class<? extends Command>> commandClasses,
@@ -52,11 +114,65 @@ class CommandConsumerImpl extends AbstractService implements CommandConsumer {
         this.indexEngine = indexEngine;
         this.lockProvider = lockProvider;
         Optional<HybridTimestamp> repositoryTimestamp = journal.getProperties().getRepositoryTimestamp();
+        HybridTimestamp initialTimestamp;
         if (repositoryTimestamp.isPresent()) {
-            this.timestamp = new HybridTimestamp(timeProvider, repositoryTimestamp.get());
+            initialTimestamp = new HybridTimestamp(timeProvider, repositoryTimestamp.get());
         } else {
-            this.timestamp = new HybridTimestamp(timeProvider);
-            timestamp.update();
+            initialTimestamp = new HybridTimestamp(timeProvider);
+            initialTimestamp.update();
+        }
+        this.timestamp = new AtomicHybridTimestamp(initialTimestamp);
+        this.highWaterMark = new TimestampHighWaterMark(journal, repositoryTimestamp.orElse(null),
+                                                        TimestampHighWaterMark.DEFAULT_MARGIN,
+                                                        runnable -> threadPool.execute(runnable));
+    }
+
+    @Override public HybridTimestamp getTimestamp() {
+        return timestamp.get();
+    }
+
+    @Override public int getQueuedCommands() {
+        return queuedCommands.get();
+    }
+
+    @Override public int getInFlightCommands() {
+        return inFlightCommands.get();
+    }
+
+    @Override public long getRejectedCommands() {
+        return rejectedCommands.get();
+    }
+
+    @Override public int getSubscriberLag() {
+        return dispatcher == null ? 0 : dispatcher.getLag();
+    }
+
+    @Override public long getDroppedSubscriberDeliveries() {
+        return dispatcher == null ? 0 : dispatcher.getDropped();
+    }
+
+    private boolean admit(Command<?, ?> command) {
+        if (admission == null) {
+            return true;
+        }
+        switch (admissionPolicy) {
+            case FAIL:
+                return admission.tryAcquire();
+            case SHED:
+                if (sheddableCommands.stream().anyMatch(klass -> klass.isInstance(command))) {
+                    return admission.tryAcquire();
+                }
+                // fall through
+            default:
+                admission.acquireUninterruptibly();
+                return true;
+        }
+    }
+
+    private void commandFinished() {
+        inFlightCommands.decrementAndGet();
+        if (admission != null) {
+            admission.release();
         }
     }
 
@@ -80,64 +196,117 @@ class CommandConsumerImpl extends AbstractService implements CommandConsumer {
     }
 
     private void onEvent(Event event,
-                         Map<Class<? extends Event>, IndexedCollection<EntityHandle<Event>>> txCollections,
+                         Map<Class<? extends Event>, List<EntityHandle<Event>>> txCollections,
                          Map<EntitySubscriber, Set<UUID>> subscriptions,
-                         Collection<EntitySubscriber> subscribers
+                         SubscriberRegistry subscribers
                          ) {
-        IndexedCollection<EntityHandle<Event>> coll = txCollections
-                .computeIfAbsent(event.getClass(), klass -> new ConcurrentIndexedCollection<>());
+        List<EntityHandle<Event>> coll = txCollections
+                .computeIfAbsent(event.getClass(), klass -> new ArrayList<>());
         coll.add(new ResolvedEntityHandle<>(event));
-        subscribers.stream()
-                      .filter(s -> s.matches(repository, event))
-                      .forEach(s -> subscriptions.get(s).add(event.uuid()));
+        for (EntitySubscriber subscriber : subscribers.candidates(event.getClass())) {
+            if (subscriber.matches(repository, event)) {
+                subscriptions.get(subscriber).add(event.uuid());
+            }
+        }
     }
 
 
     @Override
-    public <T, S, C extends Command<S, T>> CompletableFuture<T> publish(C command, Collection<EntitySubscriber>
-            subscribers) {
+    public <T, S, C extends Command<S, T>> CompletableFuture<T> publish(C command, SubscriberRegistry subscribers) {
+        if (!admit(command)) {
+            rejectedCommands.incrementAndGet();
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new CommandRejected(command));
+            return rejected;
+        }
+
         Map<EntitySubscriber, Set<UUID>> subscriptions = new HashMap<>();
-        subscribers.forEach(s -> subscriptions.put(s, new HashSet<>()));
+        subscribers.getSubscribers().forEach(s -> subscriptions.put(s, new HashSet<>()));
 
-        Map<Class<? extends Event>, IndexedCollection<EntityHandle<Event>>> txCollections = new HashMap<>();
+        Map<Class<? extends Event>, List<EntityHandle<Event>>> txCollections = new HashMap<>();
 
         CompletableFuture<T> future = new CompletableFuture<>();
-        HybridTimestamp txTimestamp;
-        synchronized (timestamp) {
-            timestamp(command, timestamp);
-            txTimestamp = timestamp.clone();
+        HybridTimestamp txTimestamp = timestamp.update();
+        if (command.timestamp() == null) {
+            command.timestamp(txTimestamp.clone());
         }
         final HybridTimestamp commandTimestamp = txTimestamp.clone();
-        threadPool.execute(
-                new CommandHandler<>(commandTimestamp, command, txCollections, subscriptions, subscribers,
-                                     future,
-                                     txTimestamp));
+        inFlightCommands.incrementAndGet();
+        queuedCommands.incrementAndGet();
+        try {
+            CommandHandler<S, T, C> handler = new CommandHandler<>(commandTimestamp, command, txCollections,
+                                                                   subscriptions, subscribers, future, txTimestamp);
+            execute(command, handler);
+        } catch (RejectedExecutionException e) {
+            queuedCommands.decrementAndGet();
+            commandFinished();
+            throw e;
+        }
 
         return future;
     }
 
+    /**
+     * Executes a command-related task, on the command's lane if the thread pool is sharded
+     */
+    private void execute(Command<?, ?> command, Runnable runnable) {
+        if (command instanceof RoutedCommand && threadPool instanceof ShardedCommandExecutor) {
+            ((ShardedCommandExecutor) threadPool).execute(((RoutedCommand) command).routingKey(), runnable);
+        } else {
+            threadPool.execute(runnable);
+        }
+    }
+
     @Override @SuppressWarnings("unchecked")
     protected void doStart() {
+        if (maximumInFlightCommands > 0) {
+            admission = new Semaphore(maximumInFlightCommands);
+        }
+        if (groupCommitSize > 1) {
+            committer = new GroupCommitter();
+            Thread thread = new Thread(committer, "eventsourcing-group-commit");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        if (subscriberDelivery != SubscriberDelivery.SYNCHRONOUS) {
+            dispatcher = new SubscriberDispatcher(subscriberDelivery, subscriberOverflow, subscriberQueueSize);
+        }
         notifyStarted();
     }
 
     @Override
     protected void doStop() {
+        if (committer != null) {
+            committer.stop();
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
         notifyStopped();
     }
 
     private class CommandHandler<S, T, C extends Command<S, T>> implements Runnable {
         private final HybridTimestamp commandTimestamp;
         private final C command;
-        private final Map<Class<? extends Event>, IndexedCollection<EntityHandle<Event>>> txCollections;
+        private final Map<Class<? extends Event>, List<EntityHandle<Event>>> txCollections;
         private final Map<EntitySubscriber, Set<UUID>> subscriptions;
-        private final Collection<EntitySubscriber> subscribers;
+        private final SubscriberRegistry subscribers;
         private final CompletableFuture<T> future;
         private final HybridTimestamp txTimestamp;
 
+        // state used by group commit
+        private TrackingLockProvider lockProvider;
+        private EventStream<S> eventStream;
+        private Exception exception;
+        private HybridTimestamp startingTxTimestamp;
+        private HybridTimestamp lastTimestamp;
+        private List<Event> events;
+        private Command<S, T> journaledCommand;
+        private boolean finished;
+
         public CommandHandler(HybridTimestamp commandTimestamp, C command,
-                              Map<Class<? extends Event>, IndexedCollection<EntityHandle<Event>>> txCollections,
-                              Map<EntitySubscriber, Set<UUID>> subscriptions, Collection<EntitySubscriber> subscribers,
+                              Map<Class<? extends Event>, List<EntityHandle<Event>>> txCollections,
+                              Map<EntitySubscriber, Set<UUID>> subscriptions, SubscriberRegistry subscribers,
                               CompletableFuture<T> future, HybridTimestamp txTimestamp) {
             this.commandTimestamp = commandTimestamp;
             this.command = command;
@@ -149,6 +318,13 @@ class CommandConsumerImpl extends AbstractService implements CommandConsumer {
         }
 
         @Override public void run() {
+            queuedCommands.decrementAndGet();
+            if (committer != null) {
+                prepare();
+                committer.submit(this);
+                return;
+            }
+
             HybridTimestamp ts = commandTimestamp.clone();
             HybridTimestamp startingTxTimestamp = ts.clone();
 
@@ -200,43 +376,350 @@ class CommandConsumerImpl extends AbstractService implements CommandConsumer {
                 pending = false;
 
                 Command<S, T> command_ = journal.journal(tx, command);
+                highWaterMark.ensure(ts);
                 tx.commit();
 
-                for (Map.Entry<Class<? extends Event>, IndexedCollection<EntityHandle<Event>>> pair :
-                        txCollections.entrySet()) {
-                    IndexedCollection<EntityHandle<Event>> value = pair.getValue();
-                    indexEngine.getIndexedCollection((Class<Event>) pair.getKey()).addAll(value);
+                committed(command_);
+
+                timestamp.update(txTimestamp);
+
+                complete(eventStream, exception, lockProvider);
+            }
+
+        }
+
+        /**
+         * Indexes committed entities and notifies subscribers
+         */
+        private void committed(Command<S, T> command_) {
+            for (Map.Entry<Class<? extends Event>, List<EntityHandle<Event>>> pair :
+                    txCollections.entrySet()) {
+                List<EntityHandle<Event>> value = pair.getValue();
+                indexEngine.getIndexedCollection((Class<Event>) pair.getKey()).addAll(value);
+            }
+            IndexedCollection<EntityHandle<Command<S, T>>> coll = indexEngine
+                    .getIndexedCollection((Class<Command<S, T>>) command_.getClass());
+            EntityHandle<Command<?, ?>> commandHandle = new JournalEntityHandle<>(journal, command_.uuid());
+            coll.add(new ResolvedEntityHandle<>(command_));
+            // empty deliveries are only made synchronously, for compatibility
+            subscriptions.entrySet().stream()
+                         .filter(entry -> dispatcher == null || !entry.getValue().isEmpty())
+                         .forEach(entry -> deliver(entry.getKey(),
+                                                   () -> entry.getKey()
+                                                              .accept(repository, entry.getValue()
+                                                                      .stream()
+                                                                      .map(uuid -> new JournalEntityHandle<>(journal,
+                                                                                                             uuid)))));
+            for (EntitySubscriber subscriber : subscribers.candidates(command_.getClass())) {
+                if (subscriber.matches(repository, command_)) {
+                    deliver(subscriber, () -> subscriber.accept(repository, Stream.of(commandHandle)));
+                }
+            }
+        }
+
+        /**
+         * Delivers entities to a subscriber, either right away or through the dispatcher
+         */
+        private void deliver(EntitySubscriber subscriber, Runnable delivery) {
+            if (dispatcher == null) {
+                delivery.run();
+            } else {
+                // the group committer must not wait for slow subscribers
+                dispatcher.dispatch(subscriber, delivery, committer == null || !committer.isCurrentThread());
+            }
+        }
+
+        private void complete(EventStream<S> eventStream, Exception exception, TrackingLockProvider lockProvider) {
+            if (exception == null) {
+                T result = command.result(eventStream.getState(), repository, lockProvider);
+                lockProvider.release();
+                commandFinished();
+                future.complete(result);
+            } else {
+                lockProvider.release();
+                commandFinished();
+                future.completeExceptionally(exception);
+            }
+        }
+
+        /**
+         * Generates and timestamps command's events ahead of journalling
+         * (group commit)
+         */
+        private void prepare() {
+            lockProvider = new TrackingLockProvider(CommandConsumerImpl.this.lockProvider);
+            lockProvider.startAsync().awaitRunning();
+            startingTxTimestamp = commandTimestamp.clone();
+
+            try {
+                eventStream = command.events(repository, lockProvider);
+            } catch (Exception e) {
+                eventStream = CommandConsumerImpl.this.exceptionalTerminationStream(e);
+                exception = e;
+            }
+
+            timestampEvents();
+        }
+
+        /**
+         * Timestamps events of the current event stream and establishes their causality
+         * (group commit)
+         */
+        private void timestampEvents() {
+            while (true) {
+                HybridTimestamp ts = startingTxTimestamp.clone();
+                List<Event> events = new ArrayList<>();
+                try {
+                    Iterator<? extends Event> iterator = eventStream.getStream().iterator();
+                    while (iterator.hasNext()) {
+                        Event event = iterator.next();
+                        CommandConsumerImpl.this.timestamp(event, ts);
+                        EventCausalityEstablished causalityEstablished = EventCausalityEstablished.builder()
+                                                                                                  .event(event.uuid())
+                                                                                                  .command(
+                                                                                                          command.uuid())
+                                                                                                  .build();
+                        CommandConsumerImpl.this.timestamp(causalityEstablished, ts);
+                        events.add(event);
+                        events.add(causalityEstablished);
+                    }
+                } catch (Exception e) {
+                    eventStream = CommandConsumerImpl.this.exceptionalTerminationStream(e);
+                    exception = e;
+                    continue;
                 }
-                IndexedCollection<EntityHandle<Command<S, T>>> coll = indexEngine
-                        .getIndexedCollection((Class<Command<S, T>>) command_.getClass());
-                EntityHandle<Command<?, ?>> commandHandle = new JournalEntityHandle<>(journal, command_.uuid());
-                coll.add(new ResolvedEntityHandle<>(command_));
-                subscriptions.entrySet().stream()
-                             .forEach(entry -> entry.getKey()
-                                                    .accept(repository, entry.getValue()
-                                                                 .stream()
-                                                                 .map(uuid -> new JournalEntityHandle<>(journal,
-                                                                                                        uuid))));
-                subscribers.stream()
-                           .filter(s -> s.matches(repository, command_))
-                           .forEach(s -> s.accept(repository, Stream.of(commandHandle)));
-
-                synchronized (timestamp) {
-                    timestamp.update(txTimestamp);
-                    journal.getProperties().setRepositoryTimestamp(timestamp);
+                this.events = events;
+                this.lastTimestamp = ts;
+                return;
+            }
+        }
+
+        /**
+         * Journals prepared events and the command within a transaction (group commit)
+         */
+        private void journal(Journal.Transaction tx) {
+            for (Event event : events) {
+                Event journaled = journal.journal(tx, event);
+                CommandConsumerImpl.this.onEvent(journaled, txCollections, subscriptions, subscribers);
+            }
+            journaledCommand = journal.journal(tx, command);
+        }
+
+        /**
+         * Discards the results of {@link #journal(Journal.Transaction)}
+         */
+        private void reset() {
+            txCollections.clear();
+            subscriptions.values().forEach(Set::clear);
+            journaledCommand = null;
+        }
+
+        /**
+         * Replaces command's events with an exceptional termination stream,
+         * after a failure to journal them (group commit)
+         */
+        private void fail(Exception e) {
+            reset();
+            exception = e;
+            eventStream = CommandConsumerImpl.this.exceptionalTerminationStream(e);
+            timestampEvents();
+        }
+
+        private void abort(Exception e) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            reset();
+            lockProvider.release();
+            commandFinished();
+            future.completeExceptionally(e);
+        }
+
+        /**
+         * Indexes, delivers and completes the command after its group has been committed
+         */
+        private void completeCommitted() {
+            try {
+                committed(journaledCommand);
+            } catch (Exception e) {
+                log.error("Failed to index or deliver committed command {}", command, e);
+                lockProvider.release();
+                commandFinished();
+                future.completeExceptionally(e);
+                return;
+            }
+            complete(eventStream, exception, lockProvider);
+        }
+    }
+
+    /**
+     * Collects prepared commands and journals them in shared transactions,
+     * committing up to {@link #groupCommitSize} commands at once. Every command
+     * is journalled in a nested transaction so that a failure to journal one
+     * doesn't affect the rest of the group.
+     */
+    private class GroupCommitter implements Runnable {
+        private final BlockingQueue<CommandHandler<?, ?, ?>> queue = new LinkedBlockingQueue<>();
+        private volatile boolean running = true;
+        private volatile boolean terminated = false;
+        private volatile Thread thread;
+
+        void submit(CommandHandler<?, ?, ?> handler) {
+            queue.add(handler);
+            if (terminated && queue.remove(handler)) {
+                handler.abort(new IllegalStateException("Group committer has terminated"));
+            }
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        boolean isCurrentThread() {
+            return Thread.currentThread() == thread;
+        }
+
+        @Override public void run() {
+            thread = Thread.currentThread();
+            while (running || !queue.isEmpty()) {
+                List<CommandHandler<?, ?, ?>> group = new ArrayList<>();
+                try {
+                    CommandHandler<?, ?, ?> handler = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (handler == null) {
+                        continue;
+                    }
+                    group.add(handler);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(groupCommitDelay);
+                    while (group.size() < groupCommitSize) {
+                        long remaining = deadline - System.nanoTime();
+                        handler = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (handler == null) {
+                            break;
+                        }
+                        group.add(handler);
+                    }
+                    commit(group);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    terminated = true;
+                    abort(group, e);
+                    List<CommandHandler<?, ?, ?>> remaining = new ArrayList<>();
+                    queue.drainTo(remaining);
+                    abort(remaining, e);
+                    return;
+                } catch (Exception e) {
+                    log.error("Group commit failed", e);
+                    abort(group, e);
                 }
+            }
+        }
 
+        /**
+         * Fails commands that haven't been completed yet, releasing their locks and admission permits
+         */
+        private void abort(List<CommandHandler<?, ?, ?>> group, Exception e) {
+            for (CommandHandler<?, ?, ?> handler : group) {
+                try {
+                    handler.abort(e);
+                } catch (Exception abortFailure) {
+                    log.error("Failed to abort command {}", handler.command, abortFailure);
+                }
+            }
+        }
+
+        private void commit(List<CommandHandler<?, ?, ?>> group) {
+            List<CommandHandler<?, ?, ?>> committed = new ArrayList<>();
+            Journal.Transaction tx = journal.beginTransaction();
+            try {
+                for (CommandHandler<?, ?, ?> handler : group) {
+                    Exception e = commit(tx.beginNested(), handler);
+                    if (e != null) {
+                        handler.fail(e);
+                        e = commit(tx.beginNested(), handler);
+                        if (e != null) {
+                            handler.abort(e);
+                            continue;
+                        }
+                    }
+                    committed.add(handler);
+                }
+            } catch (UnsupportedOperationException e) {
+                // journal doesn't support nested transactions, there's no way
+                // to isolate failures within a shared transaction
+                tx.rollback();
+                commitIndividually(group);
+                return;
+            }
+
+            try {
+                tx.commit();
+            } catch (Exception e) {
+                log.warn("Group commit of {} commands failed, committing them individually", committed.size(), e);
+                committed.forEach(CommandHandler::reset);
+                commitIndividually(committed);
+                return;
+            }
+            completed(committed);
+        }
 
-                if (exception == null) {
-                    T result = command.result(eventStream.getState(), repository, lockProvider);
-                    lockProvider.release();
-                    future.complete(result);
-                } else {
-                    lockProvider.release();
-                    future.completeExceptionally(exception);
+        private void commitIndividually(List<CommandHandler<?, ?, ?>> group) {
+            List<CommandHandler<?, ?, ?>> committed = new ArrayList<>();
+            for (CommandHandler<?, ?, ?> handler : group) {
+                Exception e = commit(journal.beginTransaction(), handler);
+                if (e != null) {
+                    handler.fail(e);
+                    e = commit(journal.beginTransaction(), handler);
+                    if (e != null) {
+                        handler.abort(e);
+                        continue;
+                    }
                 }
+                committed.add(handler);
             }
+            completed(committed);
+        }
 
+        /**
+         * Journals and commits a command in a transaction, rolling it back on failure
+         *
+         * @return failure or <code>null</code>
+         */
+        private Exception commit(Journal.Transaction tx, CommandHandler<?, ?, ?> handler) {
+            try {
+                handler.journal(tx);
+                highWaterMark.ensure(handler.lastTimestamp);
+            } catch (Exception e) {
+                handler.reset();
+                tx.rollback();
+                return e;
+            }
+            try {
+                tx.commit();
+            } catch (Exception e) {
+                // failed commit is rolled back by the journal
+                handler.reset();
+                return e;
+            }
+            return null;
+        }
+
+        private void completed(List<CommandHandler<?, ?, ?>> group) {
+            if (group.isEmpty()) {
+                return;
+            }
+            group.forEach(handler -> timestamp.update(handler.txTimestamp));
+            // indexing, subscriber delivery and command results can take arbitrarily long
+            // (or publish more commands and wait for them), so they are handed off to the
+            // command executor instead of holding up the next group
+            for (CommandHandler<?, ?, ?> handler : group) {
+                handler.finished = true;
+                try {
+                    execute(handler.command, handler::completeCommitted);
+                } catch (RejectedExecutionException e) {
+                    handler.completeCommitted();
+                }
+            }
         }
     }
 }
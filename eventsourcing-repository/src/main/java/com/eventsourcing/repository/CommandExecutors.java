@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+/**
+ * Executors suitable for running commands (see {@link StandardRepository#setCommandExecutor(Executor)}).
+ *
+ * Command execution mostly blocks on the journal, locks and index queries, so
+ * a small fixed-size pool gets saturated with blocked threads long before
+ * the CPUs are busy.
+ */
+public final class CommandExecutors {
+
+    /**
+     * Default size limit of {@link #elastic()}
+     */
+    public static final int DEFAULT_MAXIMUM_THREADS = 256;
+
+    private CommandExecutors() {}
+
+    /**
+     * Runs every command on its own virtual thread, if the JVM supports them
+     * (Java 21 and newer), otherwise falls back to {@link #elastic()}
+     *
+     * @return executor
+     */
+    public static ExecutorService virtualThreads() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return elastic();
+        }
+    }
+
+    /**
+     * @return {@link #elastic(int)} with {@link #DEFAULT_MAXIMUM_THREADS} threads at most
+     */
+    public static ExecutorService elastic() {
+        return elastic(DEFAULT_MAXIMUM_THREADS);
+    }
+
+    /**
+     * Bounded elastic thread pool: starts threads as commands arrive, up to
+     * <code>maximumThreads</code>, queueing commands beyond that, and stops threads
+     * that have been idle for a minute.
+     *
+     * @param maximumThreads maximum number of threads
+     * @return executor
+     */
+    public static ExecutorService elastic(int maximumThreads) {
+        return elastic(maximumThreads, "eventsourcing-command-%d");
+    }
+
+    static ExecutorService elastic(int maximumThreads, String nameFormat) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maximumThreads, maximumThreads,
+                                                             60, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>(),
+                                                             new ThreadFactoryBuilder()
+                                                                     .setNameFormat(nameFormat)
+                                                                     .setDaemon(true)
+                                                                     .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
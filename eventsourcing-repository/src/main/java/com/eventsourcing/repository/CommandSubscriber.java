@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.eventsourcing.Command;
+import com.eventsourcing.Repository;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes commands received from a reactive source into a repository,
+ * signalling demand for no more than <code>window</code> commands in flight.
+ *
+ * Follows the <code>java.util.concurrent.Flow.Subscriber</code> protocol (which is not
+ * available on Java 8), so adapting it to Flow or Reactive Streams is a matter of delegating
+ * <code>onSubscribe</code>, <code>onNext</code>, <code>onError</code> and <code>onComplete</code>.
+ *
+ * Override {@link #onResult(Command, Object, Throwable)} to receive commands' results.
+ */
+public class CommandSubscriber {
+
+    /**
+     * Mirrors <code>java.util.concurrent.Flow.Subscription</code>
+     */
+    public interface Subscription {
+        void request(long n);
+        void cancel();
+    }
+
+    private final Repository repository;
+    private final long window;
+
+    private Subscription subscription;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    /**
+     * Completes after the source has completed and all published commands have
+     * completed, or exceptionally if the source has failed
+     */
+    @Getter
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    public CommandSubscriber(Repository repository, long window) {
+        this.repository = repository;
+        this.window = window;
+    }
+
+    public void onSubscribe(Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(window);
+    }
+
+    public void onNext(Command<?, ?> command) {
+        inFlight.incrementAndGet();
+        CompletableFuture<?> future;
+        try {
+            future = repository.publish((Command) command);
+        } catch (Exception e) {
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            future = failed;
+        }
+        future.whenComplete((result, throwable) -> {
+            onResult(command, result, throwable);
+            if (inFlight.decrementAndGet() == 0 && done.get()) {
+                completion.complete(null);
+            }
+            if (!done.get()) {
+                subscription.request(1);
+            }
+        });
+    }
+
+    public void onError(Throwable throwable) {
+        done.set(true);
+        completion.completeExceptionally(throwable);
+    }
+
+    public void onComplete() {
+        done.set(true);
+        if (inFlight.get() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    /**
+     * Cancels the subscription, no more commands will be requested
+     */
+    public void cancel() {
+        done.set(true);
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        if (inFlight.get() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    /**
+     * Called when a published command completes
+     *
+     * @param command   command
+     * @param result    command's result (<code>null</code> if it has failed)
+     * @param throwable failure (<code>null</code> if it has succeeded)
+     */
+    protected void onResult(Command<?, ?> command, Object result, Throwable throwable) {
+    }
+}
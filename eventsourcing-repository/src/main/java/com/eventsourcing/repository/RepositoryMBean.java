@@ -13,4 +13,18 @@ public interface RepositoryMBean {
     String[] getInstalledCommands();
 
     String[] getInstalledEvents();
+
+    int getQueuedCommands();
+
+    int getInFlightCommands();
+
+    long getRejectedCommands();
+
+    int getSubscriberLag();
+
+    long getDroppedSubscriberDeliveries();
+
+    int getPendingIndexConfigurations();
+
+    int getCompletedIndexConfigurations();
 }
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.eventsourcing.RoutedCommand;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Command executor (see {@link StandardRepository#setCommandExecutor(Executor)}) that runs
+ * every {@link RoutedCommand} on a single-threaded lane chosen by its routing key, so that
+ * commands with equal routing keys are executed one at a time, in the order they were
+ * published, while commands with different routing keys run in parallel. Other commands
+ * are run on a separate executor.
+ * <p>
+ * A command must not wait for the completion of another command with the same routing key
+ * (or any other command routed to the same lane), as that would block the lane forever.
+ * <p>
+ * With group commit enabled, only the generation of events is serialized: commands
+ * are committed in the order of publication, but a command might not see the effects
+ * of the previous one with the same routing key.
+ */
+public class ShardedCommandExecutor implements Executor {
+
+    private final ExecutorService[] lanes;
+    private final Executor executor;
+
+    /**
+     * @param lanes    number of lanes
+     * @param executor executor for commands without a routing key
+     */
+    public ShardedCommandExecutor(int lanes, Executor executor) {
+        this.executor = executor;
+        this.lanes = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                                                                      .setNameFormat("eventsourcing-lane-" + i)
+                                                                      .setDaemon(true)
+                                                                      .build());
+        }
+    }
+
+    /**
+     * Creates an executor with a lane per available processor, running commands
+     * without a routing key on a work-stealing pool
+     */
+    public ShardedCommandExecutor() {
+        this(Runtime.getRuntime().availableProcessors(),
+             Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Override public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * Executes a task on the lane of the routing key
+     *
+     * @param routingKey routing key
+     * @param command    task
+     */
+    public void execute(Object routingKey, Runnable command) {
+        lanes[lane(routingKey)].execute(command);
+    }
+
+    int lane(Object routingKey) {
+        int h = routingKey.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), lanes.length);
+    }
+
+    /**
+     * Stops the lanes once they have executed the commands submitted so far
+     */
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
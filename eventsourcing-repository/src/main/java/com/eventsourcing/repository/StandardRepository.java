@@ -34,6 +34,12 @@ import org.osgi.service.component.annotations.*;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -77,10 +83,62 @@ public class StandardRepository extends AbstractService implements Repository, R
     @Getter
     private LockProvider lockProvider;
 
+    /**
+     * Maximum number of commands to be committed in one journal transaction.
+     * Group commit is disabled if it is 1 or less (default).
+     */
+    @Getter
+    private int groupCommitSize = 1;
+    /**
+     * Maximum time (in milliseconds) to wait for more commands to be
+     * included into a group commit
+     */
+    @Getter
+    private long groupCommitDelay = 1;
+
+    /**
+     * Executor to run commands on, if set. Otherwise, a work-stealing pool
+     * sized to the number of available processors is used.
+     */
+    @Getter
+    private Executor commandExecutor;
+
+    /**
+     * Maximum number of commands in flight, unlimited if 0 or less (default)
+     */
+    @Getter
+    private int maximumInFlightCommands = 0;
+    @Getter
+    private CommandConsumer.AdmissionPolicy admissionPolicy = CommandConsumer.AdmissionPolicy.BLOCK;
+    @Getter
+    private Set<Class<? extends Command>> sheddableCommands = Collections.emptySet();
+
+    /**
+     * Entity subscriber delivery mode, {@link CommandConsumer.SubscriberDelivery#SYNCHRONOUS} by default
+     */
+    @Getter
+    private CommandConsumer.SubscriberDelivery subscriberDelivery = CommandConsumer.SubscriberDelivery.SYNCHRONOUS;
+    @Getter
+    private CommandConsumer.SubscriberOverflow subscriberOverflow = CommandConsumer.SubscriberOverflow.BLOCK;
+    /**
+     * Maximum number of pending deliveries per entity subscriber
+     */
+    @Getter
+    private int subscriberQueueSize = SubscriberDispatcher.DEFAULT_QUEUE_SIZE;
+
+    /**
+     * Number of entity classes to configure indices for in parallel,
+     * number of available processors by default
+     */
+    @Getter
+    private int indexingParallelism = Runtime.getRuntime().availableProcessors();
+    private final AtomicInteger pendingIndexConfigurations = new AtomicInteger();
+    private final AtomicInteger completedIndexConfigurations = new AtomicInteger();
+
     private ServiceManager services;
     private CommandConsumer commandConsumer;
 
-    private List<EntitySubscriber> entitySubscribers = new ArrayList<>();
+    private volatile SubscriberRegistry entitySubscribers = SubscriberRegistry.EMPTY;
 
     @Activate
     protected void activate(ComponentContext ctx) {
@@ -89,7 +147,8 @@ public class StandardRepository extends AbstractService implements Repository, R
         }
     }
 
-    private List<Runnable> initialization = new ArrayList<>();
+    // entity classes to configure indices for on start
+    private Set<Class<? extends Entity>> initialization = new LinkedHashSet<>();
 
     @Override @SuppressWarnings("unchecked")
     protected void doStart() {
@@ -127,11 +186,23 @@ public class StandardRepository extends AbstractService implements Repository, R
                 filter(s -> !s.isRunning()).collect(Collectors.toSet()));
         services.startAsync().awaitHealthy();
 
-        initialization.forEach(Runnable::run);
+        configureIndices(initialization);
         initialization.clear();
 
-        commandConsumer = new CommandConsumerImpl(commands, physicalTimeProvider, this, journal, indexEngine,
-                                                  lockProvider);
+        CommandConsumerImpl commandConsumer = new CommandConsumerImpl(commands, physicalTimeProvider, this, journal,
+                                                                      indexEngine, lockProvider);
+        commandConsumer.setGroupCommitSize(groupCommitSize);
+        commandConsumer.setGroupCommitDelay(groupCommitDelay);
+        if (commandExecutor != null) {
+            commandConsumer.setThreadPool(commandExecutor);
+        }
+        commandConsumer.setMaximumInFlightCommands(maximumInFlightCommands);
+        commandConsumer.setAdmissionPolicy(admissionPolicy);
+        commandConsumer.setSheddableCommands(sheddableCommands);
+        commandConsumer.setSubscriberDelivery(subscriberDelivery);
+        commandConsumer.setSubscriberOverflow(subscriberOverflow);
+        commandConsumer.setSubscriberQueueSize(subscriberQueueSize);
+        this.commandConsumer = commandConsumer;
         commandConsumer.startAsync().awaitRunning();
 
         journal.onCommandsAdded(commands);
@@ -142,31 +213,87 @@ public class StandardRepository extends AbstractService implements Repository, R
         notifyStarted();
     }
 
-    private Set<String> indicesConfiguredFor = new HashSet<>();
+    private Set<String> indicesConfiguredFor = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
+    /**
+     * Configures indices for entity classes, building indices of {@link #indexingParallelism} classes at a time.
+     * <p>
+     * Index loaders set up shared static index fields and index engines are not required to create indices
+     * concurrently, so indices are loaded serially and only built in parallel.
+     */
     @SneakyThrows
-    private boolean configureIndices(Class<? extends Entity> klass) {
+    private void configureIndices(Collection<Class<? extends Entity>> classes) {
+        pendingIndexConfigurations.addAndGet(classes.size());
+        IndexEngine.IndexNotSupported failure = null;
+        Map<Class<? extends Entity>, List<Index>> loadedIndices = new LinkedHashMap<>();
+        for (Class<? extends Entity> klass : classes) {
+            try {
+                loadedIndices.put(klass, loadIndices(klass));
+            } catch (IndexEngine.IndexNotSupported e) {
+                pendingIndexConfigurations.decrementAndGet();
+                completedIndexConfigurations.incrementAndGet();
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(indexingParallelism);
         try {
-            if (!indicesConfiguredFor.contains(klass.getName())) {
-                for (IndexLoader loader : indexLoaders) {
-                    Iterable<Index> indices = loader.load(indexEngine, klass);
-                    for (Index i : indices) {
-                        IndexedCollection<? extends EntityHandle<? extends Entity>> collection =
-                                indexEngine.getIndexedCollection(klass);
-                        boolean hasIndex = StreamSupport.stream(collection.getIndexes().spliterator(), false)
-                                                        .anyMatch(index -> index.equals(i));
-                        if (!hasIndex) {
-                            collection.addIndex(i);
-                        }
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Map.Entry<Class<? extends Entity>, List<Index>> entry : loadedIndices.entrySet()) {
+                tasks.add(pool.submit(() -> {
+                    try {
+                        addIndices(entry.getKey(), entry.getValue());
+                        return null;
+                    } finally {
+                        pendingIndexConfigurations.decrementAndGet();
+                        completedIndexConfigurations.incrementAndGet();
                     }
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
+            }
+            if (failure != null) {
+                notifyFailed(failure);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return indices of the class that haven't been added yet or <code>null</code> if they are already configured
+     */
+    private List<Index> loadIndices(Class<? extends Entity> klass) throws IndexEngine.IndexNotSupported {
+        if (indicesConfiguredFor.contains(klass.getName())) {
+            return null;
+        }
+        IndexedCollection<? extends EntityHandle<? extends Entity>> collection =
+                indexEngine.getIndexedCollection(klass);
+        List<Index> newIndices = new ArrayList<>();
+        for (IndexLoader loader : indexLoaders) {
+            Iterable<Index> indices = loader.load(indexEngine, klass);
+            for (Index i : indices) {
+                boolean hasIndex = StreamSupport.stream(collection.getIndexes().spliterator(), false)
+                                                .anyMatch(index -> index.equals(i));
+                if (!hasIndex && !newIndices.contains(i)) {
+                    newIndices.add(i);
                 }
-                indicesConfiguredFor.add(klass.getName());
             }
-        } catch (IndexEngine.IndexNotSupported e) {
-            notifyFailed(e);
-            return true;
         }
-        return false;
+        return newIndices;
+    }
+
+    private void addIndices(Class<? extends Entity> klass, List<Index> newIndices) {
+        if (newIndices != null) {
+            indexEngine.addIndices((Class<Entity>) klass, (List) newIndices);
+            indicesConfiguredFor.add(klass.getName());
+        }
     }
 
     @Override
@@ -202,19 +329,14 @@ public class StandardRepository extends AbstractService implements Repository, R
     @Override
     public void addCommandSetProvider(CommandSetProvider provider) {
         final Set<Class<? extends Command>> newCommands = provider.getCommands();
-        Runnable runnable = () -> {
-            for (Class<? extends Entity> klass : newCommands) {
-                if (configureIndices(klass)) return;
-            }
-        };
         this.commands.addAll(newCommands);
         if (isRunning()) {
             // apply immediately
-            runnable.run();
+            configureIndices(new ArrayList<>(newCommands));
             journal.onCommandsAdded(newCommands);
             publish(new IntroduceEntityLayouts(Iterables.concat(newCommands))).join();
         } else {
-            initialization.add(runnable);
+            initialization.addAll(newCommands);
         }
     }
 
@@ -226,32 +348,27 @@ public class StandardRepository extends AbstractService implements Repository, R
 
     @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
     @Override
-    public void addEntitySubscriber(EntitySubscriber subscriber) {
-        entitySubscribers.add(subscriber);
+    public synchronized void addEntitySubscriber(EntitySubscriber subscriber) {
+        entitySubscribers = entitySubscribers.add(subscriber);
     }
 
     @Override
-    public void removeEntitySubscriber(EntitySubscriber subscriber) {
-        entitySubscribers.remove(subscriber);
+    public synchronized void removeEntitySubscriber(EntitySubscriber subscriber) {
+        entitySubscribers = entitySubscribers.remove(subscriber);
     }
 
     @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
     @Override
     public void addEventSetProvider(EventSetProvider provider) {
         final Set<Class<? extends Event>> newEvents = provider.getEvents();
-        Runnable runnable = () -> {
-            for (Class<? extends Entity> klass : newEvents) {
-                if (configureIndices(klass)) return;
-            }
-        };
         this.events.addAll(newEvents);
         if (isRunning()) {
             // apply immediately
-            runnable.run();
+            configureIndices(new ArrayList<>(newEvents));
             journal.onEventsAdded(newEvents);;
             publish(new IntroduceEntityLayouts(Iterables.concat(newEvents))).join();
         } else {
-            initialization.add(runnable);
+            initialization.addAll(newEvents);
         }
     }
 
@@ -292,6 +409,112 @@ public class StandardRepository extends AbstractService implements Repository, R
         this.lockProvider = lockProvider;
     }
 
+    /**
+     * Sets the executor to run commands on (see {@link CommandExecutors})
+     *
+     * @param commandExecutor executor
+     * @throws IllegalStateException if the repository is already running
+     */
+    public void setCommandExecutor(Executor commandExecutor) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.commandExecutor = commandExecutor;
+    }
+
+    public void setMaximumInFlightCommands(int maximumInFlightCommands) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.maximumInFlightCommands = maximumInFlightCommands;
+    }
+
+    /**
+     * Sets the policy applied to published commands once {@link #getMaximumInFlightCommands()}
+     * commands are in flight
+     *
+     * @param admissionPolicy admission policy
+     * @throws IllegalStateException if the repository is already running
+     */
+    public void setAdmissionPolicy(CommandConsumer.AdmissionPolicy admissionPolicy) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.admissionPolicy = admissionPolicy;
+    }
+
+    /**
+     * Sets command classes (including their subclasses) to be rejected under
+     * {@link CommandConsumer.AdmissionPolicy#SHED}
+     *
+     * @param sheddableCommands command classes
+     * @throws IllegalStateException if the repository is already running
+     */
+    public void setSheddableCommands(Set<Class<? extends Command>> sheddableCommands) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.sheddableCommands = sheddableCommands;
+    }
+
+    /**
+     * Sets entity subscriber delivery mode. Unless it is
+     * {@link CommandConsumer.SubscriberDelivery#SYNCHRONOUS}, commands complete
+     * as soon as they are committed and subscribers are notified on dispatch threads.
+     *
+     * @param subscriberDelivery delivery mode
+     * @throws IllegalStateException if the repository is already running
+     */
+    public void setSubscriberDelivery(CommandConsumer.SubscriberDelivery subscriberDelivery)
+            throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.subscriberDelivery = subscriberDelivery;
+    }
+
+    /**
+     * Sets the policy applied when an entity subscriber's delivery queue is full
+     *
+     * @param subscriberOverflow overflow policy
+     * @throws IllegalStateException if the repository is already running
+     */
+    public void setSubscriberOverflow(CommandConsumer.SubscriberOverflow subscriberOverflow)
+            throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.subscriberOverflow = subscriberOverflow;
+    }
+
+    public void setSubscriberQueueSize(int subscriberQueueSize) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.subscriberQueueSize = subscriberQueueSize;
+    }
+
+    public void setIndexingParallelism(int indexingParallelism) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.indexingParallelism = indexingParallelism;
+    }
+
+    public void setGroupCommitSize(int groupCommitSize) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.groupCommitSize = groupCommitSize;
+    }
+
+    public void setGroupCommitDelay(long groupCommitDelay) throws IllegalStateException {
+        if (isRunning()) {
+            throw new IllegalStateException();
+        }
+        this.groupCommitDelay = groupCommitDelay;
+    }
+
     @Override
     public <T extends Command<S, C>, S, C> CompletableFuture<C> publish(T command) {
         return this.commandConsumer.publish(command, entitySubscribers);
@@ -311,4 +534,39 @@ public class StandardRepository extends AbstractService implements Repository, R
     public String[] getInstalledEvents() {
         return events.stream().map(Class::getName).toArray(String[]::new);
     }
+
+    @Override
+    public int getQueuedCommands() {
+        return commandConsumer == null ? 0 : commandConsumer.getQueuedCommands();
+    }
+
+    @Override
+    public int getInFlightCommands() {
+        return commandConsumer == null ? 0 : commandConsumer.getInFlightCommands();
+    }
+
+    @Override
+    public long getRejectedCommands() {
+        return commandConsumer == null ? 0 : commandConsumer.getRejectedCommands();
+    }
+
+    @Override
+    public int getSubscriberLag() {
+        return commandConsumer == null ? 0 : commandConsumer.getSubscriberLag();
+    }
+
+    @Override
+    public long getDroppedSubscriberDeliveries() {
+        return commandConsumer == null ? 0 : commandConsumer.getDroppedSubscriberDeliveries();
+    }
+
+    @Override
+    public int getPendingIndexConfigurations() {
+        return pendingIndexConfigurations.get();
+    }
+
+    @Override
+    public int getCompletedIndexConfigurations() {
+        return completedIndexConfigurations.get();
+    }
 }
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.eventsourcing.EntitySubscriber;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers committed entities to {@link EntitySubscriber}s on dedicated dispatch
+ * threads, so that slow subscribers don't hold up commands.
+ *
+ * Every subscriber gets a bounded queue of pending deliveries. With
+ * {@link CommandConsumer.SubscriberDelivery#ORDERED} deliveries are made one
+ * at a time, in commit order; with {@link CommandConsumer.SubscriberDelivery#UNORDERED}
+ * they may run concurrently.
+ */
+@Slf4j
+class SubscriberDispatcher {
+
+    /**
+     * Default maximum number of pending deliveries per subscriber
+     */
+    static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final CommandConsumer.SubscriberDelivery delivery;
+    private final CommandConsumer.SubscriberOverflow overflow;
+    private final int queueSize;
+    private final ExecutorService executor =
+            CommandExecutors.elastic(CommandExecutors.DEFAULT_MAXIMUM_THREADS, "eventsourcing-subscriber-%d");
+
+    private final Map<EntitySubscriber, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    SubscriberDispatcher(CommandConsumer.SubscriberDelivery delivery, CommandConsumer.SubscriberOverflow overflow,
+                         int queueSize) {
+        this.delivery = delivery;
+        this.overflow = overflow;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Queues a delivery to a subscriber. Blocks or drops the delivery (depending
+     * on {@link CommandConsumer.SubscriberOverflow}) if the subscriber's queue is full.
+     * Deliveries dispatched after {@link #shutdown()} are dropped.
+     *
+     * @param subscriber subscriber
+     * @param runnable delivery
+     * @param mayBlock <code>false</code> if the calling thread must not be blocked, in which case
+     *                 the delivery is dropped regardless of the overflow policy
+     */
+    void dispatch(EntitySubscriber subscriber, Runnable runnable, boolean mayBlock) {
+        lanes.computeIfAbsent(subscriber, s -> new Lane()).dispatch(runnable, mayBlock);
+    }
+
+    /**
+     * @return number of queued deliveries across all subscribers
+     */
+    int getLag() {
+        return lanes.values().stream().mapToInt(lane -> queueSize - lane.permits.availablePermits()).sum();
+    }
+
+    /**
+     * @return number of deliveries dropped because of full queues
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting deliveries. Already queued deliveries will still be made.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private class Lane {
+        private final Semaphore permits = new Semaphore(queueSize);
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void dispatch(Runnable runnable, boolean mayBlock) {
+            if (overflow == CommandConsumer.SubscriberOverflow.DROP || !mayBlock) {
+                if (!permits.tryAcquire()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+            } else {
+                permits.acquireUninterruptibly();
+            }
+            if (delivery == CommandConsumer.SubscriberDelivery.UNORDERED) {
+                try {
+                    executor.execute(() -> deliver(runnable));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    rejected(1);
+                }
+            } else {
+                queue.add(runnable);
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    int count = 0;
+                    while (queue.poll() != null) {
+                        permits.release();
+                        count++;
+                    }
+                    scheduled.set(false);
+                    rejected(count);
+                }
+            }
+        }
+
+        private void drain() {
+            do {
+                Runnable runnable;
+                while ((runnable = queue.poll()) != null) {
+                    deliver(runnable);
+                }
+                scheduled.set(false);
+                // a delivery might have been queued after the last poll, keep draining it
+                // here as the executor might have been shut down in the meantime
+            } while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        private void rejected(int count) {
+            dropped.addAndGet(count);
+            log.warn("Dropped {} entity subscriber deliveries dispatched after shutdown", count);
+        }
+
+        private void deliver(Runnable runnable) {
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                log.error("Entity subscriber failed", t);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.EntitySubscriber;
+import lombok.Getter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable set of entity subscribers, indexed by entity class.
+ *
+ * For every entity class, the registry builds (on first use) a table of subscribers
+ * that might be interested in it: subscribers declaring a matching class in
+ * {@link EntitySubscriber#getEntityClasses()} and subscribers that don't declare any.
+ * Only these need to be matched using {@link EntitySubscriber#matches(com.eventsourcing.Repository, Entity)}.
+ * Adding or removing a subscriber produces a new registry with its own table.
+ */
+public final class SubscriberRegistry {
+
+    public static final SubscriberRegistry EMPTY = new SubscriberRegistry(Collections.emptyList());
+
+    @Getter
+    private final List<EntitySubscriber> subscribers;
+
+    private final Map<Class<?>, EntitySubscriber[]> candidates = new ConcurrentHashMap<>();
+
+    private SubscriberRegistry(List<EntitySubscriber> subscribers) {
+        this.subscribers = Collections.unmodifiableList(subscribers);
+    }
+
+    public static SubscriberRegistry of(Collection<EntitySubscriber> subscribers) {
+        return new SubscriberRegistry(new ArrayList<>(subscribers));
+    }
+
+    public SubscriberRegistry add(EntitySubscriber subscriber) {
+        List<EntitySubscriber> newSubscribers = new ArrayList<>(subscribers);
+        newSubscribers.add(subscriber);
+        return new SubscriberRegistry(newSubscribers);
+    }
+
+    public SubscriberRegistry remove(EntitySubscriber subscriber) {
+        List<EntitySubscriber> newSubscribers = new ArrayList<>(subscribers);
+        newSubscribers.remove(subscriber);
+        return new SubscriberRegistry(newSubscribers);
+    }
+
+    /**
+     * Returns subscribers that might match entities of a class
+     *
+     * @param klass entity class
+     * @return subscribers
+     */
+    public EntitySubscriber[] candidates(Class<? extends Entity> klass) {
+        EntitySubscriber[] result = candidates.get(klass);
+        if (result == null) {
+            result = subscribers.stream().filter(s -> isInterested(s, klass)).toArray(EntitySubscriber[]::new);
+            candidates.put(klass, result);
+        }
+        return result;
+    }
+
+    private static boolean isInterested(EntitySubscriber<?> subscriber, Class<? extends Entity> klass) {
+        Set<Class<? extends Entity>> entityClasses = subscriber.getEntityClasses();
+        return entityClasses.isEmpty() || entityClasses.stream().anyMatch(c -> c.isAssignableFrom(klass));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.eventsourcing.Journal;
+import com.eventsourcing.hlc.HybridTimestamp;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persists the repository timestamp as a high-water mark set ahead of the timestamps
+ * being journalled, so that the journal's properties are only written once in a while
+ * rather than on every commit, and the repository clock, once restored from the mark,
+ * is still guaranteed to be past every timestamp journalled before the restart.
+ *
+ * The mark is raised asynchronously when timestamps get close to it. A commit
+ * is blocked on persisting the mark only if the timestamps have reached it.
+ */
+@Slf4j
+class TimestampHighWaterMark {
+
+    /**
+     * One second (NTP format)
+     */
+    static final long DEFAULT_MARGIN = 1L << 32;
+
+    private final Journal journal;
+    private final Executor executor;
+    private final long margin;
+
+    private volatile HybridTimestamp mark;
+    private final AtomicBoolean raising = new AtomicBoolean();
+
+    /**
+     * @param journal  journal
+     * @param mark     persisted mark, if any (<code>null</code> otherwise)
+     * @param margin   how far ahead the mark is set (NTP format)
+     * @param executor executor to raise the mark asynchronously
+     */
+    TimestampHighWaterMark(Journal journal, HybridTimestamp mark, long margin, Executor executor) {
+        this.journal = journal;
+        this.mark = mark;
+        this.margin = margin;
+        this.executor = executor;
+    }
+
+    /**
+     * Makes sure the persisted mark is past the given timestamp. Must be called
+     * before the timestamp is committed.
+     *
+     * @param timestamp timestamp
+     */
+    void ensure(HybridTimestamp timestamp) {
+        HybridTimestamp current = mark;
+        if (current == null || timestamp.compareTo(current) >= 0) {
+            raise(timestamp);
+        } else if (HybridTimestamp.compare(timestamp.getLogicalTime() + margin / 2, current.getLogicalTime()) > 0 &&
+                raising.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    raise(timestamp);
+                } catch (Exception e) {
+                    log.warn("Failed to persist repository timestamp", e);
+                } finally {
+                    raising.set(false);
+                }
+            });
+        }
+    }
+
+    private synchronized void raise(HybridTimestamp timestamp) {
+        HybridTimestamp newMark = new HybridTimestamp(timestamp.getLogicalTime() + margin, 0);
+        if (mark == null || newMark.compareTo(mark) > 0) {
+            journal.getProperties().setRepositoryTimestamp(newMark);
+            mark = newMark;
+        }
+    }
+}
@@ -146,6 +146,68 @@ public abstract class JournalTest<T extends Journal> {
         assertEquals(command.event.uuid(), eventEntity.get().uuid());
     }
 
+    @Test
+    @SneakyThrows
+    public void journalRetrievingMultiple() {
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+        TestCommand command = TestCommand.builder().events(true).build();
+        command.timestamp(timestamp);
+        Journal.Transaction tx = journal.beginTransaction();
+        journal.journal(tx, command);
+        journal.journal(tx, command.event);
+        tx.commit();
+
+        UUID missing = UUID.randomUUID();
+        Map<UUID, Entity> entities = journal.getAll(Arrays.asList(command.uuid(), command.event.uuid(), missing));
+        assertEquals(entities.size(), 2);
+        assertTrue(entities.get(command.uuid()) instanceof TestCommand);
+        assertEquals(entities.get(command.uuid()).uuid(), command.uuid());
+        assertTrue(entities.get(command.event.uuid()) instanceof TestEvent);
+        assertEquals(entities.get(command.event.uuid()).uuid(), command.event.uuid());
+        assertFalse(entities.containsKey(missing));
+    }
+
+    @Test
+    @SneakyThrows
+    public void prefetchingIterator() {
+        HybridTimestamp timestamp = new HybridTimestamp(timeProvider);
+        timestamp.update();
+        List<UUID> uuids = new ArrayList<>();
+        Journal.Transaction tx = journal.beginTransaction();
+        for (int i = 0; i < 5; i++) {
+            TestEvent event = TestEvent.builder().timestamp(timestamp.clone()).build();
+            journal.journal(tx, event);
+            uuids.add(event.uuid());
+        }
+        TestCommand command = TestCommand.builder().build();
+        command.timestamp(timestamp);
+        journal.journal(tx, command);
+        tx.commit();
+
+        CloseableIterator<EntityHandle<TestEvent>> iterator =
+                new PrefetchingEntityHandleIterator<>(journal, journal.eventIterator(TestEvent.class), 2);
+        List<EntityHandle<TestEvent>> handles = StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.IMMUTABLE), false)
+                .collect(Collectors.toList());
+        iterator.close();
+
+        assertEquals(handles.size(), uuids.size());
+        assertTrue(handles.stream().allMatch(h -> h instanceof ResolvedEntityHandle));
+        assertTrue(handles.stream().map(EntityHandle::uuid).collect(Collectors.toList()).containsAll(uuids));
+
+        // growing chunks (1, 2, 4)
+        iterator = new PrefetchingEntityHandleIterator<>(journal, journal.eventIterator(TestEvent.class), 1, 4);
+        handles = StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.IMMUTABLE), false)
+                .collect(Collectors.toList());
+        iterator.close();
+
+        assertEquals(handles.size(), uuids.size());
+        assertTrue(handles.stream().allMatch(h -> h instanceof ResolvedEntityHandle));
+        assertTrue(handles.stream().map(EntityHandle::uuid).collect(Collectors.toList()).containsAll(uuids));
+    }
+
     @Test
     @SneakyThrows
     public void journalIterating() {
@@ -39,9 +39,13 @@ import org.testng.annotations.Test;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 import static com.eventsourcing.queries.QueryFactory.*;
@@ -60,7 +64,9 @@ public abstract class RepositoryTest {
     @BeforeClass
     public void setUpEnv() throws Exception {
         startTime = new TimeStamp(new Date());
-        repository = new StandardRepository();
+        StandardRepository repository = new StandardRepository();
+        configureRepository(repository);
+        this.repository = repository;
         repository
                 .addCommandSetProvider(new PackageCommandSetProvider(new Package[]{RepositoryTest.class.getPackage()}));
         repository.addEventSetProvider(new PackageEventSetProvider(new Package[]{RepositoryTest.class.getPackage()}));
@@ -83,6 +89,8 @@ public abstract class RepositoryTest {
 
     protected IndexEngine createIndexEngine() {return new MemoryIndexEngine();}
 
+    protected void configureRepository(StandardRepository repository) {}
+
     protected abstract Journal createJournal();
 
     @AfterClass
@@ -186,6 +194,25 @@ public abstract class RepositoryTest {
         assertEquals("hello, world", repository.publish(RepositoryTestCommand.builder().build()).get());
     }
 
+    @Test
+    @SneakyThrows
+    public void concurrentPublish() {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(repository.publish(RepositoryTestCommand.builder().value("concurrent" + i).build()));
+            futures.add(repository.publish(ExceptionalCommand.builder().build()).exceptionally(t -> null));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+        for (int i = 0; i < 200; i += 2) {
+            assertEquals(futures.get(i).get(), "hello, world");
+        }
+        assertEquals(journal.size(TestEvent.class), 100);
+        assertEquals(journal.size(RepositoryTestCommand.class), 100);
+        assertEquals(journal.size(CommandTerminatedExceptionally.class), 100);
+        assertEquals(((RepositoryMBean) repository).getQueuedCommands(), 0);
+        assertEquals(((RepositoryMBean) repository).getInFlightCommands(), 0);
+    }
+
     @Test
     @SneakyThrows
     public void subscribe() {
@@ -788,10 +815,179 @@ public abstract class RepositoryTest {
         assertEquals(newRepository.getTimestamp().getLogicalTime(), hybridTimestamp.getLogicalTime());
         assertTrue(newRepository.getTimestamp().getLogicalCounter() > hybridTimestamp.getLogicalCounter());
 
-        // This tests that the repository saves the timestamp back
-        assertEquals(newJournal.getProperties().getRepositoryTimestamp().get(), newRepository.getTimestamp());
+        // This tests that the repository saves the timestamp back (as a high-water mark
+        // ahead of the timestamps it has used)
+        assertTrue(newJournal.getProperties().getRepositoryTimestamp().get()
+                             .compareTo(newRepository.getTimestamp()) > 0);
 
         newRepository.stopAsync().awaitTerminated();
         newTimeProvider.stopAsync().awaitTerminated();
     }
-}
\ No newline at end of file
+
+    public static class BlockingCommand extends StandardCommand<Void, Void> {
+
+        static CountDownLatch latch = new CountDownLatch(0);
+
+        @Builder
+        public BlockingCommand(HybridTimestamp timestamp) {
+            super(timestamp);
+        }
+
+        @Override @SneakyThrows
+        public EventStream<Void> events() {
+            latch.await();
+            return EventStream.empty();
+        }
+    }
+
+    @Test(timeOut = 10000)
+    @SneakyThrows
+    public void admissionControl() {
+        StandardRepository newRepository = new StandardRepository();
+        newRepository
+                .addCommandSetProvider(new PackageCommandSetProvider(new Package[]{RepositoryTest.class.getPackage()}));
+        newRepository.addEventSetProvider(new PackageEventSetProvider(new Package[]{RepositoryTest.class.getPackage()}));
+        newRepository.setJournal(createJournal());
+        newRepository.setPhysicalTimeProvider(new NTPServerTimeProvider(new String[]{"localhost"}));
+        newRepository.setIndexEngine(createIndexEngine());
+        newRepository.setLockProvider(new LocalLockProvider());
+        newRepository.setMaximumInFlightCommands(1);
+        newRepository.setAdmissionPolicy(CommandConsumer.AdmissionPolicy.FAIL);
+        newRepository.startAsync().awaitRunning();
+
+        BlockingCommand.latch = new CountDownLatch(1);
+        CompletableFuture<Void> blocking = newRepository.publish(BlockingCommand.builder().build());
+        CompletableFuture<?> rejected = newRepository.publish(RepositoryTestCommand.builder().build());
+        Object o = rejected.handle((result, t) -> t).get();
+        assertTrue(o instanceof CommandConsumer.CommandRejected);
+        assertEquals(newRepository.getRejectedCommands(), 1);
+
+        BlockingCommand.latch.countDown();
+        blocking.get();
+        assertEquals(newRepository.publish(RepositoryTestCommand.builder().build()).get(), "hello, world");
+
+        newRepository.stopAsync().awaitTerminated();
+    }
+
+    @Test(timeOut = 10000)
+    @SneakyThrows
+    public void commandSubscriber() {
+        int total = 100;
+        int window = 4;
+        AtomicInteger results = new AtomicInteger();
+        CommandSubscriber subscriber = new CommandSubscriber(repository, window) {
+            @Override protected void onResult(Command<?, ?> command, Object result, Throwable throwable) {
+                if ("hello, world".equals(result)) {
+                    results.incrementAndGet();
+                }
+            }
+        };
+        AtomicLong demand = new AtomicLong();
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicBoolean windowExceeded = new AtomicBoolean();
+        subscriber.onSubscribe(new CommandSubscriber.Subscription() {
+            @Override public synchronized void request(long n) {
+                if (demand.addAndGet(n) > window) {
+                    windowExceeded.set(true);
+                }
+                while (demand.get() > 0 && emitted.get() < total) {
+                    demand.decrementAndGet();
+                    emitted.incrementAndGet();
+                    subscriber.onNext(RepositoryTestCommand.builder().build());
+                }
+                if (emitted.get() == total) {
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override public void cancel() {
+            }
+        });
+        subscriber.getCompletion().get();
+        assertFalse(windowExceeded.get());
+        assertEquals(results.get(), total);
+    }
+
+    @Test(timeOut = 10000)
+    @SneakyThrows
+    public void asynchronousSubscribers() {
+        StandardRepository newRepository = new StandardRepository();
+        newRepository
+                .addCommandSetProvider(new PackageCommandSetProvider(new Package[]{RepositoryTest.class.getPackage()}));
+        newRepository.addEventSetProvider(new PackageEventSetProvider(new Package[]{RepositoryTest.class.getPackage()}));
+        newRepository.setJournal(createJournal());
+        newRepository.setPhysicalTimeProvider(new NTPServerTimeProvider(new String[]{"localhost"}));
+        newRepository.setIndexEngine(createIndexEngine());
+        newRepository.setLockProvider(new LocalLockProvider());
+        newRepository.setSubscriberDelivery(CommandConsumer.SubscriberDelivery.ORDERED);
+        newRepository.setSubscriberOverflow(CommandConsumer.SubscriberOverflow.DROP);
+        newRepository.setSubscriberQueueSize(1);
+        newRepository.startAsync().awaitRunning();
+
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger delivered = new AtomicInteger();
+        newRepository.addEntitySubscriber(new ClassEntitySubscriber<RepositoryTestCommand>(RepositoryTestCommand.class) {
+            @Override @SneakyThrows public void onEntity(EntityHandle<RepositoryTestCommand> entity) {
+                delivering.countDown();
+                latch.await();
+                delivered.incrementAndGet();
+            }
+        });
+
+        // commands complete while the subscriber is blocked
+        newRepository.publish(RepositoryTestCommand.builder().build()).get();
+        delivering.await();
+        assertEquals(newRepository.getSubscriberLag(), 1);
+        newRepository.publish(RepositoryTestCommand.builder().build()).get();
+        assertEquals(newRepository.getDroppedSubscriberDeliveries(), 1);
+
+        latch.countDown();
+        while (newRepository.getSubscriberLag() > 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(delivered.get(), 1);
+
+        newRepository.stopAsync().awaitTerminated();
+    }
+
+    @Test(timeOut = 10000)
+    @SneakyThrows
+    public void subscriberPublishingWithGroupCommit() {
+        StandardRepository newRepository = new StandardRepository();
+        newRepository
+                .addCommandSetProvider(new PackageCommandSetProvider(new Package[]{RepositoryTest.class.getPackage()}));
+        newRepository.addEventSetProvider(new PackageEventSetProvider(new Package[]{RepositoryTest.class.getPackage()}));
+        newRepository.setJournal(createJournal());
+        newRepository.setPhysicalTimeProvider(new NTPServerTimeProvider(new String[]{"localhost"}));
+        newRepository.setIndexEngine(createIndexEngine());
+        newRepository.setLockProvider(new LocalLockProvider());
+        newRepository.setGroupCommitSize(16);
+        newRepository.setGroupCommitDelay(2);
+        newRepository.startAsync().awaitRunning();
+
+        AtomicBoolean publishing = new AtomicBoolean();
+        AtomicReference<String> nested = new AtomicReference<>();
+        newRepository.addEntitySubscriber(new ClassEntitySubscriber<RepositoryTestCommand>(RepositoryTestCommand.class) {
+            @Override @SneakyThrows public void onEntity(EntityHandle<RepositoryTestCommand> entity) {
+                // the nested command can only be committed if this delivery
+                // doesn't hold up the group committer
+                if (publishing.compareAndSet(false, true)) {
+                    nested.set(newRepository.publish(RepositoryTestCommand.builder().value("nested").build()).get());
+                }
+            }
+        });
+
+        newRepository.publish(RepositoryTestCommand.builder().build()).get();
+        assertEquals(nested.get(), "hello, world");
+
+        newRepository.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void indexConfigurationProgress() {
+        StandardRepository standardRepository = (StandardRepository) repository;
+        assertEquals(standardRepository.getPendingIndexConfigurations(), 0);
+        assertTrue(standardRepository.getCompletedIndexConfigurations() >= repository.getEvents().size());
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.eventsourcing.*;
+import com.eventsourcing.hlc.HybridTimestamp;
+import com.eventsourcing.inmem.MemoryIndexEngine;
+import com.eventsourcing.inmem.MemoryJournal;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+public class ShardedCommandExecutorTest extends RepositoryUsingTest {
+
+    public ShardedCommandExecutorTest() {
+        super(ShardedCommandExecutorTest.class.getPackage());
+    }
+
+    private ShardedCommandExecutor executor;
+    private ExecutorService pool;
+
+    @BeforeMethod
+    @Override
+    public void setUp() throws Exception {
+        pool = Executors.newWorkStealingPool(4);
+        executor = new ShardedCommandExecutor(4, pool);
+        StandardRepository repository = StandardRepository.builder()
+                                                          .journal(new MemoryJournal())
+                                                          .indexEngine(new MemoryIndexEngine()).build();
+        repository.setCommandExecutor(executor);
+        this.repository = repository;
+        repository.startAsync().awaitRunning();
+        repository.addCommandSetProvider(new PackageCommandSetProvider(new Package[]{
+                ShardedCommandExecutorTest.class.getPackage()}));
+        repository.addEventSetProvider(new PackageEventSetProvider(new Package[]{
+                ShardedCommandExecutorTest.class.getPackage()}));
+    }
+
+    @AfterMethod
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        executor.shutdown();
+        pool.shutdown();
+    }
+
+    private static final Map<String, List<Integer>> executed = new ConcurrentHashMap<>();
+
+    public static class RoutedTestCommand extends StandardCommand<Void, Void> implements RoutedCommand {
+        @Getter
+        private final String key;
+        @Getter
+        private final int sequence;
+
+        @Builder
+        public RoutedTestCommand(HybridTimestamp timestamp, String key, int sequence) {
+            super(timestamp);
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        @Override public Object routingKey() {
+            return key;
+        }
+
+        @Override public EventStream<Void> events() {
+            // unsynchronized on purpose: commands with the same key must not run concurrently
+            List<Integer> list = executed.computeIfAbsent(key, k -> new ArrayList<>());
+            list.add(sequence);
+            return EventStream.empty();
+        }
+    }
+
+    @Test @SneakyThrows
+    public void ordering() {
+        executed.clear();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (String key : Arrays.asList("a", "b", "c", "d", "e")) {
+                futures.add(repository.publish(RoutedTestCommand.builder().key(key).sequence(i).build()));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+        List<Integer> expected = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        for (String key : Arrays.asList("a", "b", "c", "d", "e")) {
+            assertEquals(executed.get(key), expected);
+        }
+    }
+
+    @Test @SneakyThrows
+    public void parallelLanes() {
+        assertNotEquals(executor.lane(0), executor.lane(1));
+        CountDownLatch latch = new CountDownLatch(1);
+        CompletableFuture<Void> blocked = new CompletableFuture<>();
+        executor.execute(0, () -> {
+            try {
+                latch.await();
+                blocked.complete(null);
+            } catch (InterruptedException e) {
+                blocked.completeExceptionally(e);
+            }
+        });
+        // a different lane is not blocked
+        CompletableFuture<Void> other = new CompletableFuture<>();
+        executor.execute(1, () -> other.complete(null));
+        other.get(1, TimeUnit.SECONDS);
+        latch.countDown();
+        blocked.get(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.eventsourcing.EntityHandle;
+import com.eventsourcing.EntitySubscriber;
+import lombok.SneakyThrows;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class SubscriberDispatcherTest {
+
+    private final EntitySubscriber subscriber =
+            new ClassEntitySubscriber<RepositoryTest.RepositoryTestCommand>(RepositoryTest.RepositoryTestCommand.class) {
+                @Override public void onEntity(EntityHandle<RepositoryTest.RepositoryTestCommand> entity) {
+                }
+            };
+
+    @Test
+    public void dispatchAfterShutdown() {
+        for (CommandConsumer.SubscriberDelivery delivery : new CommandConsumer.SubscriberDelivery[]{
+                CommandConsumer.SubscriberDelivery.ORDERED, CommandConsumer.SubscriberDelivery.UNORDERED}) {
+            SubscriberDispatcher dispatcher =
+                    new SubscriberDispatcher(delivery, CommandConsumer.SubscriberOverflow.BLOCK, 1);
+            dispatcher.shutdown();
+            dispatcher.dispatch(subscriber, () -> {}, true);
+            dispatcher.dispatch(subscriber, () -> {}, true);
+            assertEquals(dispatcher.getDropped(), 2);
+            assertEquals(dispatcher.getLag(), 0);
+        }
+    }
+
+    @Test(timeOut = 10000)
+    @SneakyThrows
+    public void nonBlockingOverflow() {
+        SubscriberDispatcher dispatcher =
+                new SubscriberDispatcher(CommandConsumer.SubscriberDelivery.ORDERED,
+                                         CommandConsumer.SubscriberOverflow.BLOCK, 1);
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        dispatcher.dispatch(subscriber, () -> {
+            delivering.countDown();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, true);
+        assertTrue(delivering.await(5, TimeUnit.SECONDS));
+
+        // the queue is full, but the caller must not be blocked
+        dispatcher.dispatch(subscriber, () -> {}, false);
+        assertEquals(dispatcher.getDropped(), 1);
+
+        latch.countDown();
+        dispatcher.shutdown();
+    }
+}
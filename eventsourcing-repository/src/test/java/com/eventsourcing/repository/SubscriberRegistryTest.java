@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2016, All Contributors (see CONTRIBUTORS file)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.eventsourcing.repository;
+
+import com.eventsourcing.Entity;
+import com.eventsourcing.EntitySubscriber;
+import com.eventsourcing.StandardEvent;
+import org.testng.annotations.Test;
+
+import static com.eventsourcing.repository.JournalTest.AnotherTestEvent;
+import static com.eventsourcing.repository.JournalTest.TestEvent;
+import static org.testng.Assert.*;
+
+public class SubscriberRegistryTest {
+
+    @Test
+    public void candidates() {
+        EntitySubscriber<TestEvent> classSubscriber = new ClassEntitySubscriber<>(TestEvent.class);
+        EntitySubscriber<StandardEvent> superclassSubscriber = new ClassEntitySubscriber<>(StandardEvent.class);
+        EntitySubscriber<Entity> subscriber = new EntitySubscriber<Entity>() {};
+        SubscriberRegistry registry = SubscriberRegistry.EMPTY.add(classSubscriber).add(superclassSubscriber)
+                                                              .add(subscriber);
+
+        assertEquals(registry.candidates(TestEvent.class),
+                     new EntitySubscriber[]{classSubscriber, superclassSubscriber, subscriber});
+        assertEquals(registry.candidates(AnotherTestEvent.class),
+                     new EntitySubscriber[]{superclassSubscriber, subscriber});
+
+        SubscriberRegistry removed = registry.remove(superclassSubscriber);
+        assertEquals(removed.candidates(TestEvent.class), new EntitySubscriber[]{classSubscriber, subscriber});
+        assertEquals(removed.candidates(AnotherTestEvent.class), new EntitySubscriber[]{subscriber});
+        // original registry is unaffected
+        assertEquals(registry.candidates(AnotherTestEvent.class),
+                     new EntitySubscriber[]{superclassSubscriber, subscriber});
+    }
+}